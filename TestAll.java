@@ -1,7 +1,37 @@
 import selection.*;
 
+import weka.attributeSelection.InfoGainAttributeEval;
+import weka.attributeSelection.ReliefFAttributeEval;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 
@@ -88,6 +118,187 @@ public class TestAll {
         assertTrue(selectedIndices.size() <= MAX_FEATURES);
     }
 
+    /***
+     * ===============
+     * PARALLEL TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testParallelSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward and backward selection scored on 4 threads");
+        for (Selection method : new Selection[]{Selection.SFS, Selection.SBS}) {
+            int numFeatures = method == Selection.SFS ? 5 : 50;
+
+            FeatureSelection sequential = generateSelector(method);
+            List<Double> sequentialSteps = recordSteps(sequential);
+            Set<Integer> expected = sequential.select(numFeatures);
+            sequential.shutdown();
+
+            FeatureSelection parallel = generateSelector(method);
+            parallel.setParallelism(4);
+            List<Double> parallelSteps = recordSteps(parallel);
+            Set<Integer> selectedIndices = parallel.select(numFeatures);
+            parallel.shutdown();
+
+            // The same candidates win every sweep, with the same accuracies
+            System.out.println(method + ": " + selectedIndices);
+            assertEquals(expected, selectedIndices);
+            assertEquals(sequentialSteps, parallelSteps);
+        }
+        System.out.println("-------------------");
+    }
+
+    // Collects the accuracy of each step the selector takes, complete once it has been shut down
+    private List<Double> recordSteps(FeatureSelection selector) {
+        List<Double> steps = new CopyOnWriteArrayList<>();
+        selector.addListener(event -> {
+            if (event.getType() == SelectionEvent.Type.STEP) steps.add(event.getAccuracy());
+        });
+        return steps;
+    }
+
+    /***
+     * ===============
+     * CACHE TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testScoreCache() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Score cache eviction and counters");
+        ScoreCache cache = new ScoreCache(2);
+        FeatureSubset a = FeatureSubset.of(1), b = FeatureSubset.of(2), c = FeatureSubset.of(3);
+        cache.put(a, 10);
+        cache.put(b, 20);
+
+        // Reading a makes b the least recently used, so c evicts b
+        assertEquals(10, cache.get(a), 0);
+        cache.put(c, 30);
+        assertEquals(null, cache.get(b));
+        assertEquals(10, cache.get(a), 0);
+        assertEquals(30, cache.get(c), 0);
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Clearing keeps the counters
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(null, cache.get(a));
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        ScoreCache disabled = new ScoreCache(0);
+        disabled.put(a, 10);
+        assertEquals(null, disabled.get(a));
+        System.out.println(cache);
+
+        // A second search over the same data is answered from the cache
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        Set<Integer> expected = selector.select(3);
+        long misses = selector.getCache().getMisses();
+        assertEquals(expected, selector.select(3));
+        assertEquals(misses, selector.getCache().getMisses());
+        System.out.println(selector.getCache());
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * SUBSET TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testFeatureSubset() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Feature subsets across word boundaries");
+        FeatureSubset lastOfFirstWord = FeatureSubset.EMPTY.with(63);
+        FeatureSubset spanning = lastOfFirstWord.with(64);
+
+        assertEquals(FeatureSubset.of(63, 64), spanning);
+        assertEquals(FeatureSubset.of(63, 64).hashCode(), spanning.hashCode());
+        assertEquals(2, spanning.size());
+        assertTrue(spanning.contains(63) && spanning.contains(64) && !spanning.contains(65));
+        assertEquals(spanning, spanning.with(64));
+        assertEquals(64, spanning.nextFeature(64));
+        assertEquals(-1, spanning.nextFeature(65));
+        assertEquals(128, FeatureSubset.of(63, 128).nextFeature(64));
+
+        // Removing the only feature of the second word trims it away
+        assertEquals(lastOfFirstWord, spanning.without(64));
+        assertEquals(lastOfFirstWord.hashCode(), spanning.without(64).hashCode());
+        assertEquals(FeatureSubset.EMPTY, spanning.without(64).without(63));
+        assertEquals(FeatureSubset.of(64), spanning.without(63));
+        assertTrue(!FeatureSubset.of(63).equals(FeatureSubset.of(64)));
+        assertTrue(!FeatureSubset.of(0).equals(FeatureSubset.of(0, 64)));
+
+        FeatureSubset all = FeatureSubset.range(65);
+        assertEquals(65, all.size());
+        assertTrue(all.contains(64) && !all.contains(65));
+        assertEquals(all, FeatureSubset.range(64).with(64));
+        assertEquals(FeatureSubset.range(64), all.without(64));
+
+        assertEquals(64, lastOfFirstWord.onlyDifference(spanning));
+        assertEquals(64, spanning.onlyDifference(lastOfFirstWord));
+        assertEquals(64, FeatureSubset.EMPTY.onlyDifference(FeatureSubset.of(64)));
+        assertEquals(-1, FeatureSubset.of(63).onlyDifference(FeatureSubset.of(64)));
+        assertEquals(-1, spanning.onlyDifference(spanning));
+        assertEquals(-1, FeatureSubset.EMPTY.onlyDifference(spanning));
+
+        assertEquals(List.of(63, 64, 200), Arrays.stream(FeatureSubset.of(200, 64, 63).toArray()).boxed().toList());
+        assertEquals(List.of(63, 64), new ArrayList<>(spanning.toSet()));
+        System.out.println(spanning);
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * NAIVE BAYES TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testIncrementalNaiveBayes() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Incremental Naive Bayes against Weka's NaiveBayes");
+        Classifier weka = new Classifier(FILE_NAME);
+        Classifier incremental = new Classifier(FILE_NAME);
+        incremental.setIncrementalNaiveBayes(true);
+
+        List<FeatureSubset> subsets = new ArrayList<>();
+        subsets.add(FeatureSubset.of(0));
+        subsets.add(weka.getAllFeatureIndices());
+        Random random = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            List<Integer> features = new ArrayList<>();
+            for (int feature : weka.getAllFeatureIndices()) {
+                if (random.nextInt(4) == 0) features.add(feature);
+            }
+            subsets.add(FeatureSubset.of(features));
+        }
+
+        for (FeatureSubset subset : subsets) {
+            assertEquals(subset.toString(), weka.classify(subset), incremental.classify(subset), 0);
+
+            // Scored from the base when one feature away from it
+            incremental.setBase(subset);
+            FeatureSubset added = subset.with(subset.contains(7) ? 8 : 7);
+            FeatureSubset removed = subset.without(subset.nextFeature(0));
+            assertEquals(added.toString(), weka.classify(added), incremental.classify(added), 0);
+            if (!removed.isEmpty()) assertEquals(removed.toString(), weka.classify(removed), incremental.classify(removed), 0);
+        }
+
+        FeatureSelection expected = generateSelector(Selection.SFS);
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setIncrementalNaiveBayes(true);
+        assertEquals(expected.select(5), selector.select(5));
+        System.out.println("-------------------");
+    }
+
     /***
      * ===============
      * FLOATING TESTS
@@ -139,12 +350,1095 @@ public class TestAll {
         assertTrue(selectedIndices.size() <= MAX_FEATURES);
     }
 
+    /***
+     * ===============
+     * BEAM SEARCH TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testBeamSearchSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Beam search for 3 features");
+        FeatureSelection forward = generateSelector(Selection.SFS);
+        forward.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = forward.select(3);
+
+        // A single beam is the same search as SFS
+        BeamSearchSelection single = (BeamSearchSelection) generateSelector(Selection.BEAM);
+        single.setIncrementalNaiveBayes(true);
+        single.setBeamWidth(1);
+        assertEquals(expected, single.select(3));
+
+        BeamSearchSelection sequential = (BeamSearchSelection) generateSelector(Selection.BEAM);
+        sequential.setIncrementalNaiveBayes(true);
+        sequential.setBeamWidth(4);
+        Set<Integer> beamed = sequential.select(3);
+
+        BeamSearchSelection selector = (BeamSearchSelection) generateSelector(Selection.BEAM);
+        selector.setIncrementalNaiveBayes(true);
+        selector.setBeamWidth(4);
+        selector.setParallelism(2);
+        Set<Integer> selectedIndices = selector.select(3);
+        selector.compareTestingAccuracy(selectedIndices);
+        selector.shutdown();
+        assertEquals(beamed, selectedIndices);
+
+        // No subset is scored twice, however many beams reach it
+        assertEquals(0, selector.getCache().getHits());
+        assertEquals(selector.getEvaluations(), selector.getCache().getMisses());
+
+        // The budget is shared by every beam
+
+        BeamSearchSelection limited = (BeamSearchSelection) generateSelector(Selection.BEAM);
+        limited.setIncrementalNaiveBayes(true);
+        limited.setBeamWidth(4);
+        limited.setMaxEvaluations(200);
+        limited.select(3);
+        assertEquals(200, limited.getEvaluations());
+        assertEquals(FeatureSelection.Limit.EVALUATIONS, limited.getLimitReached());
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * GENETIC TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testGeneticSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Genetic selection for max 10 features");
+        GeneticSelection sequential = (GeneticSelection) generateSelector(Selection.GA);
+        sequential.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = sequential.select(10);
+
+        // The same search however many threads score the population
+        GeneticSelection selector = (GeneticSelection) generateSelector(Selection.GA);
+        selector.setIncrementalNaiveBayes(true);
+        selector.setParallelism(2);
+        Set<Integer> selectedIndices = selector.select(10);
+        selector.compareTestingAccuracy(selectedIndices);
+        selector.shutdown();
+        System.out.println(selector.getEvaluations() + " subsets scored, " + selector.getDuplicates() + " duplicates skipped");
+        System.out.println("-------------------");
+
+        assertEquals(expected, selectedIndices);
+        assertTrue(selectedIndices.size() <= 10);
+
+        // Duplicates never reach the objective function
+        assertEquals(0, selector.getCache().getHits());
+        assertEquals(selector.getEvaluations(), selector.getCache().getMisses());
+    }
+
+    /***
+     * ===============
+     * LIMIT TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testForwardSelectionLimits() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection stopped by each limit");
+        FeatureSelection complete = generateSelector(Selection.SFS);
+        complete.setIncrementalNaiveBayes(true);
+        List<SelectionEvent> steps = new CopyOnWriteArrayList<>();
+        complete.addListener(event -> {
+            if (event.getType() == SelectionEvent.Type.STEP) steps.add(event);
+        });
+        complete.select(5);
+        complete.shutdown();
+        assertEquals(null, complete.getLimitReached());
+
+        // The budget runs out part way through the second sweep, the best of it is still taken
+        FeatureSelection budgeted = generateSelector(Selection.SFS);
+        budgeted.setIncrementalNaiveBayes(true);
+        budgeted.setMaxEvaluations(100);
+        Set<Integer> selectedIndices = budgeted.select();
+        System.out.println(selectedIndices + " after " + budgeted.getEvaluations() + " evaluations");
+        assertEquals(FeatureSelection.Limit.EVALUATIONS, budgeted.getLimitReached());
+        assertEquals(100, budgeted.getEvaluations());
+        assertTrue(selectedIndices.size() <= 2);
+
+        // Stops at the first subset as good as the best single feature
+        double target = steps.get(1).getAccuracy();
+        FeatureSelection targeted = generateSelector(Selection.SFS);
+        targeted.setIncrementalNaiveBayes(true);
+        targeted.setTargetAccuracy(target);
+        assertEquals(1, targeted.select().size());
+        assertEquals(FeatureSelection.Limit.TARGET_ACCURACY, targeted.getLimitReached());
+        assertTrue(targeted.getBestSoFar().getAccuracy() >= target);
+
+        // The best so far can be taken from another thread at any time
+        FeatureSelection timed = generateSelector(Selection.SBS);
+        timed.setTimeLimit(2000);
+        List<SelectionEvent> polled = new CopyOnWriteArrayList<>();
+        Thread poller = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                SelectionEvent best = timed.getBestSoFar();
+                if (best != null) polled.add(best);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        poller.start();
+        long start = System.currentTimeMillis();
+        Set<Integer> timedIndices = timed.select();
+        long elapsed = System.currentTimeMillis() - start;
+        poller.interrupt();
+        poller.join();
+        timed.shutdown();
+        System.out.println("Stopped after " + elapsed + "ms with " + timedIndices.size() + " features");
+
+        assertEquals(FeatureSelection.Limit.TIME, timed.getLimitReached());
+        assertTrue(elapsed < 10000);
+        assertEquals(timedIndices, timed.getBestSoFar().getSubset().toSet());
+        for (SelectionEvent best : polled) assertEquals(SelectionEvent.Type.NEW_BEST, best.getType());
+        System.out.println("-------------------");
+    }
+
+    @org.junit.Test
+    public void testLimitsAfterFailedSearch() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection with a budget after a search which failed");
+        FeatureSelection fresh = generateSelector(Selection.SFS);
+        fresh.setIncrementalNaiveBayes(true);
+        fresh.setMaxEvaluations(100);
+        Set<Integer> expected = fresh.select();
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setIncrementalNaiveBayes(true);
+        selector.setMaxEvaluations(100);
+        selector.setDistributedWorkers(1);
+        try {
+            // The only worker dies, so the first sweep throws part way through the search
+            ProcessHandle worker = ProcessHandle.current().children()
+                    .filter(process -> process.info().commandLine().orElse("").contains(EvaluationWorker.class.getName()))
+                    .findFirst().get();
+            worker.destroyForcibly();
+            worker.onExit().get();
+            IOException e = assertThrows(IOException.class, selector::select);
+            System.out.println("Failed with " + e.getMessage() + " after " + selector.getEvaluations() + " evaluations");
+
+            // The next search starts its budget again rather than stopping at once
+            selector.setDistributedWorkers(0);
+            selector.getCache().clear();
+            Set<Integer> selectedIndices = selector.select();
+            System.out.println(selectedIndices + " after " + selector.getEvaluations() + " evaluations");
+            assertEquals(FeatureSelection.Limit.EVALUATIONS, selector.getLimitReached());
+            assertEquals(100, selector.getEvaluations());
+            assertEquals(expected, selectedIndices);
+        } finally {
+            selector.shutdown();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * ARFF LOADER TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testArffLoader() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Parallel ARFF loader against Weka's parser");
+        File file = File.createTempFile("selection", ".arff");
+        try {
+            // Big enough to be split into several chunks on a multi-core machine
+            writeDenseArff(file, 20000);
+
+            for (String fileName : new String[]{FILE_NAME, file.getPath()}) {
+                Instances instances = ArffLoader.load(fileName);
+                Instances expected = new Instances(Files.newBufferedReader(new File(fileName).toPath()));
+                assertEquals(new Instances(expected, 0).toString(), new Instances(instances, 0).toString());
+                assertEquals(expected.numInstances(), instances.numInstances());
+
+                for (int row = 0; row < instances.numInstances(); row++) {
+                    for (int attribute = 0; attribute < instances.numAttributes(); attribute++) {
+                        // Exactly the same doubles, missing values included
+                        assertEquals(fileName + " row " + row + " attribute " + attribute,
+                                expected.instance(row).value(attribute), instances.instance(row).value(attribute), 0);
+                    }
+                    assertEquals(fileName + " row " + row + " weight", expected.instance(row).weight(), instances.instance(row).weight(), 0);
+                }
+                System.out.println(fileName + ": " + instances.numInstances() + " instances");
+            }
+        } finally {
+            file.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * DATASET CACHE TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testDatasetCacheStaleness() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Dataset cache rewritten when stale or corrupt");
+        File directory = Files.createTempDirectory("selection").toFile();
+        File source = new File(directory, "musk.arff");
+        File cache = new File(directory, "musk.arff" + DatasetCache.EXTENSION);
+        Files.copy(new File(FILE_NAME).toPath(), source.toPath());
+        try {
+            String expected = DatasetCache.load(source.getPath()).toString();
+            assertTrue(cache.exists());
+            byte[] written = Files.readAllBytes(cache.toPath());
+            assertEquals(expected, DatasetCache.load(source.getPath()).toString());
+
+            // One cache serves every seed, each shuffling the file order as Weka would
+            long cached = cache.lastModified();
+            for (long seed : new long[]{Classifier.SEED, 7}) {
+                Instances shuffled = new Instances(Files.newBufferedReader(source.toPath()));
+                shuffled.randomize(new Random(seed));
+                assertEquals(shuffled.toString(), DatasetCache.loadShuffled(source.getPath(), seed).toString());
+            }
+            assertEquals(cached, cache.lastModified());
+            assertTrue(Arrays.equals(written, Files.readAllBytes(cache.toPath())));
+
+            // Touching the source makes the cache stale, so it is written again with the new time
+            source.setLastModified(source.lastModified() + 10000);
+            assertEquals(expected, DatasetCache.load(source.getPath()).toString());
+            byte[] rewritten = Files.readAllBytes(cache.toPath());
+            assertEquals(written.length, rewritten.length);
+            assertTrue(!Arrays.equals(written, rewritten));
+
+            // A header Weka can't parse is treated as stale rather than failing the load
+            String text = new String(rewritten, StandardCharsets.ISO_8859_1);
+            int relation = text.indexOf("@relation");
+            assertTrue(relation > 0);
+            byte[] corrupt = rewritten.clone();
+            for (int i = relation; i < relation + "@relation".length(); i++) corrupt[i] = '#';
+            Files.write(cache.toPath(), corrupt);
+            assertEquals(expected, DatasetCache.load(source.getPath()).toString());
+            assertTrue(Arrays.equals(rewritten, Files.readAllBytes(cache.toPath())));
+
+            // So is a truncated one
+            Files.write(cache.toPath(), Arrays.copyOf(rewritten, 60));
+            assertEquals(expected, DatasetCache.load(source.getPath()).toString());
+            assertTrue(Arrays.equals(rewritten, Files.readAllBytes(cache.toPath())));
+        } finally {
+            cache.delete();
+            source.delete();
+            directory.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * DISTRIBUTED TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testDistributedForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection on 2 worker processes");
+        FeatureSelection local = generateSelector(Selection.SFS);
+        local.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = local.select(10);
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setIncrementalNaiveBayes(true);
+        selector.setDistributedWorkers(2);
+        try {
+            Set<Integer> selectedIndices = selector.select(10);
+            selector.compareTestingAccuracy(selectedIndices);
+            assertEquals(expected, selectedIndices);
+        } finally {
+            selector.shutdown();
+        }
+        System.out.println("-------------------");
+    }
+
+    @org.junit.Test
+    public void testDistributedWorkerFailure() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Scoring on 2 worker processes while they are killed");
+        Classifier local = new Classifier(FILE_NAME);
+        local.setIncrementalNaiveBayes(true);
+
+        List<FeatureSubset> sweep = new ArrayList<>();
+        for (int feature = 0; feature < 10; feature++) sweep.add(FeatureSubset.of(feature));
+
+        try (DistributedEvaluator evaluator = new DistributedEvaluator(2, List.of(FILE_NAME, "--incremental-naive-bayes"), List.of())) {
+            List<ProcessHandle> processes = ProcessHandle.current().children()
+                    .filter(process -> process.info().commandLine().orElse("").contains(EvaluationWorker.class.getName()))
+                    .toList();
+            assertEquals(2, processes.size());
+
+            // Pause one worker so it is stuck on a candidate, and only kill it
+            // once the other has emptied the queue: its candidate is then the
+            // last one left in the sweep, with no worker polling for it
+            ProcessHandle stuck = processes.get(0);
+            new ProcessBuilder("kill", "-STOP", Long.toString(stuck.pid())).start().waitFor();
+            Thread killer = new Thread(() -> {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    // Kill it now
+                }
+                stuck.destroyForcibly();
+            });
+            killer.start();
+
+            double[] scores = evaluator.classify(sweep, null);
+            killer.join();
+            for (int i = 0; i < sweep.size(); i++) assertEquals(local.classify(sweep.get(i)), scores[i], 0);
+            assertEquals(1, evaluator.getNumWorkers());
+
+            // Only fail once no worker is left
+            processes.get(1).destroyForcibly();
+            processes.get(1).onExit().get();
+            assertThrows(IOException.class, () -> evaluator.classify(sweep, null));
+            assertEquals(0, evaluator.getNumWorkers());
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * PRE-SELECTION TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testPreselectedForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection from the top 10 ranked features");
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setPreselection(10, FeatureRanking.Method.values());
+        Set<Integer> selectedIndices = selector.select();
+        selector.compareTestingAccuracy(selectedIndices);
+        System.out.println("-------------------");
+        assertTrue(selectedIndices.size() <= 10);
+
+        // Only the top ranked features on the same training set can be picked
+        FeatureRanking ranking = new FeatureRanking(new Classifier(FILE_NAME).getTrainingColumns());
+        FeatureSubset top = ranking.top(10, FeatureRanking.Method.values());
+        for (int feature : selectedIndices) assertTrue(top.contains(feature));
+    }
+
+    @org.junit.Test
+    public void testPreselectionEvaluations() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Evaluations with and without pre-selection");
+        FeatureSelection unpruned = generateSelector(Selection.SFS);
+        unpruned.select(5);
+
+        FeatureSelection pruned = generateSelector(Selection.SFS);
+        pruned.setPreselection(10, FeatureRanking.Method.MUTUAL_INFORMATION);
+        pruned.select(5);
+        System.out.println(unpruned.getEvaluations() + " evaluations unpruned, " + pruned.getEvaluations() + " pruned");
+        System.out.println("-------------------");
+
+        // Each step tries at most the 10 pre-selected features
+        assertTrue(pruned.getEvaluations() <= 5 * 10);
+        assertTrue(pruned.getEvaluations() < unpruned.getEvaluations());
+    }
+
+    @org.junit.Test
+    public void testRankingScores() throws Exception {
+        // Class is no, no, no, no, yes, yes, yes, yes
+        Instances data = nominalFixture(new String[][]{
+                // Always the class
+                {"a", "a", "a", "a", "b", "b", "b", "b"},
+                // Independent of the class
+                {"a", "a", "b", "b", "a", "a", "b", "b"},
+                // Agrees with the class on 6 of 8
+                {"a", "a", "a", "b", "a", "b", "b", "b"}
+        });
+        FeatureRanking ranking = new FeatureRanking(new ColumnarDataset(data));
+
+        // Sum of p(x, y) log2(p(x, y) / (p(x) p(y))), p(x) = p(y) = 1/2 and p(x, y) = 3/8 or 1/8 for the last feature
+        double[] information = ranking.scores(FeatureRanking.Method.MUTUAL_INFORMATION);
+        assertEquals(1, information[0], 1e-12);
+        assertEquals(0, information[1], 1e-12);
+        assertEquals(0.75 * Math.log(1.5) / Math.log(2) - 0.25, information[2], 1e-12);
+        assertTrue(Double.isNaN(information[3]));
+
+        // Weka's information gain is the same measure for nominal features
+        InfoGainAttributeEval infoGain = new InfoGainAttributeEval();
+        infoGain.buildEvaluator(data);
+        for (int feature = 0; feature < 3; feature++) {
+            assertEquals(infoGain.evaluateAttribute(feature), information[feature], 1e-12);
+        }
+
+        // Sum of (observed - expected)^2 / expected, every expected count is 2
+        double[] chiSquared = ranking.scores(FeatureRanking.Method.CHI_SQUARED);
+        assertEquals(4 * 4 / 2.0, chiSquared[0], 1e-12);
+        assertEquals(0, chiSquared[1], 1e-12);
+        assertEquals(4 * 1 / 2.0, chiSquared[2], 1e-12);
+
+        // Numeric features which separate the classes more and more, so neighbour distances don't tie
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int feature = 0; feature < 5; feature++) attributes.add(new Attribute("f" + feature));
+        attributes.add(new Attribute("class", Arrays.asList("no", "yes")));
+        Instances numeric = new Instances("relief", attributes, 60);
+        numeric.setClassIndex(5);
+        Random random = new Random(3);
+        for (int i = 0; i < 60; i++) {
+            double[] values = new double[6];
+            for (int feature = 0; feature < 5; feature++) values[feature] = (i % 2) * feature * 0.5 + random.nextDouble();
+            values[5] = i % 2;
+            numeric.add(new DenseInstance(1, values));
+        }
+
+        // Every instance is sampled and there are fewer than 10 neighbours of each class, the same as Weka's defaults
+        double[] relief = new FeatureRanking(new ColumnarDataset(numeric)).scores(FeatureRanking.Method.RELIEF_F);
+        ReliefFAttributeEval reliefF = new ReliefFAttributeEval();
+        reliefF.buildEvaluator(numeric);
+        for (int feature = 0; feature < 5; feature++) {
+            assertEquals(reliefF.evaluateAttribute(feature), relief[feature], 1e-12);
+        }
+    }
+
+    /***
+     * ===============
+     * EARLY ABANDON TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testEarlyAbandonForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection abandoning candidates which can't win");
+        Set<Integer> expected = generateSelector(Selection.SFS).select(5);
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setEarlyAbandon(true);
+        Set<Integer> selectedIndices = selector.select(5);
+        selector.compareTestingAccuracy(selectedIndices);
+        System.out.println("Abandoned " + selector.getAbandonedEvaluations() + " candidates");
+        System.out.println("-------------------");
+        assertEquals(expected, selectedIndices);
+    }
+
+    /***
+     * ===============
+     * RACING TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testRacingForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection racing candidates on growing batches");
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        Race race = new Race(0.95, Race.Bound.BERNSTEIN);
+        selector.setRacing(race);
+        Set<Integer> selectedIndices = selector.select(5);
+        selector.compareTestingAccuracy(selectedIndices);
+        System.out.println(race);
+        System.out.println("-------------------");
+        assertTrue(selectedIndices.size() <= 5);
+    }
+
+    /***
+     * ===============
+     * CROSS-VALIDATION TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testCrossValidatedForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection with repeated stratified 5-fold cross-validation");
+        FeatureSelection incremental = generateSelector(Selection.SFS);
+        incremental.setCrossValidation(5, 2, true);
+        incremental.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = incremental.select(5);
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setCrossValidation(5, 2, true);
+        Set<Integer> selectedIndices = selector.select(5);
+        selector.compareTestingAccuracy(selectedIndices);
+        System.out.println("-------------------");
+        assertEquals(expected, selectedIndices);
+    }
+
+    /***
+     * ===============
+     * K-NN TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testNearestNeighboursForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection with K-NN scored incrementally");
+        FeatureSelection weka = generateSelector(Selection.SFS);
+        weka.setNearestNeighbours(5, false);
+        Set<Integer> expected = weka.select(3);
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setNearestNeighbours(5, true);
+        Set<Integer> selectedIndices = selector.select(3);
+        selector.compareTestingAccuracy(selectedIndices);
+        System.out.println("-------------------");
+        assertEquals(expected, selectedIndices);
+    }
+
+    @org.junit.Test
+    public void testNearestNeighboursBaseUpdates() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("K-NN scored from a base updated in place, against IBk");
+        Classifier weka = new Classifier(FILE_NAME);
+        weka.setNearestNeighbours(5, false);
+        Classifier incremental = new Classifier(FILE_NAME);
+        incremental.setNearestNeighbours(5, true);
+
+        // Down from every feature and back up, one feature at a time, as SBS and SFS move the base
+        Random random = new Random(1);
+        FeatureSubset base = incremental.getAllFeatureIndices();
+        List<Integer> removed = new ArrayList<>();
+        for (int step = 0; step < 40; step++) {
+            int[] features = base.toArray();
+            if (step < 30) {
+                int feature = features[random.nextInt(features.length)];
+                removed.add(feature);
+                base = base.without(feature);
+            } else {
+                base = base.with(removed.remove(removed.size() - 1));
+            }
+
+            incremental.setBase(base);
+            FeatureSubset fewer = base.without(base.toArray()[random.nextInt(base.size())]);
+            FeatureSubset more = removed.isEmpty() ? base : base.with(removed.get(random.nextInt(removed.size())));
+            for (FeatureSubset subset : List.of(base, fewer, more)) {
+                assertEquals(subset.toString(), weka.classify(subset), incremental.classify(subset), 0);
+            }
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * KERNEL TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testVectorKernels() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Vector API kernels against the scalar kernels");
+        Kernels scalar = Kernels.scalar();
+        Kernels vector = Kernels.vector();
+        if (vector == null) {
+            System.out.println("Vector API unavailable, run with --add-modules jdk.incubator.vector");
+            return;
+        }
+        System.out.println("Using " + Kernels.SELECTED + " kernels");
+
+        // ISOLET is 617 features and 26 classes, the other lengths leave every size of remainder
+        Random random = new Random(123);
+        for (int length : new int[]{0, 1, 3, 7, 26, 617, 1559 * 26}) {
+            int offset = random.nextInt(5);
+            double[] values = randomValues(random, offset + length);
+            double[] column = randomValues(random, offset + length);
+
+            double[] expected = values.clone();
+            double[] actual = values.clone();
+            scalar.add(expected, offset, column, offset, length);
+            vector.add(actual, offset, column, offset, length);
+            assertTrue(Arrays.equals(expected, actual));
+
+            for (double sign : new double[]{1, -1}) {
+                double[] expectedDistances = Arrays.copyOf(values, length), expectedErrors = new double[length], expectedBounds = new double[length];
+                double[] actualDistances = Arrays.copyOf(values, length), actualErrors = new double[length], actualBounds = new double[length];
+                scalar.addWithErrors(expectedDistances, column, offset, sign, 1e-15, expectedErrors, expectedBounds, length);
+                vector.addWithErrors(actualDistances, column, offset, sign, 1e-15, actualErrors, actualBounds, length);
+                assertTrue(Arrays.equals(expectedDistances, actualDistances));
+                assertTrue(Arrays.equals(expectedErrors, actualErrors));
+                assertTrue(Arrays.equals(expectedBounds, actualBounds));
+
+                // 26 classes of length / 26 instances, stored class by class then instance by instance
+                int numInstances = length / 26;
+                for (int[] strides : new int[][]{{1, numInstances}, {26, 1}}) {
+                    for (int from : new int[]{0, numInstances / 3}) {
+                        int[] expectedPredictions = new int[numInstances - from];
+                        int[] actualPredictions = new int[numInstances - from];
+                        scalar.argmax(values, column, sign, strides[0], strides[1], 26, from, numInstances, expectedPredictions);
+                        vector.argmax(values, column, sign, strides[0], strides[1], 26, from, numInstances, actualPredictions);
+                        assertTrue(Arrays.equals(expectedPredictions, actualPredictions));
+
+                        scalar.argmax(values, null, 0, strides[0], strides[1], 26, from, numInstances, expectedPredictions);
+                        vector.argmax(values, null, 0, strides[0], strides[1], 26, from, numInstances, actualPredictions);
+                        assertTrue(Arrays.equals(expectedPredictions, actualPredictions));
+                    }
+                }
+            }
+        }
+        System.out.println("-------------------");
+    }
+
+    /**
+     * Returns log probability like values, with ties, infinities and NaNs mixed in
+     */
+    private double[] randomValues(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(100);
+            values[i] = kind == 0 ? Double.NEGATIVE_INFINITY : kind == 1 ? Double.NaN : kind < 20 ? -1 : Math.log(random.nextDouble());
+        }
+        return values;
+    }
+
+    /***
+     * ===============
+     * METRICS TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testForwardSelectionMetrics() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection with metrics");
+        File snapshot = File.createTempFile("selection", ".json");
+        try {
+            FeatureSelection selector = generateSelector(Selection.SFS);
+            selector.setMetricsSnapshot(snapshot.getPath(), 60 * 1000);
+            selector.registerMetricsMBean("selection:type=Metrics,name=TestAll");
+            Set<Integer> selectedIndices = selector.select(5);
+
+            Map<String, Number> metrics = selector.getMetrics().snapshot();
+            Object classified = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName("selection:type=Metrics,name=TestAll"), "classify.nanos.count");
+            selector.shutdown();
+            selector.compareTestingAccuracy(selectedIndices);
+            System.out.println(metrics);
+
+            // Every cache miss was classified, and every iteration swept once
+            assertEquals(metrics.get("cache.misses"), metrics.get("classify.nanos.count"));
+            assertEquals(metrics.get("iteration.nanos.count"), metrics.get("sweep.best.nanos.count"));
+            assertEquals(metrics.get("classify.nanos.count"), classified);
+            assertTrue(new String(Files.readAllBytes(snapshot.toPath())).contains("\"classify.nanos.count\": " + classified));
+        } finally {
+            snapshot.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    @org.junit.Test
+    public void testParallelSelectionWithoutMetrics() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Parallel sequential forward selection with and without metrics");
+        FeatureSelection metered = generateSelector(Selection.SFS);
+        metered.setParallelism(2);
+        Set<Integer> expected = metered.select(3);
+        Map<String, Number> metrics = metered.getMetrics().snapshot();
+        metered.shutdown();
+        System.out.println(metrics);
+
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setParallelism(2);
+        selector.setMetrics(null);
+        Set<Integer> selectedIndices = selector.select(3);
+        selector.shutdown();
+        System.out.println("-------------------");
+
+        // Only the search and pool threads are counted, so an iteration's allocation is never negative
+        assertEquals(metrics.get("iteration.nanos.count"), metrics.get("iteration.allocatedBytes.count"));
+        assertTrue(metrics.get("iteration.allocatedBytes.min").longValue() >= 0);
+        assertEquals(expected, selectedIndices);
+        assertEquals(null, selector.getMetrics());
+    }
+
+    /***
+     * ===============
+     * LISTENER TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testBackwardSelectionListener() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential backward selection events written to a file");
+        File file = File.createTempFile("selection", ".events");
+        try {
+            FeatureSelection selector = generateSelector(Selection.SBS);
+            List<SelectionEvent> events = new CopyOnWriteArrayList<>();
+            selector.addListener(events::add);
+            FileSink sink = new FileSink(file.toPath());
+            selector.addListener(sink);
+
+            Set<Integer> selectedIndices = selector.select();
+            selector.shutdown();
+            sink.close();
+            selector.compareTestingAccuracy(selectedIndices);
+
+            // Nothing is dropped at this rate, and the last event is the best subset found
+            SelectionEvent stopped = events.get(events.size() - 1);
+            assertEquals(0, selector.getDroppedEvents());
+            assertEquals(SelectionEvent.Type.STOPPED, stopped.getType());
+            assertEquals(selectedIndices, stopped.getSubset().toSet());
+            assertEquals(events.size(), Files.readAllLines(file.toPath()).size());
+        } finally {
+            file.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * FLIGHT RECORDER TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testFloatingForwardSelectionFlightRecording() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential floating forward selection under the flight recorder");
+        File file = File.createTempFile("selection", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : new String[]{"Iteration", "CandidateEvaluation", "Backtrack", "DatasetLoad", "RemoveAttribute"}) {
+                recording.enable("selection." + event);
+            }
+            recording.start();
+
+            FeatureSelection selector = generateSelector(Selection.SFFS);
+            selector.removeAttribute(0);
+            Set<Integer> selectedIndices = selector.select(3);
+            recording.stop();
+            recording.dump(file.toPath());
+            selector.compareTestingAccuracy(selectedIndices);
+
+            Map<String, Integer> counts = new TreeMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                counts.merge(event.getEventType().getName(), 1, Integer::sum);
+            }
+            System.out.println(counts);
+
+            assertTrue(counts.getOrDefault("selection.Iteration", 0) > 0);
+            assertTrue(counts.getOrDefault("selection.CandidateEvaluation", 0) > 0);
+            assertTrue(counts.getOrDefault("selection.DatasetLoad", 0) > 0);
+            assertEquals(1, (int) counts.getOrDefault("selection.RemoveAttribute", 0));
+        } finally {
+            file.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * CHECKPOINT TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testResumeFloatingForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential floating forward selection resumed from a checkpoint");
+        FeatureSelection complete = generateSelector(Selection.SFFS);
+        complete.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = complete.select();
+
+        File checkpoint = File.createTempFile("selection", ".checkpoint");
+        try {
+            // Stop part way through, the floating search passes through the same states either way
+            FeatureSelection stopped = generateSelector(Selection.SFFS);
+            stopped.setIncrementalNaiveBayes(true);
+            stopped.setCheckpoint(checkpoint.getPath(), 0);
+            stopped.select(3);
+            stopped.shutdown();
+
+            FeatureSelection selector = generateSelector(Selection.SFFS);
+            selector.setIncrementalNaiveBayes(true);
+            Set<Integer> selectedIndices = selector.resume(checkpoint.getPath());
+            selector.compareTestingAccuracy(selectedIndices);
+            assertEquals(expected, selectedIndices);
+        } finally {
+            checkpoint.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * SERVER TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testSelectionServerJobs() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection jobs run by the selection server");
+        FeatureSelection direct = generateSelector(Selection.SFS);
+        direct.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = direct.select(3);
+
+        try (SelectionServer server = new SelectionServer(0, 2, 4)) {
+            HttpClient client = HttpClient.newHttpClient();
+            URI jobs = URI.create("http://localhost:" + server.getPort() + "/jobs");
+            String job = "{\"algorithm\": \"SFS\", \"training\": \"" + FILE_NAME + "\", \"numFeatures\": 3, "
+                    + "\"maxIterationsWithoutProgress\": " + MAX_ITERATIONS_WITHOUT_PROGRESS + "}";
+
+            // Both jobs share one copy of the dataset
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(jobs).POST(HttpRequest.BodyPublishers.ofString(job)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(202, response.statusCode());
+                ids.add(response.headers().firstValue("Location").get().substring("/jobs/".length()));
+            }
+
+            for (String id : ids) {
+                HttpResponse<String> response;
+                do {
+                    Thread.sleep(50);
+                    response = client.send(HttpRequest.newBuilder(jobs.resolve("/jobs/" + id)).build(), HttpResponse.BodyHandlers.ofString());
+                    assertEquals(200, response.statusCode());
+                } while (response.body().contains("\"QUEUED\"") || response.body().contains("\"RUNNING\""));
+
+                System.out.println(response.body());
+                assertEquals(SelectionJob.Status.DONE, server.getJob(id).getStatus());
+                assertEquals(expected, server.getJob(id).getSelected());
+            }
+
+            HttpResponse<String> missing = client.send(HttpRequest.newBuilder(jobs.resolve("/jobs/none")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, missing.statusCode());
+
+            HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(jobs).POST(HttpRequest.BodyPublishers.ofString("{\"algorithm\": \"SFS\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, invalid.statusCode());
+
+            // Too large for an int, rather than wrapping round to 1
+            String outOfRange = "{\"algorithm\": \"SFS\", \"training\": \"" + FILE_NAME + "\", \"numFeatures\": 4294967297}";
+            HttpResponse<String> wrapped = client.send(HttpRequest.newBuilder(jobs).POST(HttpRequest.BodyPublishers.ofString(outOfRange)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            System.out.println(wrapped.body());
+            assertEquals(400, wrapped.statusCode());
+
+            HttpResponse<String> status = client.send(HttpRequest.newBuilder(jobs.resolve("/status")).build(), HttpResponse.BodyHandlers.ofString());
+            System.out.println(status.body());
+            assertTrue(status.body().contains("\"retainedDatasets\": 1"));
+
+            // Someone else retaining and releasing in the meantime (e.g. a batch) leaves the server's datasets
+            DatasetCache.retain();
+            DatasetCache.release();
+            assertTrue(DatasetCache.isRetaining());
+            assertEquals(1, DatasetCache.numRetained());
+        }
+        assertTrue(!DatasetCache.isRetaining());
+        assertEquals(0, DatasetCache.numRetained());
+        System.out.println("-------------------");
+    }
+
+    /***
+     * ===============
+     * BATCH TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testBatchRunnerGrid() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Forward selection grid run by the batch runner");
+        FeatureSelection direct = generateSelector(Selection.SFS);
+        direct.setIncrementalNaiveBayes(true);
+        Set<Integer> expected = direct.select(3);
+
+        FeatureSelection reshuffled = generateSelector(Selection.SFS);
+        reshuffled.setIncrementalNaiveBayes(true);
+        reshuffled.setSeed(7);
+        Set<Integer> expectedReshuffled = reshuffled.select(3);
+
+        File results = File.createTempFile("selection", ".jsonl");
+        try {
+            BatchRunner batch = new BatchRunner(Map.of(
+                    "algorithms", List.of("SFS", "SFFS"),
+                    "datasets", List.of(FILE_NAME),
+                    "seeds", List.of(123.0, 7.0),
+                    "numFeatures", 3.0,
+                    "maxIterationsWithoutProgress", (double) MAX_ITERATIONS_WITHOUT_PROGRESS));
+            batch.run(results.getPath(), 2);
+
+            List<String> lines = Files.readAllLines(results.toPath());
+            lines.forEach(System.out::println);
+            assertEquals(4, lines.size());
+
+            for (SelectionJob job : batch.getJobs()) {
+                assertEquals(SelectionJob.Status.DONE, job.getStatus());
+                if (job.getAlgorithm().equals("SFS")) assertEquals(job.getSeed() == 7 ? expectedReshuffled : expected, job.getSelected());
+            }
+        } finally {
+            results.delete();
+        }
+        System.out.println("-------------------");
+    }
+
+    @org.junit.Test
+    public void testCrossValidatedSeeds() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Cross-validated forward selection with different seeds");
+        List<Double> defaultSeed = crossValidatedSteps(Classifier.SEED);
+        List<Double> reshuffled = crossValidatedSteps(7);
+        System.out.println("Seed " + Classifier.SEED + ": " + defaultSeed + ", seed 7: " + reshuffled);
+
+        // Each seed draws its own folds, and the same seed draws the same ones
+        assertTrue(!defaultSeed.equals(reshuffled));
+        assertEquals(reshuffled, crossValidatedSteps(7));
+        System.out.println("-------------------");
+    }
+
+    // The accuracy of each step of a cross-validated forward selection with the given seed
+    private List<Double> crossValidatedSteps(long seed) throws Exception {
+        FeatureSelection selector = generateSelector(Selection.SFS);
+        selector.setCrossValidation(5, 1, true);
+        selector.setIncrementalNaiveBayes(true);
+        selector.setSeed(seed);
+
+        List<Double> steps = recordSteps(selector);
+        selector.select(3);
+        selector.shutdown();
+        return new ArrayList<>(steps);
+    }
+
+    /***
+     * ===============
+     * SPARSE TESTS
+     * ===============
+     */
+
+    @org.junit.Test
+    public void testSparseForwardSelection() throws Exception {
+        System.out.println("-------------------");
+        System.out.println("Sequential forward selection for 3 features on sparse data");
+        File file = File.createTempFile("selection", ".arff");
+        try {
+            writeSparseArff(file, 300, 1000);
+
+            // Only the non-zeros are read, into the same values as Weka reads
+            Instances instances = ArffLoader.load(file.getPath());
+            Instances expected = new Instances(Files.newBufferedReader(file.toPath()));
+            assertEquals(expected.numInstances(), instances.numInstances());
+            for (int row = 0; row < instances.numInstances(); row++) {
+                assertTrue(instances.instance(row) instanceof SparseInstance);
+                assertEquals(expected.instance(row).toString(), instances.instance(row).toString());
+            }
+            instances.setClassIndex(instances.numAttributes() - 1);
+            assertTrue(new ColumnarDataset(instances).isSparse());
+
+            // The sparse Naive Bayes columns agree with Weka trained on each subset
+            FeatureSelection weka = new SequentialForwardSelection(file.getPath(), MAX_ITERATIONS_WITHOUT_PROGRESS);
+            Set<Integer> wekaIndices = weka.select(3);
+
+            FeatureSelection selector = new SequentialForwardSelection(file.getPath(), MAX_ITERATIONS_WITHOUT_PROGRESS);
+            selector.setIncrementalNaiveBayes(true);
+            Set<Integer> selectedIndices = selector.select(3);
+            selector.compareTestingAccuracy(selectedIndices);
+            assertEquals(wekaIndices, selectedIndices);
+
+            // Sparse data is never cached as dense columns
+            assertTrue(!new File(file.getPath() + DatasetCache.EXTENSION).exists());
+        } finally {
+            DatasetCache.delete(file.getPath());
+            file.delete();
+        }
+        System.out.println("-------------------");
+    }
+
     /***
      * ===============
      * HELPER METHODS
      * ===============
      */
 
+    /**
+     * Writes a dense ARFF file of numbers written in every form the loader reads
+     * (integers, decimals, exponents, more digits than a long holds), missing
+     * values, quoted nominal values, instance weights and comments between the instances
+     */
+    private static void writeDenseArff(File file, int numInstances) throws Exception {
+        Random random = new Random(1);
+        StringBuilder arff = new StringBuilder("% Numbers in every form the fast path and its fallback read\n@relation dense\n\n");
+        for (int feature = 0; feature < 6; feature++) arff.append("@attribute f").append(feature).append(" numeric\n");
+        arff.append("@attribute colour {red, green, 'dark blue'}\n");
+        arff.append("@attribute class {negative,positive}\n\n@data\n");
+
+        String[] colours = {"red", "green", "'dark blue'"};
+        for (int row = 0; row < numInstances; row++) {
+            StringJoiner line = new StringJoiner(",", "", "\n");
+            line.add(Integer.toString(random.nextInt(2000) - 1000));
+            line.add(String.format("%.4f", random.nextGaussian()));
+            line.add(Double.toString(random.nextDouble() * 1e-3));
+            line.add((random.nextBoolean() ? "-" : "") + random.nextInt(100) + "." + random.nextInt(100) + "e" + (random.nextInt(40) - 20));
+            // More digits than a long holds exactly, read with Double.parseDouble
+            line.add(random.nextInt(1000) + "12345678901234567." + random.nextInt(10));
+            line.add(random.nextInt(10) == 0 ? "?" : Integer.toString(random.nextInt(5)));
+            line.add(random.nextInt(10) == 0 ? "?" : colours[random.nextInt(colours.length)]);
+            line.add(random.nextBoolean() ? "positive" : "negative");
+            if (row % 7 == 0) line.add("{" + (1 + random.nextInt(4)) * 0.25 + "}");
+            arff.append(line);
+            if (row % 1000 == 0) arff.append("% a comment\n\n");
+        }
+
+        Files.writeString(file.toPath(), arff);
+    }
+
+    /**
+     * Writes a sparse ARFF file of mostly zero counts, with a few missing values,
+     * where every 50th feature turns up more often in one class than the other
+     */
+    private static void writeSparseArff(File file, int numInstances, int numFeatures) throws Exception {
+        Random random = new Random(1);
+        StringBuilder arff = new StringBuilder("@relation sparse\n\n");
+        for (int feature = 0; feature < numFeatures; feature++) arff.append("@attribute f").append(feature).append(" numeric\n");
+        arff.append("@attribute class {negative,positive}\n\n@data\n");
+
+        for (int row = 0; row < numInstances; row++) {
+            boolean positive = random.nextBoolean();
+            TreeMap<Integer, String> values = new TreeMap<>();
+            for (int i = 0; i < 10; i++) values.put(random.nextInt(numFeatures), Integer.toString(1 + random.nextInt(5)));
+            for (int feature = 0; feature < numFeatures; feature += 50) {
+                if (random.nextDouble() < (positive == (feature % 100 == 0) ? 0.3 : 0.05)) values.put(feature, Integer.toString(1 + random.nextInt(5)));
+            }
+            if (random.nextInt(10) == 0) values.put(random.nextInt(numFeatures), "?");
+
+            StringJoiner line = new StringJoiner(", ", "{", "}\n");
+            values.forEach((feature, value) -> line.add(feature + " " + value));
+            // The class is left out when it is the first value, as that is 0
+            if (positive) line.add(numFeatures + " positive");
+            arff.append(line);
+        }
+
+        Files.writeString(file.toPath(), arff);
+    }
+
+    /**
+     * Builds a dataset of nominal features from the given values, one
+     * array per feature, with a class of "no" for the first half of the
+     * instances and "yes" for the second
+     */
+    private Instances nominalFixture(String[][] features) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int feature = 0; feature < features.length; feature++) attributes.add(new Attribute("f" + feature, Arrays.asList("a", "b")));
+        attributes.add(new Attribute("class", Arrays.asList("no", "yes")));
+
+        int numInstances = features[0].length;
+        Instances data = new Instances("fixture", attributes, numInstances);
+        data.setClassIndex(features.length);
+        for (int i = 0; i < numInstances; i++) {
+            double[] values = new double[features.length + 1];
+            for (int feature = 0; feature < features.length; feature++) values[feature] = features[feature][i].equals("a") ? 0 : 1;
+            values[features.length] = i < numInstances / 2 ? 0 : 1;
+            data.add(new DenseInstance(1, values));
+        }
+
+        return data;
+    }
+
     private FeatureSelection generateSelector(Selection method) throws Exception {
         FeatureSelection selector = null;
         switch (method){
@@ -157,11 +1451,22 @@ public class TestAll {
             case SFBS:
                 selector = TESTING_FILE == null ? new SequentialFloatingBackwardSelection(FILE_NAME, MAX_ITERATIONS_WITHOUT_PROGRESS) : new SequentialFloatingBackwardSelection(FILE_NAME, TESTING_FILE, MAX_ITERATIONS_WITHOUT_PROGRESS);
                 break;
+            case BEAM:
+                selector = TESTING_FILE == null ? new BeamSearchSelection(FILE_NAME, MAX_ITERATIONS_WITHOUT_PROGRESS) : new BeamSearchSelection(FILE_NAME, TESTING_FILE, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
+            case GA:
+                selector = TESTING_FILE == null ? new GeneticSelection(FILE_NAME, MAX_ITERATIONS_WITHOUT_PROGRESS) : new GeneticSelection(FILE_NAME, TESTING_FILE, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
             case SFFS:
                 selector = TESTING_FILE == null ? new SequentialFloatingForwardSelection(FILE_NAME, MAX_ITERATIONS_WITHOUT_PROGRESS) : new SequentialFloatingForwardSelection(FILE_NAME, TESTING_FILE, MAX_ITERATIONS_WITHOUT_PROGRESS);
                 break;
         }
 
+        // Print the size and accuracy of each step as the search goes
+        selector.addListener(event -> {
+            if (event.getType() == SelectionEvent.Type.STEP) System.out.println(event.getSize() + ": " + event.getAccuracy());
+        });
+
         // Special case for musk
         if(FILE_NAME.equals("musk.arff")){
             // There is a "giveaway" feature (molecule_name) which stores some class information
@@ -175,7 +1480,9 @@ public class TestAll {
         SFS,
         SBS,
         SFFS,
-        SFBS
+        SFBS,
+        BEAM,
+        GA
     }
 
 
@@ -0,0 +1,60 @@
+package selection;
+
+/**
+ * Helpers shared by the benchmarks
+ */
+final class Benchmarks {
+
+    // Iterations without progress before select() stops
+    static final int MAX_ITERATIONS_WITHOUT_PROGRESS = 3;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Creates a selector over the synthetic dataset
+     *
+     * @param algorithm one of SFS, SBS, SFFS, SFBS
+     * @param dataset
+     * @param evaluator "weka" to train a Weka classifier per subset, "naive-bayes" for the incremental evaluator,
+     *                  "nearest-neighbours" for incremental K-NN with K = 5
+     * @return
+     * @throws Exception
+     */
+    static FeatureSelection createSelector(String algorithm, SyntheticDataset dataset, String evaluator) throws Exception {
+        String fileName = dataset.getFileName();
+
+        FeatureSelection selector;
+        switch (algorithm) {
+            case "SFS":
+                selector = new SequentialForwardSelection(fileName, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
+            case "SBS":
+                selector = new SequentialBackwardSelection(fileName, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
+            case "SFFS":
+                selector = new SequentialFloatingForwardSelection(fileName, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
+            case "SFBS":
+                selector = new SequentialFloatingBackwardSelection(fileName, MAX_ITERATIONS_WITHOUT_PROGRESS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        }
+
+        switch (evaluator) {
+            case "weka":
+                break;
+            case "naive-bayes":
+                selector.setIncrementalNaiveBayes(true);
+                break;
+            case "nearest-neighbours":
+                selector.setNearestNeighbours(5, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown evaluator " + evaluator);
+        }
+
+        return selector;
+    }
+}
@@ -0,0 +1,108 @@
+package selection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scalar and Vector API kernels on arrays the size ISOLET gives
+ * the incremental evaluators: 26 classes, and 7797 instances split into 4678
+ * training and 1559 validation instances. add() is Naive Bayes adding one
+ * feature's log probabilities to a subset's, argmax() is predicting every
+ * validation instance from those sums, and addWithErrors() is K-NN adding one
+ * feature's distances to one validation instance's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+    private static final int NUM_CLASSES = 26;
+    private static final int NUM_TRAINING = 4678;
+    private static final int NUM_VALIDATION = 1559;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    private Kernels selected;
+
+    private double[] sums;
+    private double[] column;
+    private double[] totals;
+    private final int[] predictions = new int[64];
+
+    private double[] distances;
+    private double[] differences;
+    private double[] errors;
+    private double[] bounds;
+
+    // Alternates so the distances don't grow without limit
+    private double sign = 1;
+
+    @Setup
+    public void setup() {
+        selected = kernels.equals("vector") ? Kernels.vector() : Kernels.scalar();
+        if (selected == null) throw new IllegalStateException("Vector API unavailable, run with --add-modules jdk.incubator.vector");
+
+        Random random = new Random(123);
+        sums = new double[NUM_VALIDATION * NUM_CLASSES];
+        column = new double[NUM_VALIDATION * NUM_CLASSES];
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = 100 * Math.log(random.nextDouble());
+            column[i] = Math.log(random.nextDouble());
+        }
+        totals = sums.clone();
+
+        distances = new double[NUM_TRAINING];
+        differences = new double[NUM_TRAINING];
+        errors = new double[NUM_TRAINING];
+        bounds = new double[NUM_TRAINING];
+        for (int j = 0; j < NUM_TRAINING; j++) {
+            distances[j] = 50 * random.nextDouble();
+            differences[j] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double[] add() {
+        // The totals only drift by about -1 a call, so never get near overflowing
+        selected.add(totals, 0, column, 0, totals.length);
+        return totals;
+    }
+
+    @Benchmark
+    public int[] argmax() {
+        // In blocks of 64 instances, stored the way the kernels prefer, as NaiveBayesEvaluator predicts them
+        boolean classMajor = selected.prefersClassMajor();
+        for (int from = 0; from < NUM_VALIDATION; from += 64) {
+            int to = Math.min(NUM_VALIDATION, from + 64);
+            if (classMajor) {
+                selected.argmax(sums, column, 1, 1, NUM_VALIDATION, NUM_CLASSES, from, to, predictions);
+            } else {
+                selected.argmax(sums, column, 1, NUM_CLASSES, 1, NUM_CLASSES, from, to, predictions);
+            }
+        }
+        return predictions;
+    }
+
+    @Benchmark
+    public double[] addWithErrors() {
+        sign = -sign;
+        selected.addWithErrors(distances, differences, 0, sign, 1e-15, errors, bounds, NUM_TRAINING);
+        return bounds;
+    }
+}
@@ -0,0 +1,56 @@
+package selection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single call of the objective function, i.e. training and
+ * evaluating the classifier on one subset of half of the features.
+ * The score cache is turned off so every call does the full work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectiveFunctionBenchmark {
+
+    @Param({"WINE", "MUSK", "ISOLET"})
+    public SyntheticDataset dataset;
+
+    @Param({"weka", "naive-bayes"})
+    public String evaluator;
+
+    private FeatureSelection selector;
+
+    private FeatureSubset subset;
+
+    @Setup
+    public void setup() throws Exception {
+        selector = Benchmarks.createSelector("SFS", dataset, evaluator);
+        selector.setCacheSize(0);
+
+        // Every other feature
+        subset = FeatureSubset.EMPTY;
+        for (int feature : selector.getAllFeatureIndices()) {
+            if (feature % 2 == 0) subset = subset.with(feature);
+        }
+    }
+
+    @Benchmark
+    public double objectiveFunction() throws Exception {
+        return selector.objectiveFunction(subset);
+    }
+}
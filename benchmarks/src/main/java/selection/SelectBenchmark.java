@@ -0,0 +1,55 @@
+package selection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete select() run of each algorithm. A fresh selector
+ * (with an empty score cache) is created before every run, loading the data
+ * is not measured.
+ * <p>
+ * Only the incremental Naive Bayes evaluator is run by default, since a Weka
+ * SBS over ISOLET takes hours. Add -p evaluator=weka to include it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SelectBenchmark {
+
+    @Param({"SFS", "SBS", "SFFS", "SFBS"})
+    public String algorithm;
+
+    @Param({"WINE", "MUSK", "ISOLET"})
+    public SyntheticDataset dataset;
+
+    @Param({"naive-bayes"})
+    public String evaluator;
+
+    private FeatureSelection selector;
+
+    @Setup(Level.Invocation)
+    public void setup() throws Exception {
+        selector = Benchmarks.createSelector(algorithm, dataset, evaluator);
+    }
+
+    @Benchmark
+    public Set<Integer> select() throws Exception {
+        return selector.select();
+    }
+}
@@ -0,0 +1,72 @@
+package selection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one full best() or worst() sweep, i.e. scoring every candidate
+ * subset one feature away from the current selection. A tenth of the
+ * features are selected, so best() scores the other nine tenths. The score
+ * cache is turned off so each sweep scores every candidate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SweepBenchmark {
+
+    @Param({"WINE", "MUSK", "ISOLET"})
+    public SyntheticDataset dataset;
+
+    @Param({"weka", "naive-bayes"})
+    public String evaluator;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private FeatureSelection selector;
+
+    private FeatureSubset selected;
+
+    private FeatureSubset remaining;
+
+    @Setup
+    public void setup() throws Exception {
+        selector = Benchmarks.createSelector("SFS", dataset, evaluator);
+        selector.setCacheSize(0);
+        selector.setParallelism(parallelism);
+
+        selected = FeatureSubset.EMPTY;
+        remaining = FeatureSubset.EMPTY;
+        for (int feature : selector.getAllFeatureIndices()) {
+            if (feature % 10 == 0) {
+                selected = selected.with(feature);
+            } else {
+                remaining = remaining.with(feature);
+            }
+        }
+    }
+
+    @Benchmark
+    public int best() throws Exception {
+        return selector.best(selected, remaining);
+    }
+
+    @Benchmark
+    public int worst() throws Exception {
+        return selector.worst(selected);
+    }
+}
@@ -0,0 +1,87 @@
+package selection;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates ARFF files with the same shape (features, instances and classes)
+ * as the datasets used for testing, so the benchmarks do not depend on the
+ * real files being available. A tenth of the features are informative, the
+ * rest are noise, and the values are seeded so every run sees the same data.
+ */
+public enum SyntheticDataset {
+
+    WINE(13, 178, 3),
+    MUSK(166, 476, 2),
+    ISOLET(617, 7797, 26);
+
+    private final int numFeatures;
+    private final int numInstances;
+    private final int numClasses;
+
+    // Written once per JVM
+    private File file;
+
+    SyntheticDataset(int numFeatures, int numInstances, int numClasses) {
+        this.numFeatures = numFeatures;
+        this.numInstances = numInstances;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Returns the ARFF file for this shape, writing it on first use
+     *
+     * @return
+     * @throws IOException
+     */
+    public synchronized String getFileName() throws IOException {
+        if (file == null) {
+            file = File.createTempFile(name().toLowerCase() + "-", ".arff");
+            file.deleteOnExit();
+            write(file);
+        }
+        return file.getPath();
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    private void write(File file) throws IOException {
+        Random random = new Random(123);
+        int informative = Math.max(1, numFeatures / 10);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath())) {
+            writer.write("@relation " + name().toLowerCase() + "\n\n");
+
+            for (int i = 0; i < numFeatures; i++) {
+                writer.write("@attribute f" + i + " numeric\n");
+            }
+
+            writer.write("@attribute class {");
+            for (int c = 0; c < numClasses; c++) {
+                writer.write((c == 0 ? "" : ",") + "c" + c);
+            }
+            writer.write("}\n\n@data\n");
+
+            StringBuilder line = new StringBuilder();
+            for (int row = 0; row < numInstances; row++) {
+                int c = random.nextInt(numClasses);
+                line.setLength(0);
+
+                for (int i = 0; i < numFeatures; i++) {
+                    // Informative features shift their mean with the class
+                    double mean = i < informative ? c * (1 + i % 3) * 0.5 : 0;
+                    line.append(String.format(Locale.ROOT, "%.4f", mean + random.nextGaussian())).append(',');
+                }
+
+                line.append('c').append(c).append('\n');
+                writer.write(line.toString());
+            }
+        }
+    }
+}
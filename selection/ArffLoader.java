@@ -0,0 +1,531 @@
+package selection;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads ARFF files faster than Weka's own parser.
+ * <p>
+ * The file is memory mapped, the header is given to Weka to parse, and the
+ * @data section is split into line aligned chunks which are parsed in parallel.
+ * Values are read straight from the mapped bytes into each instance's double[],
+ * so no String is created per value. The result is the same Instances (same
+ * attributes, values and order) that new Instances(reader) would produce.
+ * Sparse instances ({index value, ...}) are read into SparseInstances, so
+ * only their non-zero values are ever held. Either kind may be followed by a
+ * weight in braces, as in Weka.
+ * <p>
+ * Only numeric and nominal attributes are handled here. Anything else (string,
+ * date or relational attributes, files over 2GB) falls back to Weka's parser,
+ * which is decided from the header before any data is parsed.
+ */
+public class ArffLoader {
+
+    // Don't bother splitting the data into chunks smaller than this
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    // Powers of ten which are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ArffLoader() {
+    }
+
+    /**
+     * Reads the instances in the ARFF file. The class is not set.
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static Instances load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return loadWithWeka(fileName);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int dataStart = findDataStart(buffer);
+            if (dataStart < 0) return loadWithWeka(fileName);
+
+            byte[] headerBytes = new byte[dataStart];
+            buffer.get(0, headerBytes);
+            Instances header = new Instances(new StringReader(new String(headerBytes, StandardCharsets.UTF_8)));
+
+            if (!isSupported(header)) return loadWithWeka(fileName);
+
+            return parseData(buffer, dataStart, header);
+        }
+    }
+
+    private static Instances loadWithWeka(String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            return new Instances(reader);
+        }
+    }
+
+    /**
+     * Returns true if every attribute is numeric or nominal
+     */
+    private static boolean isSupported(Instances header) {
+        for (int i = 0; i < header.numAttributes(); i++) {
+            Attribute attribute = header.attribute(i);
+            if (!attribute.isNumeric() && !attribute.isNominal()) return false;
+            if (attribute.type() == Attribute.DATE) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the line after the @data line, or -1 if there is none
+     */
+    private static int findDataStart(MappedByteBuffer buffer) {
+        int limit = buffer.limit();
+        int lineStart = 0;
+
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') lineEnd++;
+
+            int i = lineStart;
+            while (i < lineEnd && isWhitespace(buffer.get(i))) i++;
+
+            if (i + 5 <= lineEnd && buffer.get(i) == '@'
+                    && matchesIgnoreCase(buffer, i + 1, "data")
+                    && (i + 5 == lineEnd || isWhitespace(buffer.get(i + 5)))) {
+                return Math.min(lineEnd + 1, limit);
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Splits the data into line aligned chunks, parses them in parallel
+     * and adds the instances to the header in file order
+     */
+    private static Instances parseData(MappedByteBuffer buffer, int dataStart, Instances header) throws IOException {
+        int limit = buffer.limit();
+        int numChunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), (limit - dataStart) / MIN_CHUNK_SIZE));
+
+        int[] boundaries = new int[numChunks + 1];
+        boundaries[0] = dataStart;
+        boundaries[numChunks] = limit;
+        for (int i = 1; i < numChunks; i++) {
+            // Move each boundary forward to the start of the next line
+            int boundary = Math.max(boundaries[i - 1], dataStart + (int) ((long) (limit - dataStart) * i / numChunks));
+            while (boundary < limit && buffer.get(boundary - 1) != '\n') boundary++;
+            boundaries[i] = boundary;
+        }
+
+        NominalValues[] nominalValues = new NominalValues[header.numAttributes()];
+        for (int i = 0; i < nominalValues.length; i++) {
+            if (header.attribute(i).isNominal()) nominalValues[i] = new NominalValues(header.attribute(i));
+        }
+
+        List<List<Instance>> chunks;
+        try {
+            chunks = IntStream.range(0, numChunks).parallel()
+                    .mapToObj(i -> new ChunkParser(buffer, boundaries[i], boundaries[i + 1], header, nominalValues).parse())
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<Instance> instances = new ArrayList<>(chunks.stream().mapToInt(List::size).sum());
+        for (List<Instance> chunk : chunks) instances.addAll(chunk);
+
+        return ColumnarDataset.toInstances(header, instances);
+    }
+
+    /**
+     * Parses the instances in one chunk of the data section
+     */
+    private static class ChunkParser {
+
+        private final MappedByteBuffer buffer;
+        private final int end;
+        private final Instances header;
+        private final NominalValues[] nominalValues;
+
+        private int position;
+
+        private ChunkParser(MappedByteBuffer buffer, int start, int end, Instances header, NominalValues[] nominalValues) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+            this.header = header;
+            this.nominalValues = nominalValues;
+        }
+
+        private List<Instance> parse() {
+            List<Instance> rows = new ArrayList<>();
+            int numAttributes = header.numAttributes();
+
+            while (position < end) {
+                skipWhitespace();
+                if (position >= end) break;
+
+                byte first = buffer.get(position);
+
+                // Blank lines and comments
+                if (first == '\n' || first == '%') {
+                    skipLine();
+                    continue;
+                }
+
+                Instance instance;
+                if (first == '{') {
+                    position++;
+                    instance = parseSparse();
+                } else {
+                    double[] values = new double[numAttributes];
+                    for (int attribute = 0; attribute < numAttributes; attribute++) {
+                        skipSeparators();
+                        values[attribute] = parseValue(attribute);
+                    }
+                    instance = new DenseInstance(1.0, values);
+                }
+
+                skipSeparators();
+                if (position < end && buffer.get(position) == '{') {
+                    position++;
+                    instance.setWeight(parseWeight());
+                    skipSeparators();
+                }
+                if (position < end && buffer.get(position) != '\n' && buffer.get(position) != '%') {
+                    throw error("expected " + numAttributes + " values");
+                }
+
+                skipLine();
+                rows.add(instance);
+            }
+
+            return rows;
+        }
+
+        /**
+         * Parses the index value pairs of a sparse instance, after the opening brace.
+         * Attributes left out are 0, and the indices must be ascending, as in Weka.
+         */
+        private Instance parseSparse() {
+            int[] indices = new int[16];
+            double[] values = new double[16];
+            int numValues = 0;
+
+            while (true) {
+                skipSeparators();
+                if (position >= end || buffer.get(position) == '\n') throw error("unterminated sparse instance");
+                if (buffer.get(position) == '}') {
+                    position++;
+                    break;
+                }
+
+                int start = position;
+                while (position < end && isDigit(buffer.get(position))) position++;
+                if (position == start) throw error("index expected in sparse instance");
+                if (position - start > 9) throw error("index out of range in sparse instance");
+
+                int index = 0;
+                for (int i = start; i < position; i++) index = index * 10 + (buffer.get(i) - '0');
+                if (index >= header.numAttributes()) throw error("index out of range in sparse instance");
+                if (numValues > 0 && index <= indices[numValues - 1]) throw error("indices have to be ordered in sparse instance");
+
+                skipWhitespace();
+                if (numValues == indices.length) {
+                    indices = Arrays.copyOf(indices, numValues * 2);
+                    values = Arrays.copyOf(values, numValues * 2);
+                }
+                indices[numValues] = index;
+                values[numValues++] = parseValue(index);
+            }
+
+            return new SparseInstance(1.0, Arrays.copyOf(values, numValues), Arrays.copyOf(indices, numValues), header.numAttributes());
+        }
+
+        /**
+         * Parses an instance's weight, after the opening brace
+         */
+        private double parseWeight() {
+            skipWhitespace();
+            int start = position;
+            while (position < end && !isDelimiter(buffer.get(position))) position++;
+            if (position == start) throw error("instance weight expected");
+            double weight = parseNumber(start, position - start);
+
+            skipWhitespace();
+            if (position >= end || buffer.get(position) != '}') throw error("} expected after instance weight");
+            position++;
+
+            return weight;
+        }
+
+        private double parseValue(int attribute) {
+            if (position >= end || buffer.get(position) == '\n') throw error("expected " + header.numAttributes() + " values");
+
+            byte first = buffer.get(position);
+            if (first == '\'' || first == '"') {
+                return nominalValue(attribute, readQuoted(first));
+            }
+
+            int start = position;
+            while (position < end && !isDelimiter(buffer.get(position))) position++;
+            int length = position - start;
+
+            if (length == 1 && first == '?') return weka.core.Utils.missingValue();
+
+            if (nominalValues[attribute] != null) {
+                int index = nominalValues[attribute].indexOf(buffer, start, length);
+                if (index < 0) throw error("nominal value not declared in header for " + header.attribute(attribute).name());
+                return index;
+            }
+
+            return parseNumber(start, length);
+        }
+
+        private double nominalValue(int attribute, String value) {
+            if (nominalValues[attribute] == null) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw error("number expected, read " + value);
+                }
+            }
+
+            int index = header.attribute(attribute).indexOfValue(value);
+            if (index < 0) throw error("nominal value not declared in header for " + header.attribute(attribute).name());
+            return index;
+        }
+
+        /**
+         * Parses a decimal number without creating a String when the value
+         * can be computed exactly (at most 15 significant digits and a power of
+         * ten within 1e22), otherwise uses Double.parseDouble like Weka does.
+         */
+        private double parseNumber(int start, int length) {
+            int i = start;
+            int stop = start + length;
+            boolean negative = false;
+
+            if (i < stop && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigits = false;
+
+            while (i < stop && isDigit(buffer.get(i))) {
+                mantissa = mantissa * 10 + (buffer.get(i++) - '0');
+                if (mantissa != 0) digits++;
+                anyDigits = true;
+            }
+
+            if (i < stop && buffer.get(i) == '.') {
+                i++;
+                while (i < stop && isDigit(buffer.get(i))) {
+                    mantissa = mantissa * 10 + (buffer.get(i++) - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                    anyDigits = true;
+                }
+            }
+
+            if (anyDigits && i < stop && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < stop && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                    negativeExponent = buffer.get(i) == '-';
+                    i++;
+                }
+
+                int explicit = 0;
+                boolean exponentDigits = false;
+                while (i < stop && isDigit(buffer.get(i)) && explicit < 10000) {
+                    explicit = explicit * 10 + (buffer.get(i++) - '0');
+                    exponentDigits = true;
+                }
+                if (!exponentDigits) return parseSlowly(start, length);
+
+                exponent += negativeExponent ? -explicit : explicit;
+            }
+
+            if (!anyDigits || i != stop || digits > 15) return parseSlowly(start, length);
+
+            double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+                // Both operands are exact, so the one rounding gives the correctly rounded result
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return parseSlowly(start, length);
+            }
+
+            return negative ? -value : value;
+        }
+
+        private double parseSlowly(int start, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes);
+            String token = new String(bytes, StandardCharsets.UTF_8);
+
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error("number expected, read " + token);
+            }
+        }
+
+        /**
+         * Reads a quoted value, undoing Weka's backslash escapes
+         */
+        private String readQuoted(byte quote) {
+            int start = ++position;
+            boolean escaped = false;
+
+            while (position < end && buffer.get(position) != quote) {
+                if (buffer.get(position) == '\n') throw error("unterminated quote");
+                if (buffer.get(position) == '\\') {
+                    escaped = true;
+                    position++;
+                }
+                position++;
+            }
+
+            if (position >= end) throw error("unterminated quote");
+
+            byte[] bytes = new byte[position - start];
+            buffer.get(start, bytes);
+            position++;
+
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            return escaped ? weka.core.Utils.unbackQuoteChars(value) : value;
+        }
+
+        /**
+         * Weka treats commas as whitespace between values, so this does too
+         */
+        private void skipSeparators() {
+            while (position < end && (isWhitespace(buffer.get(position)) || buffer.get(position) == ',')) position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < end && isWhitespace(buffer.get(position))) position++;
+        }
+
+        private void skipLine() {
+            while (position < end && buffer.get(position) != '\n') position++;
+            position++;
+        }
+
+        private UncheckedIOException error(String message) {
+            return new UncheckedIOException(new IOException("Error parsing ARFF data at byte " + position + ": " + message));
+        }
+    }
+
+    /**
+     * Looks up the index of a nominal value from its bytes
+     */
+    private static class NominalValues {
+
+        private final Attribute attribute;
+
+        private final byte[][] values;
+
+        // Only used for attributes with many values
+        private final Map<String, Integer> indices;
+
+        private NominalValues(Attribute attribute) {
+            this.attribute = attribute;
+            this.values = new byte[attribute.numValues()][];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = attribute.value(i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            if (values.length > 16) {
+                indices = new HashMap<>();
+                for (int i = 0; i < values.length; i++) indices.put(attribute.value(i), i);
+            } else {
+                indices = null;
+            }
+        }
+
+        private int indexOf(MappedByteBuffer buffer, int start, int length) {
+            if (indices != null) {
+                byte[] bytes = new byte[length];
+                buffer.get(start, bytes);
+                Integer index = indices.get(new String(bytes, StandardCharsets.UTF_8));
+                return index == null ? -1 : index;
+            }
+
+            for (int i = 0; i < values.length; i++) {
+                if (equals(values[i], buffer, start, length)) return i;
+            }
+
+            return -1;
+        }
+
+        private static boolean equals(byte[] value, MappedByteBuffer buffer, int start, int length) {
+            if (value.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (value[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+    }
+
+    /***
+     * ===============
+     * HELPER METHODS
+     * ===============
+     */
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '\n' || b == '\r' || b == ' ' || b == '\t' || b == '{' || b == '}' || b == '%';
+    }
+
+    private static boolean matchesIgnoreCase(MappedByteBuffer buffer, int offset, String word) {
+        if (offset + word.length() > buffer.limit()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase((char) buffer.get(offset + i)) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+package selection;
+
+import weka.core.Instances;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a grid of selection jobs (see SelectionJob) described by a JSON manifest, e.g.
+ * <p>
+ * {"algorithms": ["SFS", "SBS"], "datasets": ["data/wine.arff", {"training": "data/isolet.arff", "testing": "data/isolet-test.arff"}],
+ * "seeds": [123, 1, 2], "maxIterationsWithoutProgress": [5, 10], "numFeatures": [0, 20], "classifier": "naive-bayes"}
+ * <p>
+ * Every combination of algorithm, dataset, seed, maxIterationsWithoutProgress and
+ * numFeatures is one job, the last three default to a single value if left out and
+ * any other member (classifier, incremental, ...) is passed on to every job.
+ * <p>
+ * Each dataset is read once and kept in memory for the whole batch (see
+ * DatasetCache.retain). The jobs run on a fixed number of workers, most
+ * expensive first (see estimateCost), so long jobs such as SBS on ISOLET don't
+ * start last and hold up the end of the batch. Each job's result is appended to
+ * the results file as one line of JSON as soon as it finishes.
+ */
+public class BatchRunner {
+
+    // Members of the manifest which are lists of values to run every combination of
+    private static final List<String> AXES = List.of("algorithms", "datasets", "seeds", "maxIterationsWithoutProgress", "numFeatures");
+
+    // The jobs in manifest order
+    private final List<SelectionJob> jobs = new ArrayList<>();
+
+    // Estimated cost of each job, filled in when the batch runs
+    private final Map<SelectionJob, Double> costs = new HashMap<>();
+
+    /**
+     * Reads the manifest file
+     *
+     * @param manifestFile
+     * @throws IOException
+     * @throws IllegalArgumentException if the manifest is invalid
+     */
+    public BatchRunner(String manifestFile) throws IOException {
+        this(Json.parseObject(Files.readString(Paths.get(manifestFile))));
+    }
+
+    /**
+     * Creates a job for every combination in the manifest
+     *
+     * @param manifest the members of the manifest's JSON object
+     * @throws IllegalArgumentException if the manifest is invalid
+     */
+    public BatchRunner(Map<String, Object> manifest) {
+        Map<String, Object> shared = new LinkedHashMap<>(manifest);
+        shared.keySet().removeAll(AXES);
+
+        List<Object> algorithms = axis(manifest, "algorithms", null);
+        List<Object> datasets = axis(manifest, "datasets", null);
+        List<Object> seeds = axis(manifest, "seeds", (double) Classifier.SEED);
+        List<Object> maxIterations = axis(manifest, "maxIterationsWithoutProgress", 10.0);
+        List<Object> numFeatures = axis(manifest, "numFeatures", 0.0);
+
+        for (Object dataset : datasets) {
+            for (Object algorithm : algorithms) {
+                for (Object seed : seeds) {
+                    for (Object iterations : maxIterations) {
+                        for (Object features : numFeatures) {
+                            Map<String, Object> parameters = new LinkedHashMap<>(shared);
+                            parameters.put("algorithm", algorithm);
+                            parameters.put("seed", seed);
+                            parameters.put("maxIterationsWithoutProgress", iterations);
+                            parameters.put("numFeatures", features);
+
+                            if (dataset instanceof Map) {
+                                @SuppressWarnings("unchecked")
+                                Map<String, Object> files = (Map<String, Object>) dataset;
+                                parameters.put("training", files.get("training"));
+                                parameters.put("testing", files.get("testing"));
+                            } else {
+                                parameters.put("training", dataset);
+                            }
+
+                            jobs.add(new SelectionJob(Integer.toString(jobs.size() + 1), parameters));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the jobs, in the order they are listed in the manifest
+     *
+     * @return
+     */
+    public List<SelectionJob> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Runs every job, most expensive first, appending each result to the file as it finishes
+     *
+     * @param resultsFile created, or truncated if it exists
+     * @param numWorkers number of jobs to run at once
+     * @throws Exception if the results can't be written, a failed job is only recorded as failed
+     */
+    public void run(String resultsFile, int numWorkers) throws Exception {
+        if (numWorkers < 1) throw new IllegalArgumentException("Need at least 1 worker, got " + numWorkers);
+
+        DatasetCache.retain();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, runnable -> new Thread(runnable, "batch-job"));
+        try (BufferedWriter results = Files.newBufferedWriter(Paths.get(resultsFile), StandardCharsets.UTF_8)) {
+            Deque<SelectionJob> queue = new ConcurrentLinkedDeque<>(schedule());
+            int total = queue.size();
+
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < numWorkers; i++) {
+                workers.add(() -> {
+                    SelectionJob job;
+                    while ((job = queue.pollFirst()) != null) {
+                        job.run();
+                        write(results, job);
+                    }
+                    return null;
+                });
+            }
+
+            // Rethrow a failure to write the results
+            for (Future<Void> worker : executor.invokeAll(workers)) worker.get();
+
+            long failed = jobs.stream().filter(job -> job.getStatus() != SelectionJob.Status.DONE).count();
+            System.out.println("Ran " + total + " jobs, " + failed + " failed, results in " + resultsFile);
+        } finally {
+            executor.shutdownNow();
+            DatasetCache.release();
+        }
+    }
+
+    /**
+     * Returns the jobs most expensive first, reading each dataset to size them
+     */
+    private List<SelectionJob> schedule() throws IOException {
+        Map<String, Instances> datasets = new HashMap<>();
+
+        for (SelectionJob job : jobs) {
+            Instances dataset = datasets.get(job.getTraining());
+            if (dataset == null) {
+                dataset = DatasetCache.load(job.getTraining());
+                datasets.put(job.getTraining(), dataset);
+            }
+
+            costs.put(job, estimateCost(job.getAlgorithm(), dataset.numInstances(), dataset.numAttributes() - 1, job.getNumFeatures(), job.getBeamWidth()));
+        }
+
+        List<SelectionJob> order = new ArrayList<>(jobs);
+        order.sort(Comparator.comparingDouble((SelectionJob job) -> costs.get(job)).reversed());
+        return order;
+    }
+
+    /**
+     * Returns the relative cost of a search, the number of (instance, feature) values
+     * classified if it runs to numFeatures features, or all the way if numFeatures is 0.
+     * Each step scores one candidate per feature it could add or remove, each
+     * the size of the subset, floating searches take about twice the steps and
+     * beam search takes each step once per beam. A genetic search is taken to score
+     * its population, of subsets half the limit, for as many generations as there are features.
+     *
+     * @param algorithm SFS, SBS, SFFS, SFBS, BEAM or GA
+     * @param numInstances
+     * @param numFeatures features in the dataset, not counting the class
+     * @param maxFeatures the job's limit, 0 for none
+     * @param beamWidth
+     * @return
+     */
+    static double estimateCost(String algorithm, int numInstances, int numFeatures, int maxFeatures, int beamWidth) {
+        int target = maxFeatures > 0 ? Math.min(maxFeatures, numFeatures) : numFeatures;
+        if (algorithm.equals("GA")) return (double) GeneticSelection.DEFAULT_POPULATION_SIZE * numFeatures * (target + 1) / 2 * numInstances;
+
+        boolean forward = !algorithm.equals("SBS") && !algorithm.equals("SFBS");
+
+        double candidates = 0;
+        if (forward) {
+            // Adding the (size + 1)th feature from the numFeatures - size left
+            for (int size = 0; size < target; size++) candidates += (double) (numFeatures - size) * (size + 1);
+        } else {
+            // Removing each of size features, backward searches only stop at the limit
+            int stop = maxFeatures > 0 ? target : 1;
+            for (int size = numFeatures; size > stop; size--) candidates += (double) size * (size - 1);
+        }
+
+        double steps = algorithm.equals("SFFS") || algorithm.equals("SFBS") ? 2 : algorithm.equals("BEAM") ? beamWidth : 1;
+        return steps * candidates * numInstances;
+    }
+
+    private void write(BufferedWriter results, SelectionJob job) throws IOException {
+        String json = job.toJson();
+        String line = json.substring(0, json.length() - 1) + ", \"estimatedCost\": " + Json.number(costs.get(job)) + "}";
+
+        synchronized (results) {
+            results.write(line);
+            results.newLine();
+            results.flush();
+        }
+
+        long seconds = (System.currentTimeMillis() - job.getStartedMillis()) / 1000;
+        System.out.println("Job " + job.getId() + " (" + job.getAlgorithm() + " on " + job.getTraining() + ", seed "
+                + job.getSeed() + ") " + job.getStatus() + " after " + seconds + "s"
+                + (job.getError() == null ? "" : ": " + job.getError()));
+    }
+
+    private static List<Object> axis(Map<String, Object> manifest, String name, Object defaultValue) {
+        Object value = manifest.get(name);
+        if (value == null) {
+            if (defaultValue == null) throw new IllegalArgumentException(name + " is required");
+            return List.of(defaultValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> values = value instanceof List ? (List<Object>) value : List.of(value);
+        if (values.isEmpty()) throw new IllegalArgumentException(name + " must not be empty");
+        return values;
+    }
+
+    /**
+     * Runs the batch, with the parameters manifest file, results file and
+     * optionally the number of workers (default the number of processors)
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: BatchRunner manifest.json results.jsonl [workers]");
+            return;
+        }
+
+        int numWorkers = args.length == 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        new BatchRunner(args[0]).run(args[1], numWorkers);
+    }
+}
@@ -0,0 +1,173 @@
+package selection;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Performs forward Beam Search
+ * <p>
+ * - Starts with the empty set of features as the only beam
+ * - Each level adds every remaining feature to each of the beams, and keeps
+ *   the beamWidth highest scoring of the new subsets as the next beams
+ * - Stops when the stopping criteria is met, returning the best subset seen
+ * <p>
+ * A subset reachable from several beams is only scored once per level. Each
+ * beam's children are scored together, one feature away from the beam, so
+ * they share the pool (see setParallelism), the score cache and the budget
+ * of evaluations (see setMaxEvaluations) with every other beam. A level cut
+ * short by a limit keeps the children scored so far and ends the search. With a beam
+ * width of 1 this is the same search as SequentialForwardSelection.
+ * <p>
+ * Beam search isn't checkpointed, so can't be resumed.
+ */
+public class BeamSearchSelection extends FeatureSelection {
+
+    public static final int DEFAULT_BEAM_WIDTH = 5;
+
+    // Number of subsets kept at each level
+    private int beamWidth = DEFAULT_BEAM_WIDTH;
+
+    public BeamSearchSelection(String file, int maxIterationsWithoutProgress) throws Exception {
+        super(file, maxIterationsWithoutProgress);
+    }
+
+    public BeamSearchSelection(String training, String testing, int maxIterationsWithoutProgress) throws Exception {
+        super(training, testing, maxIterationsWithoutProgress);
+    }
+
+    public Set<Integer> select(int maxNumFeatures) throws Exception {
+        return select((accuracy, size) -> size < maxNumFeatures);
+    }
+
+    public Set<Integer> select() throws Exception {
+        return select((noImprovement, size) -> noImprovement < MAX_ITERATIONS_WITHOUT_PROGRESS);
+    }
+
+    public Set<Integer> select(Criteria criteria) throws Exception {
+        startSelection();
+
+        if (resumeState() != null) throw new IllegalStateException("Beam search can not be resumed from a checkpoint");
+
+        FeatureSubset allFeatures = getAllFeatureIndices();
+
+        // The beams, highest scoring first, and their scores
+        List<FeatureSubset> beams = new ArrayList<>();
+        beams.add(FeatureSubset.EMPTY);
+
+        double accuracy = objectiveFunction(FeatureSubset.EMPTY);
+        double lastAccuracy = accuracy;
+        reportAccuracy(0, accuracy);
+
+        // Keep track of the best solution, so we never get worse
+        double highestAccuracy = 0;
+        FeatureSubset bestSoFar = FeatureSubset.EMPTY;
+
+        // Number of iterations with no improvement
+        double noImprovement = 0;
+
+        while (!limitReached() && criteria.evaluate(noImprovement, beams.get(0).size())) {
+            startIteration();
+
+            List<FeatureSubset> children = new ArrayList<>();
+            List<Double> scores = new ArrayList<>();
+            boolean cutShort = expand(beams, allFeatures, children, scores);
+
+            // No more valid features
+            if (children.isEmpty()) break;
+
+            beams = highestScoring(children, scores);
+            accuracy = scores.get(children.indexOf(beams.get(0)));
+
+            if (greaterThan(accuracy, highestAccuracy)) {
+                highestAccuracy = accuracy;
+                bestSoFar = beams.get(0);
+                reportNewBest(bestSoFar, highestAccuracy);
+            }
+
+            reportAccuracy(beams.get(0).size(), accuracy);
+
+            if (lessThanOrEqualTo(accuracy, lastAccuracy)) {
+                noImprovement++;
+            } else {
+                noImprovement = 0;
+            }
+            lastAccuracy = accuracy;
+
+            endIteration(beams.get(0), accuracy);
+
+            if (cutShort) break;
+        }
+
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
+    }
+
+    /**
+     * Scores the children of every beam, the best beam's first, skipping any
+     * child already reached from another beam. Stops early if a limit is
+     * reached, keeping only the children which were scored.
+     *
+     * @return true if a limit was reached
+     */
+    private boolean expand(List<FeatureSubset> beams, FeatureSubset allFeatures, List<FeatureSubset> children, List<Double> scores) throws Exception {
+        Set<FeatureSubset> seen = new HashSet<>();
+
+        for (FeatureSubset beam : beams) {
+            List<FeatureSubset> candidates = new ArrayList<>();
+            for (int feature : allFeatures) {
+                if (beam.contains(feature)) continue;
+
+                FeatureSubset child = beam.with(feature);
+                if (seen.add(child)) candidates.add(child);
+            }
+
+            if (candidates.isEmpty()) continue;
+
+            double[] results = neighbours(beam, candidates);
+            for (int i = 0; i < results.length; i++) {
+                // Skipped once a limit was reached
+                if (results[i] == Double.NEGATIVE_INFINITY) continue;
+
+                children.add(candidates.get(i));
+                scores.add(results[i]);
+            }
+
+            if (limitReached()) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the beamWidth highest scoring subsets, highest first. Tied
+     * subsets keep the order they were scored in, so the result doesn't
+     * depend on how many threads scored them.
+     */
+    private List<FeatureSubset> highestScoring(List<FeatureSubset> children, List<Double> scores) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < children.size(); i++) order.add(i);
+
+        // List.sort is stable
+        order.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+
+        List<FeatureSubset> highest = new ArrayList<>();
+        for (int i = 0; i < Math.min(beamWidth, order.size()); i++) highest.add(children.get(order.get(i)));
+        return highest;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    /**
+     * Sets the number of subsets kept at each level
+     *
+     * @param beamWidth
+     */
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 1) throw new IllegalArgumentException("The beam width must be at least 1, got " + beamWidth);
+        this.beamWidth = beamWidth;
+    }
+}
@@ -0,0 +1,186 @@
+package selection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The state of a selection search at the end of an iteration, enough
+ * for the search to carry on from that point (see FeatureSelection.resume).
+ * Searches which do not use some of the state (e.g. SFS has no visited
+ * subsets) leave it empty.
+ * <p>
+ * Stored as a small binary file: magic, version, the selection method
+ * and number of features, the counters, then each subset as its bitset words.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x46534350; // FSCP
+
+    private static final int VERSION = 1;
+
+    private final String method;
+    private final int numFeatures;
+
+    private final FeatureSubset selectedFeatures;
+    private final FeatureSubset remainingFeatures;
+    private final FeatureSubset bestSoFar;
+
+    private final double highestAccuracy;
+    private final double lastAccuracy;
+    private final double iterationsWithoutImprovement;
+
+    private final Set<FeatureSubset> visitedSubsets;
+
+    /**
+     * Copies the state of a search
+     *
+     * @param method the simple class name of the selection method
+     * @param numFeatures
+     * @param selectedFeatures
+     * @param remainingFeatures
+     * @param bestSoFar
+     * @param highestAccuracy
+     * @param lastAccuracy
+     * @param iterationsWithoutImprovement
+     * @param visitedSubsets copied, so the search can keep adding to it
+     */
+    public Checkpoint(String method, int numFeatures, FeatureSubset selectedFeatures, FeatureSubset remainingFeatures,
+                      FeatureSubset bestSoFar, double highestAccuracy, double lastAccuracy,
+                      double iterationsWithoutImprovement, Set<FeatureSubset> visitedSubsets) {
+        this.method = method;
+        this.numFeatures = numFeatures;
+        this.selectedFeatures = selectedFeatures;
+        this.remainingFeatures = remainingFeatures;
+        this.bestSoFar = bestSoFar;
+        this.highestAccuracy = highestAccuracy;
+        this.lastAccuracy = lastAccuracy;
+        this.iterationsWithoutImprovement = iterationsWithoutImprovement;
+        this.visitedSubsets = Collections.unmodifiableSet(new HashSet<>(visitedSubsets));
+    }
+
+    /**
+     * Writes the checkpoint to the file, replacing any previous one.
+     * The file is always either the old or the new checkpoint, never
+     * a partly written one.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(method);
+            out.writeInt(numFeatures);
+
+            out.writeDouble(highestAccuracy);
+            out.writeDouble(lastAccuracy);
+            out.writeDouble(iterationsWithoutImprovement);
+
+            selectedFeatures.write(out);
+            remainingFeatures.write(out);
+            bestSoFar.write(out);
+
+            out.writeInt(visitedSubsets.size());
+            for (FeatureSubset subset : visitedSubsets) subset.write(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint written by write
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file is not a checkpoint
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a checkpoint");
+
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException(file + " has unsupported checkpoint version " + version);
+
+            String method = in.readUTF();
+            int numFeatures = in.readInt();
+
+            double highestAccuracy = in.readDouble();
+            double lastAccuracy = in.readDouble();
+            double iterationsWithoutImprovement = in.readDouble();
+
+            FeatureSubset selectedFeatures = FeatureSubset.read(in);
+            FeatureSubset remainingFeatures = FeatureSubset.read(in);
+            FeatureSubset bestSoFar = FeatureSubset.read(in);
+
+            int numVisited = in.readInt();
+            Set<FeatureSubset> visitedSubsets = new HashSet<>();
+            for (int i = 0; i < numVisited; i++) visitedSubsets.add(FeatureSubset.read(in));
+
+            return new Checkpoint(method, numFeatures, selectedFeatures, remainingFeatures, bestSoFar,
+                    highestAccuracy, lastAccuracy, iterationsWithoutImprovement, visitedSubsets);
+        }
+    }
+
+    /***
+     * ===============
+     * GETTERS
+     * ===============
+     */
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public FeatureSubset getSelectedFeatures() {
+        return selectedFeatures;
+    }
+
+    public FeatureSubset getRemainingFeatures() {
+        return remainingFeatures;
+    }
+
+    public FeatureSubset getBestSoFar() {
+        return bestSoFar;
+    }
+
+    public double getHighestAccuracy() {
+        return highestAccuracy;
+    }
+
+    public double getLastAccuracy() {
+        return lastAccuracy;
+    }
+
+    public double getIterationsWithoutImprovement() {
+        return iterationsWithoutImprovement;
+    }
+
+    /**
+     * Returns a modifiable copy of the visited subsets
+     *
+     * @return
+     */
+    public Set<FeatureSubset> getVisitedSubsets() {
+        return new HashSet<>(visitedSubsets);
+    }
+}
@@ -0,0 +1,74 @@
+package selection;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes checkpoints on a background thread, so the search never waits
+ * for the disk. If the search checkpoints faster than they can be written
+ * only the latest is kept, older unwritten ones are dropped.
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+    private final Path file;
+
+    // The next checkpoint to write, null if there is nothing waiting
+    private final AtomicReference<Checkpoint> pending = new AtomicReference<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CheckpointWriter(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Queues the checkpoint to be written, replacing any
+     * checkpoint which has not been written yet
+     *
+     * @param checkpoint
+     */
+    public void submit(Checkpoint checkpoint) {
+        // Only schedule a write if one isn't already waiting, that write will pick this up
+        if (pending.getAndSet(checkpoint) == null) {
+            executor.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        Checkpoint checkpoint = pending.getAndSet(null);
+        if (checkpoint == null) return;
+
+        try {
+            checkpoint.write(file);
+        } catch (IOException e) {
+            // The previous checkpoint is still intact, so carry on searching
+            System.err.println("Could not write checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for any queued checkpoint to be written. If interrupted it stops
+     * waiting, and the thread's interrupt status is set again.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
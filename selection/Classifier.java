@@ -2,19 +2,12 @@ package selection;
 
 import weka.classifiers.Evaluation;
 import weka.classifiers.bayes.NaiveBayes;
-import weka.classifiers.meta.FilteredClassifier;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Reads instances from file and splits them into
@@ -28,6 +21,12 @@ import java.util.stream.IntStream;
  */
 public class Classifier {
 
+    // Default seed used to shuffle the instances before splitting them
+    public static final long SEED = 123;
+
+    // Seed the instances were shuffled with
+    private final long seed;
+
     // Data to learn model from
     private Instances training;
 
@@ -37,10 +36,45 @@ public class Classifier {
     // Only used for final evaluation
     private Instances testing;
 
+    // Column copies of the three sets, subsets are projected from these rather than filtered
+    private ColumnarDataset trainingColumns;
+    private ColumnarDataset validationColumns;
+    private ColumnarDataset testingColumns;
+
+    // Scores subsets without retraining a Weka model, null if every subset is trained with Weka
+    private SubsetEvaluator evaluator;
+
+    private boolean incrementalNaiveBayes;
+
+    // Number of neighbours for k-NN, 0 to use Naive Bayes
+    private int numNeighbours;
+    private boolean incrementalNearestNeighbours;
+
+    // Number of cross-validation folds over training and validation, 0 to use the fixed split
+    private int numFolds;
+    private int numRepeats = 1;
+    private boolean stratified;
+
+    // Time taken to classify each subset, and to train each partial evaluation
+    private MetricsRegistry.Histogram classifyTimes;
+    private MetricsRegistry.Histogram partialTimes;
+
     public Classifier(String fileName) throws Exception {
+        this(fileName, SEED);
+    }
+
+    /**
+     * Splits the file 60:20:20 into training:validation:testing
+     * after shuffling it with the given seed
+     *
+     * @param fileName
+     * @param seed
+     * @throws Exception
+     */
+    public Classifier(String fileName, long seed) throws Exception {
+        this.seed = seed;
         // Shuffle the data
-        Instances instances = readArffFile(fileName);
-        instances.randomize(new java.util.Random(123));
+        Instances instances = DatasetCache.loadShuffled(fileName, seed);
         instances.setClass(instances.attribute("class"));
 
         // Split 60:20:20 into training:validation:testing
@@ -52,12 +86,27 @@ public class Classifier {
         this.training = new Instances(instances, 0, trainSize);
         this.validation = new Instances(instances, trainSize, validationSize);
         this.testing = new Instances(instances, trainSize + validationSize, testSize);
+        setColumns();
+        setMetrics(new SimpleMetricsRegistry());
     }
 
     public Classifier(String trainingFileName, String testingFileName) throws Exception {
+        this(trainingFileName, testingFileName, SEED);
+    }
+
+    /**
+     * Splits the training file 80:20 into training:validation
+     * after shuffling it with the given seed
+     *
+     * @param trainingFileName
+     * @param testingFileName
+     * @param seed
+     * @throws Exception
+     */
+    public Classifier(String trainingFileName, String testingFileName, long seed) throws Exception {
+        this.seed = seed;
         // Shuffle the training data
-        Instances instances = readArffFile(trainingFileName);
-        instances.randomize(new java.util.Random(123));
+        Instances instances = DatasetCache.loadShuffled(trainingFileName, seed);
         instances.setClass(instances.attribute("class"));
 
         // Split training data 80:20 into training:validation
@@ -67,7 +116,10 @@ public class Classifier {
         // Set the fields
         this.training = new Instances(instances, 0, trainSize);
         this.validation = new Instances(instances, trainSize, validationSize);
-        this.testing = readArffFile(testingFileName);
+        this.testing = DatasetCache.load(testingFileName);
+        testing.setClass(testing.attribute("class"));
+        setColumns();
+        setMetrics(new SimpleMetricsRegistry());
     }
 
 
@@ -79,11 +131,21 @@ public class Classifier {
      * @throws Exception
      */
     public void removeAttribute(int index) throws Exception {
+        Events.RemoveAttribute event = new Events.RemoveAttribute();
+        event.begin();
+        String name = training.attribute(index).name();
+
         this.training = removeAttribute(index, training);
         this.validation = removeAttribute(index, validation);
         this.testing = removeAttribute(index, testing);
 
         setClass();
+        setColumns();
+
+        // The evaluator's columns refer to the old attributes
+        setEvaluator();
+
+        event.end(index, name);
     }
 
     private Instances removeAttribute(int index, Instances instances) throws Exception {
@@ -95,20 +157,29 @@ public class Classifier {
         return Filter.useFilter(instances, remove);
     }
 
+    private void setColumns() {
+        this.trainingColumns = new ColumnarDataset(training);
+        this.validationColumns = new ColumnarDataset(validation);
+        this.testingColumns = new ColumnarDataset(testing);
+    }
+
 
 
     /**
-     * Returns the classifier to use, in this case we
-     * use K-NN with K = 5.
+     * Returns the classifier to use, Naive Bayes unless
+     * setNearestNeighbours() has switched to K-NN.
      *
      * @return
      * @throws Exception
      */
     private weka.classifiers.Classifier createClassifier() throws Exception {
-        // Swap the lines out below out to use a different classifier
-        //IBk classifier = new IBk();
-        //classifier.setKNN(5);
-         return new NaiveBayes();
+        if (numNeighbours > 0) {
+            IBk classifier = new IBk();
+            classifier.setKNN(numNeighbours);
+            return classifier;
+        }
+
+        return new NaiveBayes();
     }
 
 
@@ -120,22 +191,72 @@ public class Classifier {
      * @return
      * @throws Exception
      */
-    public double classify(Set<Integer> indices) throws Exception {
+    public double classify(FeatureSubset indices) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return evaluate(indices);
+        } finally {
+            if (classifyTimes != null) classifyTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    private double evaluate(FeatureSubset indices) throws Exception {
+        if (evaluator != null) return evaluator.classify(indices);
+
+        // Only the selected columns are copied into the instances given to Weka
+        ColumnarDataset.Projection projection = trainingColumns.project(indices);
+        Instances projectedTraining = projection.toInstances();
+
         weka.classifiers.Classifier classifier = createClassifier();
+        classifier.buildClassifier(projectedTraining);
 
-        Remove rm = new Remove();
-        int[] remove = allFeaturesExcept(indices);
-        rm.setAttributeIndicesArray(remove);
-        FilteredClassifier fc = new FilteredClassifier();
-        fc.setFilter(rm);
+        return evaluate(classifier, projectedTraining, projection.of(validationColumns).toInstances());
+    }
 
-        fc.setClassifier(classifier);
-        fc.buildClassifier(training);
+    /**
+     * Returns the validation set accuracy using only the specified features,
+     * but stops classifying validation instances as soon as the accuracy can no
+     * longer reach the threshold. Then the result is the best accuracy which was
+     * still possible, which is less than the threshold.
+     *
+     * @param indices
+     * @param threshold
+     * @return the accuracy if it is at least the threshold, otherwise less than the threshold
+     * @throws Exception
+     */
+    public double classify(FeatureSubset indices, double threshold) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return evaluate(indices, threshold);
+        } finally {
+            if (classifyTimes != null) classifyTimes.record(System.nanoTime() - start);
+        }
+    }
 
-        return evaluateOnValidation(fc);
+    private double evaluate(FeatureSubset indices, double threshold) throws Exception {
+        if (evaluator != null) return evaluator.classify(indices, threshold);
+
+        ColumnarDataset.Projection projection = trainingColumns.project(indices);
+        Instances projectedTraining = projection.toInstances();
+
+        weka.classifiers.Classifier classifier = createClassifier();
+        classifier.buildClassifier(projectedTraining);
+
+        return evaluateUntilBelow(classifier, projection.of(validationColumns).toInstances(), threshold);
     }
 
 
+    /**
+     * Hints that the next subsets to classify will mostly differ from
+     * base by one feature, so the evaluator (if any) can score them
+     * incrementally. Does nothing when every subset is trained with Weka.
+     *
+     * @param base
+     */
+    public void setBase(FeatureSubset base) {
+        if (evaluator != null) evaluator.setBase(base);
+    }
+
     /**
      * Returns the accuracy on the testing set
      * using the training set to generate a classifier.
@@ -146,7 +267,7 @@ public class Classifier {
     public double testAccuracy() throws Exception {
         weka.classifiers.Classifier classifier = createClassifier();
         classifier.buildClassifier(training);
-        return evaluateOnTesting(classifier);
+        return evaluate(classifier, training, testing);
     }
 
     /**
@@ -158,102 +279,339 @@ public class Classifier {
      * @return
      * @throws Exception
      */
-    public double testAccuracy(Set<Integer> indices) throws Exception {
-        weka.classifiers.Classifier classifier = createClassifier();
-
-        // Remove all attributes not in indices
-        Remove rm = new Remove();
-        int[] remove = allFeaturesExcept(indices);
-        rm.setAttributeIndicesArray(remove);
-        FilteredClassifier fc = new FilteredClassifier();
-        fc.setFilter(rm);
+    public double testAccuracy(FeatureSubset indices) throws Exception {
+        // Only keep the attributes in indices
+        ColumnarDataset.Projection projection = trainingColumns.project(indices);
+        Instances projectedTraining = projection.toInstances();
 
         // Make the classifier
-        fc.setClassifier(classifier);
-        fc.buildClassifier(training);
+        weka.classifiers.Classifier classifier = createClassifier();
+        classifier.buildClassifier(projectedTraining);
 
         // Evaluate the classifier
-        return evaluateOnTesting(fc);
+        return evaluate(classifier, projectedTraining, projection.of(testingColumns).toInstances());
     }
 
     /**
-     * Returns the classification accuracy of the validation set
-     * using the specified classifier with the training data
+     * Returns the classification accuracy of the classifier on the
+     * testing instances, training is only used for the class priors
      *
      * @param classifier
+     * @param training
+     * @param testing
      * @return
      * @throws Exception
      */
-    private double evaluateOnValidation(weka.classifiers.Classifier classifier) throws Exception {
+    private double evaluate(weka.classifiers.Classifier classifier, Instances training, Instances testing) throws Exception {
         Evaluation eval = new Evaluation(training);
-
-        eval.evaluateModel(classifier, validation);
+        eval.evaluateModel(classifier, testing);
         return eval.pctCorrect();
     }
 
+
     /**
-     * Returns the classification accuracy of the testing set
-     * using the specified classifier with the training data
+     * Returns the training instances column by column, used
+     * to rank the features before the search
+     *
+     * @return
+     */
+    public ColumnarDataset getTrainingColumns() {
+        return trainingColumns;
+    }
+
+    /**
+     * Returns the classification accuracy of the classifier on the testing
+     * instances, counted exactly as Evaluation.pctCorrect() counts it, but
+     * one instance at a time so it can stop once the accuracy can't reach
+     * the threshold.
      *
      * @param classifier
+     * @param testing
+     * @param threshold
      * @return
      * @throws Exception
      */
-    private double evaluateOnTesting(weka.classifiers.Classifier classifier) throws Exception {
-        Evaluation eval = new Evaluation(training);
-        eval.evaluateModel(classifier, testing);
-        return eval.pctCorrect();
+    private double evaluateUntilBelow(weka.classifiers.Classifier classifier, Instances testing, double threshold) throws Exception {
+        // Weight of the instances with a class, for the best accuracy still possible
+        double total = 0;
+        for (int i = 0; i < testing.numInstances(); i++) {
+            if (!testing.instance(i).classIsMissing()) total += testing.instance(i).weight();
+        }
+
+        double correct = 0;
+        double withClass = 0;
+
+        for (int i = 0; i < testing.numInstances(); i++) {
+            Instance instance = testing.instance(i);
+            if (instance.classIsMissing()) continue;
+
+            withClass += instance.weight();
+            if (predict(classifier, instance) == (int) instance.classValue()) correct += instance.weight();
+
+            double possible = 100 * (correct + total - withClass) / total;
+            if (possible < threshold) return possible;
+        }
+
+        return 100 * correct / withClass;
     }
 
     /**
-     * Helper function which returns an array of
-     * all attributes from 0..numAttributes()
-     * except those which are specified in toKeep (i.e the indices which are not
-     * in toKeep)
+     * Returns the class the classifier predicts for the instance, or -1 if
+     * it gives every class a probability of 0, in the same way as Evaluation
+     */
+    private static int predict(weka.classifiers.Classifier classifier, Instance instance) throws Exception {
+        // The classifier never sees the class
+        Instance classMissing = (Instance) instance.copy();
+        classMissing.setDataset(instance.dataset());
+        classMissing.setClassMissing();
+        double[] distribution = classifier.distributionForInstance(classMissing);
+
+        // The first class with the highest (non-zero) probability
+        int predicted = -1;
+        double highest = 0;
+        for (int c = 0; c < distribution.length; c++) {
+            if (distribution[c] > highest) {
+                predicted = c;
+                highest = distribution[c];
+            }
+        }
+
+        return predicted;
+    }
+
+    /**
+     * Returns true if subsets can be scored a batch of validation instances at a
+     * time with partial(), which is not possible with cross-validation
      *
-     * @param toKeep the feature indices to exclude from the returned array
-     * @return all of the features except those specified in toKeep
+     * @return
      */
-    private int[] allFeaturesExcept(Set<Integer> toKeep) {
+    public boolean canScorePartially() {
+        return numFolds == 0;
+    }
+
+    /**
+     * Trains on the specified features and returns a partial evaluation,
+     * which classifies the validation instances a batch at a time
+     *
+     * @param indices
+     * @return
+     * @throws Exception
+     */
+    public PartialEvaluation partial(FeatureSubset indices) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return startEvaluation(indices);
+        } finally {
+            if (partialTimes != null) partialTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    private PartialEvaluation startEvaluation(FeatureSubset indices) throws Exception {
+        if (evaluator != null) return evaluator.partial(indices);
+
+        ColumnarDataset.Projection projection = trainingColumns.project(indices);
+
+        weka.classifiers.Classifier classifier = createClassifier();
+        classifier.buildClassifier(projection.toInstances());
+
+        return new WekaPartialEvaluation(classifier, projection.of(validationColumns).toInstances());
+    }
+
+    /**
+     * Classifies validation instances in order with a trained Weka classifier,
+     * counting exactly as Evaluation.pctCorrect() counts them
+     */
+    private static class WekaPartialEvaluation implements PartialEvaluation {
+        private final weka.classifiers.Classifier classifier;
+        private final Instances validation;
+
+        // Position of the next instance to classify, including those without a class
+        private int position;
 
-        List<Integer> toRemove = new ArrayList<Integer>();
+        private int evaluated;
+        private int correct;
 
-        for (int i = 0; i < training.numAttributes(); i++) {
-            if (!toKeep.contains(i) && i != training.classIndex()) {
-                toRemove.add(i);
+        private final int numInstances;
+
+        // Weighted counts, for the exact accuracy
+        private double correctWeight;
+        private double withClassWeight;
+
+        private WekaPartialEvaluation(weka.classifiers.Classifier classifier, Instances validation) {
+            this.classifier = classifier;
+            this.validation = validation;
+
+            int withClass = 0;
+            for (int i = 0; i < validation.numInstances(); i++) {
+                if (!validation.instance(i).classIsMissing()) withClass++;
             }
+            this.numInstances = withClass;
         }
 
-        // Convert list to int[]
-        return toRemove.stream().mapToInt(i -> i).toArray();
-    }
+        @Override
+        public int numInstances() {
+            return numInstances;
+        }
 
+        @Override
+        public void evaluateUntil(int count) throws Exception {
+            while (evaluated < count && position < validation.numInstances()) {
+                Instance instance = validation.instance(position++);
+                if (instance.classIsMissing()) continue;
+
+                evaluated++;
+                withClassWeight += instance.weight();
+                if (predict(classifier, instance) == (int) instance.classValue()) {
+                    correct++;
+                    correctWeight += instance.weight();
+                }
+            }
+        }
 
-    private Instances readArffFile(String fileName) throws IOException {
-        BufferedReader reader = new BufferedReader(
-                new FileReader(fileName));
+        @Override
+        public int numEvaluated() {
+            return evaluated;
+        }
 
-        Instances instances = new Instances(reader);
-        instances.setClass(instances.attribute("class"));
-        return instances;
+        @Override
+        public int numCorrect() {
+            return correct;
+        }
+
+        @Override
+        public double accuracy() throws Exception {
+            evaluateUntil(numInstances);
+            return 100 * correctWeight / withClassWeight;
+        }
+    }
+
+    /**
+     * Records the time taken by every classify (classify.nanos) and
+     * partial (classify.partial.nanos) in the registry, null records nothing
+     *
+     * @param metrics
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.classifyTimes = metrics == null ? null : metrics.histogram("classify.nanos");
+        this.partialTimes = metrics == null ? null : metrics.histogram("classify.partial.nanos");
     }
 
     public int getNumFeatures() {
         return training.numAttributes();
     }
 
-    public Set<Integer> getAllFeatureIndices() {
-        int totalFeatures = training.numAttributes();
-
-        Set<Integer> features = IntStream.rangeClosed(0, totalFeatures - 1)
-                .boxed().collect(Collectors.toSet());
+    /**
+     * Returns true if the data is mostly zeros, so is stored
+     * and projected sparse (see ColumnarDataset)
+     *
+     * @return
+     */
+    public boolean isSparse() {
+        return trainingColumns.isSparse();
+    }
 
+    public FeatureSubset getAllFeatureIndices() {
         // Class shouldnt be considered a feature
-        features.remove(training.classIndex());
+        return FeatureSubset.range(training.numAttributes()).without(training.classIndex());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isIncrementalNaiveBayes() {
+        return incrementalNaiveBayes;
+    }
+
+    /**
+     * Switches classify() between training a Weka NaiveBayes for
+     * every subset and the NaiveBayesEvaluator, which trains once and
+     * scores subsets by summing precomputed per feature log probabilities.
+     * Only use this with the NaiveBayes classifier from createClassifier().
+     * The testing accuracy is always computed with Weka.
+     *
+     * @param enabled
+     * @throws Exception
+     */
+    public void setIncrementalNaiveBayes(boolean enabled) throws Exception {
+        this.incrementalNaiveBayes = enabled;
+        setEvaluator();
+    }
 
+    public int getNumNeighbours() {
+        return numNeighbours;
+    }
+
+    public boolean isIncrementalNearestNeighbours() {
+        return incrementalNearestNeighbours;
+    }
 
-        // Return a set from 0..totalFeatures
-        return features;
+    /**
+     * Switches the classifier from Naive Bayes to K-NN (Weka's IBk) with
+     * numNeighbours neighbours, or back to Naive Bayes with 0. If incremental,
+     * classify() scores subsets with the NearestNeighboursEvaluator, which
+     * works out the distances between the training and validation instances
+     * once per feature rather than retraining IBk for every subset.
+     * The testing accuracy is always computed with Weka.
+     *
+     * @param numNeighbours
+     * @param incremental
+     * @throws Exception
+     */
+    public void setNearestNeighbours(int numNeighbours, boolean incremental) throws Exception {
+        if (numNeighbours < 0) {
+            throw new IllegalArgumentException("Number of neighbours can't be negative, got " + numNeighbours);
+        }
+
+        this.numNeighbours = numNeighbours;
+        this.incrementalNearestNeighbours = incremental;
+        setEvaluator();
+    }
+
+    public int getNumFolds() {
+        return numFolds;
+    }
+
+    public int getNumRepeats() {
+        return numRepeats;
+    }
+
+    public boolean isStratified() {
+        return stratified;
+    }
+
+    /**
+     * Switches classify() from training on the training set and testing on
+     * the validation set to k-fold cross-validation over both of them (see
+     * CrossValidationEvaluator). The testing set is still kept apart.
+     * 0 folds goes back to the fixed split.
+     *
+     * @param numFolds
+     * @param numRepeats
+     * @param stratified
+     * @throws Exception
+     */
+    public void setCrossValidation(int numFolds, int numRepeats, boolean stratified) throws Exception {
+        this.numFolds = numFolds;
+        this.numRepeats = numRepeats;
+        this.stratified = stratified;
+        setEvaluator();
+    }
+
+    private void setEvaluator() throws Exception {
+        if (numFolds > 0) {
+            // One copy of the training and validation instances, shared by every fold
+            Instances instances = new Instances(training);
+            for (int i = 0; i < validation.numInstances(); i++) instances.add(validation.instance(i));
+
+            this.evaluator = new CrossValidationEvaluator(new ColumnarDataset(instances), numFolds, numRepeats, stratified,
+                    seed, this::createClassifier, incrementalNaiveBayes && numNeighbours == 0);
+        } else if (numNeighbours > 0) {
+            this.evaluator = incrementalNearestNeighbours
+                    ? new NearestNeighboursEvaluator(trainingColumns, validationColumns, numNeighbours) : null;
+        } else {
+            this.evaluator = incrementalNaiveBayes ? new NaiveBayesEvaluator(training, validationColumns) : null;
+        }
     }
 
     public void setClass() {
@@ -0,0 +1,417 @@
+package selection;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds a set of instances column by column, as one double[] per attribute
+ * and an int[] of class labels, in the same internal representation Weka
+ * uses (nominal values are indices, missing values are NaN).
+ * <p>
+ * Feature subsets are taken as Projections, which are views of the selected
+ * columns and never copy anything. When a Weka classifier needs Instances, a
+ * projection builds them from only the selected columns, so the work done per
+ * subset depends on the number of selected features rather than on every
+ * attribute in the data (as it does with a Remove filter).
+ * <p>
+ * Mostly zero data (e.g. word counts read from a sparse ARFF file) is stored
+ * sparse instead, in compressed sparse column (CSC) form: the row and value of
+ * every non-zero, attribute by attribute. Then memory, and the work done to
+ * project a subset, depend on the number of non-zeros of the attributes used
+ * rather than on numInstances * numAttributes, and projections are given to
+ * Weka as SparseInstances.
+ */
+public class ColumnarDataset {
+
+    // Stored sparse if at most this fraction of the values are non-zero
+    private static final double MAX_SPARSE_DENSITY = 0.25;
+
+    // The attributes, with no instances
+    private final Instances header;
+
+    private final int numInstances;
+
+    // columns[attribute][instance], null if stored sparse
+    private final double[][] columns;
+
+    // Sparse storage, the non-zeros of attribute a are at columnStarts[a] until columnStarts[a + 1]
+    // in rowIndices (ascending) and nonZeroValues, null if stored dense
+    private final int[] columnStarts;
+    private final int[] rowIndices;
+    private final double[] nonZeroValues;
+
+    // The class of each instance, -1 if missing
+    private final int[] classes;
+
+    private final double[] weights;
+
+    public ColumnarDataset(Instances instances) {
+        this.header = new Instances(instances, 0);
+        this.numInstances = instances.numInstances();
+        this.classes = new int[numInstances];
+        this.weights = new double[numInstances];
+
+        int numAttributes = instances.numAttributes();
+        int classIndex = instances.classIndex();
+
+        // Count the non-zeros of each attribute, only visiting the values a SparseInstance stores
+        int[] counts = new int[numAttributes];
+        long nonZeros = 0;
+        for (int row = 0; row < numInstances; row++) {
+            Instance instance = instances.instance(row);
+            for (int k = 0; k < instance.numValues(); k++) {
+                if (instance.valueSparse(k) != 0) {
+                    counts[instance.index(k)]++;
+                    nonZeros++;
+                }
+            }
+
+            classes[row] = classIndex < 0 || instance.classIsMissing() ? -1 : (int) instance.classValue();
+            weights[row] = instance.weight();
+        }
+
+        if (nonZeros > MAX_SPARSE_DENSITY * numInstances * numAttributes || nonZeros > Integer.MAX_VALUE - 8) {
+            this.columns = new double[numAttributes][numInstances];
+            this.columnStarts = null;
+            this.rowIndices = null;
+            this.nonZeroValues = null;
+
+            for (int row = 0; row < numInstances; row++) {
+                Instance instance = instances.instance(row);
+                for (int k = 0; k < instance.numValues(); k++) {
+                    columns[instance.index(k)][row] = instance.valueSparse(k);
+                }
+            }
+            return;
+        }
+
+        this.columns = null;
+        this.columnStarts = new int[numAttributes + 1];
+        for (int attribute = 0; attribute < numAttributes; attribute++) {
+            columnStarts[attribute + 1] = columnStarts[attribute] + counts[attribute];
+        }
+        this.rowIndices = new int[(int) nonZeros];
+        this.nonZeroValues = new double[(int) nonZeros];
+
+        // Rows are visited in order, so each attribute's rows come out ascending
+        int[] next = Arrays.copyOf(columnStarts, numAttributes);
+        for (int row = 0; row < numInstances; row++) {
+            Instance instance = instances.instance(row);
+            for (int k = 0; k < instance.numValues(); k++) {
+                double value = instance.valueSparse(k);
+                if (value == 0) continue;
+
+                int position = next[instance.index(k)]++;
+                rowIndices[position] = row;
+                nonZeroValues[position] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns a view of only the specified features (and the class)
+     *
+     * @param indices
+     * @return
+     */
+    public Projection project(FeatureSubset indices) {
+        return new Projection(this, indices);
+    }
+
+    public Instances getHeader() {
+        return header;
+    }
+
+    public int numInstances() {
+        return numInstances;
+    }
+
+    public int numAttributes() {
+        return header.numAttributes();
+    }
+
+    public int numClasses() {
+        return header.numClasses();
+    }
+
+    public int classIndex() {
+        return header.classIndex();
+    }
+
+    /**
+     * Returns the values of the attribute for every instance. For a dense
+     * dataset this is the underlying array so must not be modified, for a
+     * sparse one it is filled in from the non-zeros.
+     *
+     * @param attribute
+     * @return
+     */
+    public double[] column(int attribute) {
+        if (columns != null) return columns[attribute];
+
+        double[] column = new double[numInstances];
+        for (int k = columnStarts[attribute]; k < columnStarts[attribute + 1]; k++) {
+            column[rowIndices[k]] = nonZeroValues[k];
+        }
+        return column;
+    }
+
+    public double value(int row, int attribute) {
+        if (columns != null) return columns[attribute][row];
+
+        int k = Arrays.binarySearch(rowIndices, columnStarts[attribute], columnStarts[attribute + 1], row);
+        return k < 0 ? 0 : nonZeroValues[k];
+    }
+
+    /**
+     * Returns true if the values are stored sparse, see columnStarts()
+     *
+     * @return
+     */
+    public boolean isSparse() {
+        return columns == null;
+    }
+
+    /**
+     * Returns the number of non-zero values of the attribute
+     * (missing values count), or every instance if stored dense
+     *
+     * @param attribute
+     * @return
+     */
+    public int numNonZeros(int attribute) {
+        return columns == null ? columnStarts[attribute + 1] - columnStarts[attribute] : numInstances;
+    }
+
+    /**
+     * Returns where each attribute's non-zeros start in rowIndices() and
+     * nonZeroValues(), followed by the total number of non-zeros. Only for a
+     * sparse dataset, this is the underlying array so must not be modified.
+     *
+     * @return
+     */
+    public int[] columnStarts() {
+        return columnStarts;
+    }
+
+    /**
+     * Returns the row of each non-zero value, ascending within each
+     * attribute. Only for a sparse dataset, this is the underlying array
+     * so must not be modified.
+     *
+     * @return
+     */
+    public int[] rowIndices() {
+        return rowIndices;
+    }
+
+    /**
+     * Returns the non-zero values, attribute by attribute. Only for a sparse
+     * dataset, this is the underlying array so must not be modified.
+     *
+     * @return
+     */
+    public double[] nonZeroValues() {
+        return nonZeroValues;
+    }
+
+    /**
+     * Returns the class of the instance, or -1 if it is missing
+     *
+     * @param row
+     * @return
+     */
+    public int classValue(int row) {
+        return classes[row];
+    }
+
+    public double weight(int row) {
+        return weights[row];
+    }
+
+    /**
+     * Returns instances with the header's attributes holding the given rows,
+     * in order. Weka only makes a shallow copy of an instance when adding it,
+     * so the values of the rows are shared rather than copied again.
+     *
+     * @param header
+     * @param rows
+     * @return
+     */
+    static Instances toInstances(Instances header, List<? extends Instance> rows) {
+        Instances instances = new Instances(header, rows.size());
+        for (Instance row : rows) instances.add(row);
+        return instances;
+    }
+
+    /**
+     * A view of a subset of the columns of a dataset. The selected
+     * attributes keep their original order, with the class in between.
+     */
+    public static class Projection {
+
+        private final ColumnarDataset data;
+
+        // The original index of each attribute in the view
+        private final int[] attributes;
+
+        // Header of the projected instances, shared by projections of other datasets
+        private final Instances header;
+
+        private Projection(ColumnarDataset data, FeatureSubset indices) {
+            int classIndex = data.classIndex();
+            FeatureSubset withClass = classIndex < 0 ? indices : indices.with(classIndex);
+
+            this.data = data;
+            this.attributes = withClass.toArray();
+
+            // Attributes belong to a single dataset, so the view needs copies
+            ArrayList<Attribute> attributeInfo = new ArrayList<>(attributes.length);
+            int projectedClassIndex = -1;
+            for (int i = 0; i < attributes.length; i++) {
+                Attribute attribute = data.header.attribute(attributes[i]);
+                attributeInfo.add(attribute.copy(attribute.name()));
+                if (attributes[i] == classIndex) projectedClassIndex = i;
+            }
+
+            this.header = new Instances(data.header.relationName(), attributeInfo, 0);
+            header.setClassIndex(projectedClassIndex);
+        }
+
+        private Projection(ColumnarDataset data, Projection other) {
+            this.data = data;
+            this.attributes = other.attributes;
+            this.header = other.header;
+        }
+
+        /**
+         * Returns the same projection over another dataset with the same attributes
+         * (e.g. the validation set), sharing the header so Weka accepts the
+         * instances of both as compatible.
+         *
+         * @param other
+         * @return
+         */
+        public Projection of(ColumnarDataset other) {
+            return new Projection(other, this);
+        }
+
+        public int numAttributes() {
+            return attributes.length;
+        }
+
+        public int numInstances() {
+            return data.numInstances;
+        }
+
+        /**
+         * Returns the original index of the i'th attribute in the view
+         *
+         * @param i
+         * @return
+         */
+        public int attribute(int i) {
+            return attributes[i];
+        }
+
+        public double value(int row, int i) {
+            return data.value(row, attributes[i]);
+        }
+
+        public int classValue(int row) {
+            return data.classes[row];
+        }
+
+        public Instances getHeader() {
+            return header;
+        }
+
+        /**
+         * Returns every instance as Weka instances
+         * holding only the projected attributes.
+         *
+         * @return
+         */
+        public Instances toInstances() {
+            int[] rows = new int[data.numInstances];
+            for (int i = 0; i < rows.length; i++) rows[i] = i;
+            return toInstances(rows);
+        }
+
+        /**
+         * Returns the specified rows as Weka instances
+         * holding only the projected attributes.
+         *
+         * @param rows
+         * @return
+         */
+        public Instances toInstances(int[] rows) {
+            if (data.isSparse()) return toSparseInstances(rows);
+
+            List<Instance> instances = new ArrayList<>(rows.length);
+
+            for (int row : rows) {
+                double[] values = new double[attributes.length];
+                for (int i = 0; i < attributes.length; i++) {
+                    values[i] = data.columns[attributes[i]][row];
+                }
+                instances.add(new DenseInstance(data.weights[row], values));
+            }
+
+            return ColumnarDataset.toInstances(header, instances);
+        }
+
+        /**
+         * Returns the specified rows as SparseInstances, turning the
+         * projected columns into rows (CSR form) a non-zero at a time
+         */
+        private Instances toSparseInstances(int[] rows) {
+            // Position of each row in the result, -1 if left out
+            int[] positions = new int[data.numInstances];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < rows.length; i++) positions[rows[i]] = i;
+
+            // Where each row's non-zeros start
+            int[] rowStarts = new int[rows.length + 1];
+            for (int attribute : attributes) {
+                for (int k = data.columnStarts[attribute]; k < data.columnStarts[attribute + 1]; k++) {
+                    int position = positions[data.rowIndices[k]];
+                    if (position >= 0) rowStarts[position + 1]++;
+                }
+            }
+            for (int i = 0; i < rows.length; i++) rowStarts[i + 1] += rowStarts[i];
+
+            // Attributes are visited in order, so each row's indices come out ascending
+            int[] indices = new int[rowStarts[rows.length]];
+            double[] values = new double[indices.length];
+            int[] next = Arrays.copyOf(rowStarts, rows.length);
+            for (int i = 0; i < attributes.length; i++) {
+                int attribute = attributes[i];
+                for (int k = data.columnStarts[attribute]; k < data.columnStarts[attribute + 1]; k++) {
+                    int position = positions[data.rowIndices[k]];
+                    if (position < 0) continue;
+
+                    indices[next[position]] = i;
+                    values[next[position]++] = data.nonZeroValues[k];
+                }
+            }
+
+            List<Instance> instances = new ArrayList<>(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                int from = rowStarts[i];
+                int to = rowStarts[i + 1];
+                instances.add(new SparseInstance(data.weights[rows[i]], Arrays.copyOfRange(values, from, to),
+                        Arrays.copyOfRange(indices, from, to), attributes.length));
+            }
+
+            return ColumnarDataset.toInstances(header, instances);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package selection;
+
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Scores subsets by k-fold cross-validation, optionally stratified and
+ * repeated with a different shuffle each time. The score is the percentage
+ * of instances classified correctly over every fold, averaged over the repeats.
+ * <p>
+ * Every fold is a pair of row index arrays over one shared, read-only
+ * ColumnarDataset, so a fold only copies the selected columns of its own rows
+ * when Weka needs Instances. The folds are built and evaluated concurrently
+ * (on the ForkJoinPool the caller is running in, so this shares the threads of
+ * FeatureSelection.setParallelism) and the results are combined in fold order.
+ * <p>
+ * With incremental Naive Bayes one NaiveBayesEvaluator is trained per fold up
+ * front, and every subset is scored by each of them.
+ */
+public class CrossValidationEvaluator implements SubsetEvaluator {
+
+    /**
+     * Creates a Weka classifier for each fold
+     */
+    public interface ClassifierFactory {
+        weka.classifiers.Classifier create() throws Exception;
+    }
+
+    private final ColumnarDataset data;
+
+    private final ClassifierFactory factory;
+
+    // Rows to train and test on for each fold of each repeat
+    private final int[][] trainingRows;
+    private final int[][] testingRows;
+
+    private final int numRepeats;
+
+    // One per fold when using incremental Naive Bayes, otherwise null
+    private final NaiveBayesEvaluator[] naiveBayes;
+
+    /**
+     * Splits the data into folds
+     *
+     * @param data the instances to cross-validate over, shared and never modified
+     * @param numFolds
+     * @param numRepeats number of times to repeat with a different shuffle
+     * @param stratified keep the class proportions of each fold close to the whole data
+     * @param seed the shuffle of repeat r uses seed + r
+     * @param factory creates the classifier to train on each fold
+     * @param incrementalNaiveBayes score with a NaiveBayesEvaluator per fold rather than the factory's classifier
+     * @throws Exception
+     */
+    public CrossValidationEvaluator(ColumnarDataset data, int numFolds, int numRepeats, boolean stratified, long seed,
+                                    ClassifierFactory factory, boolean incrementalNaiveBayes) throws Exception {
+        if (numFolds < 2 || numFolds > data.numInstances()) {
+            throw new IllegalArgumentException("Number of folds must be between 2 and the number of instances, got " + numFolds);
+        }
+        if (numRepeats < 1) {
+            throw new IllegalArgumentException("Number of repeats must be at least 1, got " + numRepeats);
+        }
+
+        this.data = data;
+        this.factory = factory;
+        this.numRepeats = numRepeats;
+        this.trainingRows = new int[numFolds * numRepeats][];
+        this.testingRows = new int[numFolds * numRepeats][];
+
+        for (int repeat = 0; repeat < numRepeats; repeat++) {
+            int[] folds = assignFolds(numFolds, stratified, new Random(seed + repeat));
+
+            for (int fold = 0; fold < numFolds; fold++) {
+                int current = fold;
+                trainingRows[repeat * numFolds + fold] = IntStream.range(0, folds.length).filter(row -> folds[row] != current).toArray();
+                testingRows[repeat * numFolds + fold] = IntStream.range(0, folds.length).filter(row -> folds[row] == current).toArray();
+            }
+        }
+
+        if (incrementalNaiveBayes) {
+            // Training needs every attribute, done once per fold rather than per subset
+            ColumnarDataset.Projection all = data.project(FeatureSubset.range(data.numAttributes()));
+
+            this.naiveBayes = new NaiveBayesEvaluator[trainingRows.length];
+            for (int fold = 0; fold < trainingRows.length; fold++) {
+                naiveBayes[fold] = new NaiveBayesEvaluator(all.toInstances(trainingRows[fold]),
+                        new ColumnarDataset(all.toInstances(testingRows[fold])));
+            }
+        } else {
+            this.naiveBayes = null;
+        }
+    }
+
+    /**
+     * Returns the fold of each row. Rows are shuffled, then (if stratified)
+     * grouped by class, and dealt out to the folds in turn.
+     */
+    private int[] assignFolds(int numFolds, boolean stratified, Random random) {
+        Integer[] order = new Integer[data.numInstances()];
+        for (int row = 0; row < order.length; row++) order[row] = row;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        // A stable sort, so rows of the same class stay shuffled
+        if (stratified) Arrays.sort(order, Comparator.comparingInt(data::classValue));
+
+        int[] folds = new int[order.length];
+        for (int i = 0; i < order.length; i++) folds[order[i]] = i % numFolds;
+
+        return folds;
+    }
+
+    @Override
+    public void setBase(FeatureSubset base) {
+        if (naiveBayes == null) return;
+
+        for (NaiveBayesEvaluator evaluator : naiveBayes) evaluator.setBase(base);
+    }
+
+    @Override
+    public double classify(FeatureSubset indices) throws Exception {
+        // Naive Bayes folds don't need the instances
+        ColumnarDataset.Projection projection = naiveBayes == null ? data.project(indices) : null;
+
+        // correct[fold] and total[fold], filled in concurrently and summed in order afterwards
+        double[][] results = new double[trainingRows.length][];
+
+        List<Exception> failures = new ArrayList<>();
+        IntStream.range(0, trainingRows.length).parallel().forEach(fold -> {
+            try {
+                results[fold] = evaluateFold(fold, projection, indices);
+            } catch (Exception e) {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+            }
+        });
+
+        if (!failures.isEmpty()) throw failures.get(0);
+
+        int numFolds = trainingRows.length / numRepeats;
+        double accuracy = 0;
+
+        for (int repeat = 0; repeat < numRepeats; repeat++) {
+            double correct = 0;
+            double total = 0;
+            for (int fold = repeat * numFolds; fold < (repeat + 1) * numFolds; fold++) {
+                correct += results[fold][0];
+                total += results[fold][1];
+            }
+            accuracy += total == 0 ? 0 : 100.0 * correct / total;
+        }
+
+        return accuracy / numRepeats;
+    }
+
+    /**
+     * Returns {correct, total} for the fold
+     */
+    private double[] evaluateFold(int fold, ColumnarDataset.Projection projection, FeatureSubset indices) throws Exception {
+        if (naiveBayes != null) {
+            NaiveBayesEvaluator evaluator = naiveBayes[fold];
+            double total = evaluator.numInstances();
+            return new double[]{Math.round(evaluator.classify(indices) * total / 100.0), total};
+        }
+
+        Instances training = projection.toInstances(trainingRows[fold]);
+        Instances testing = projection.toInstances(testingRows[fold]);
+
+        weka.classifiers.Classifier classifier = factory.create();
+        classifier.buildClassifier(training);
+
+        Evaluation evaluation = new Evaluation(training);
+        evaluation.evaluateModel(classifier, testing);
+
+        // numInstances() only counts instances with a class, as pctCorrect() does
+        return new double[]{evaluation.correct(), evaluation.numInstances()};
+    }
+}
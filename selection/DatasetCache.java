@@ -0,0 +1,356 @@
+package selection;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a binary copy of each dataset next to its ARFF file (as file.arff.fscache),
+ * so repeated runs can memory map it rather than parsing the text again.
+ * <p>
+ * The cache holds the instances in file order, so one cache serves every seed: each
+ * load shuffles the mapped instances with its own seed, as parsing would. It is
+ * laid out as:
+ * <p>
+ * - Header: magic, version, the source file's size and modification time
+ * - Attribute metadata: the ARFF header, as written by Weka
+ * - Data: every attribute as a column of little endian doubles (Weka's internal values),
+ * followed by the instance weights if any are not 1
+ * <p>
+ * A cache whose source has changed size or modification time is rewritten. Set the system property selection.datasetCache=false to
+ * turn caching off. If the cache can not be written (e.g. a read only directory) the
+ * ARFF file is used as normal. Sparse data isn't cached, as the dense columns could
+ * be orders of magnitude bigger than the file, and reading it holds only the non-zeros.
+ * <p>
+ * A long running process which loads the same datasets repeatedly (see SelectionServer)
+ * can also keep them in memory between retain() and release(). Then each dataset is only read
+ * once (until its file changes), however many seeds it is shuffled with, and callers
+ * get their own shallow copy, which shares the attribute values with the retained instances.
+ */
+public class DatasetCache {
+
+    public static final String EXTENSION = ".fscache";
+
+    private static final int MAGIC = 0x46534443; // FSDC
+
+    // 2 no longer caches sparse data, which version 1 stored dense, 3 only caches the file order
+    private static final int VERSION = 3;
+
+    // Datasets kept in memory in file order, keyed by file name
+    private static final Map<String, Retained> retained = new ConcurrentHashMap<>();
+
+    // Number of retain() calls not yet released, datasets are kept while there are any
+    private static int retainers;
+    private static volatile boolean retaining;
+
+    private DatasetCache() {
+    }
+
+    /**
+     * Keeps every dataset loaded from now on in memory, so loading it again
+     * is just a copy, until each retain() has been matched by a release().
+     * Callers which overlap (e.g. a batch run inside a server) each retain
+     * and release, and the datasets are only forgotten after the last.
+     */
+    public static synchronized void retain() {
+        retainers++;
+        retaining = true;
+    }
+
+    /**
+     * Undoes one retain(), forgetting the datasets kept if it was the last
+     */
+    public static synchronized void release() {
+        if (retainers == 0) throw new IllegalStateException("Datasets are not being retained");
+
+        if (--retainers == 0) {
+            retaining = false;
+            retained.clear();
+        }
+    }
+
+    public static boolean isRetaining() {
+        return retaining;
+    }
+
+    /**
+     * Returns the number of datasets kept in memory
+     *
+     * @return
+     */
+    public static int numRetained() {
+        return retained.size();
+    }
+
+    /**
+     * Returns the instances in the ARFF file, in file order
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static Instances load(String fileName) throws IOException {
+        return load(fileName, false, 0);
+    }
+
+    /**
+     * Returns the instances in the ARFF file shuffled with
+     * instances.randomize(new Random(seed))
+     *
+     * @param fileName
+     * @param seed
+     * @return
+     * @throws IOException
+     */
+    public static Instances loadShuffled(String fileName, long seed) throws IOException {
+        return load(fileName, true, seed);
+    }
+
+    private static Instances load(String fileName, boolean shuffled, long seed) throws IOException {
+        Instances instances = retaining ? loadRetained(fileName) : loadFile(fileName);
+
+        // Every seed shuffles its own copy of the file order
+        if (shuffled) instances.randomize(new Random(seed));
+        return instances;
+    }
+
+    /**
+     * Returns a shallow copy of the retained instances, reading them first if need be
+     */
+    private static Instances loadRetained(String fileName) throws IOException {
+        Path source = Paths.get(fileName);
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        String key = source.toAbsolutePath().normalize().toString();
+
+        // Jobs loading the same dataset at once wait for the first to read it, rather than all reading it
+        Retained dataset = retained.compute(key, (k, current) ->
+                current != null && current.sourceSize == sourceSize && current.sourceModified == sourceModified
+                        ? current : new Retained(sourceSize, sourceModified));
+
+        return new Instances(dataset.get(fileName));
+    }
+
+    private static Instances loadFile(String fileName) throws IOException {
+        Events.DatasetLoad event = new Events.DatasetLoad();
+        event.begin();
+
+        if (!isEnabled()) {
+            Instances instances = ArffLoader.load(fileName);
+            event.end(fileName, instances, false);
+            return instances;
+        }
+
+        Path source = Paths.get(fileName);
+        Path cache = Paths.get(fileName + EXTENSION);
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+
+        if (Files.exists(cache)) {
+            Instances instances = read(cache, sourceSize, sourceModified);
+            if (instances != null) {
+                event.end(fileName, instances, true);
+                return instances;
+            }
+        }
+
+        Instances instances = ArffLoader.load(fileName);
+
+        try {
+            if (isSparse(instances)) {
+                Files.deleteIfExists(cache);
+            } else {
+                write(cache, instances, sourceSize, sourceModified);
+            }
+        } catch (IOException e) {
+            // Not being able to cache is not a reason to fail
+            System.err.println("Could not write dataset cache " + cache + ": " + e.getMessage());
+        }
+
+        event.end(fileName, instances, false);
+        return instances;
+    }
+
+    private static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("selection.datasetCache"));
+    }
+
+    /**
+     * Returns the cached instances, or null if the cache is stale or unreadable
+     */
+    private static Instances read(Path cache, long sourceSize, long sourceModified) {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < 28 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            if (buffer.getLong() != sourceSize || buffer.getLong() != sourceModified) return null;
+
+            byte[] headerBytes = new byte[buffer.getInt()];
+            buffer.get(headerBytes);
+            Instances header = new Instances(new StringReader(new String(headerBytes, StandardCharsets.UTF_8)));
+
+            int numInstances = buffer.getInt();
+            int numAttributes = buffer.getInt();
+            boolean hasWeights = buffer.get() == 1;
+            if (numAttributes != header.numAttributes()) return null;
+
+            DoubleBuffer data = buffer.position(align(buffer.position())).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            double[][] rows = new double[numInstances][numAttributes];
+            for (int attribute = 0; attribute < numAttributes; attribute++) {
+                int offset = attribute * numInstances;
+                for (int row = 0; row < numInstances; row++) {
+                    rows[row][attribute] = data.get(offset + row);
+                }
+            }
+
+            List<Instance> instances = new ArrayList<>(numInstances);
+            int weightOffset = numAttributes * numInstances;
+            for (int row = 0; row < numInstances; row++) {
+                double weight = hasWeights ? data.get(weightOffset + row) : 1.0;
+                instances.add(new DenseInstance(weight, rows[row]));
+            }
+
+            return ColumnarDataset.toInstances(header, instances);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt cache (e.g. an unparseable header), it will be rewritten
+            return null;
+        }
+    }
+
+    private static void write(Path cache, Instances instances, long sourceSize, long sourceModified) throws IOException {
+        int numInstances = instances.numInstances();
+        int numAttributes = instances.numAttributes();
+
+        boolean hasWeights = false;
+        for (int row = 0; row < numInstances; row++) {
+            if (instances.instance(row).weight() != 1.0) hasWeights = true;
+        }
+
+        long dataSize = 8L * numInstances * (numAttributes + (hasWeights ? 1 : 0));
+        byte[] headerBytes = new Instances(instances, 0).toString().getBytes(StandardCharsets.UTF_8);
+
+        // Too big to map back in
+        if (dataSize + headerBytes.length + 64 > Integer.MAX_VALUE) return;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer start = ByteBuffer.allocate(align(28 + headerBytes.length + 9)).order(ByteOrder.LITTLE_ENDIAN);
+            start.putInt(MAGIC).putInt(VERSION)
+                    .putLong(sourceSize).putLong(sourceModified)
+                    .putInt(headerBytes.length).put(headerBytes)
+                    .putInt(numInstances).putInt(numAttributes)
+                    .put((byte) (hasWeights ? 1 : 0));
+            start.position(start.capacity()).flip();
+            writeFully(channel, start);
+
+            for (int attribute = 0; attribute < numAttributes; attribute++) {
+                for (int row = 0; row < numInstances; row++) {
+                    if (!buffer.hasRemaining()) flush(channel, buffer);
+                    buffer.putDouble(instances.instance(row).value(attribute));
+                }
+            }
+
+            if (hasWeights) {
+                for (int row = 0; row < numInstances; row++) {
+                    if (!buffer.hasRemaining()) flush(channel, buffer);
+                    buffer.putDouble(instances.instance(row).weight());
+                }
+            }
+
+            flush(channel, buffer);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        // Readers only ever see a complete cache
+        Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the cache of the ARFF file, if there is one
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static boolean delete(String fileName) throws IOException {
+        return Files.deleteIfExists(new File(fileName + EXTENSION).toPath());
+    }
+
+    /**
+     * A dataset kept in memory, read by the first thread to ask for it
+     */
+    private static class Retained {
+        private final long sourceSize;
+        private final long sourceModified;
+        private Instances instances;
+
+        private Retained(long sourceSize, long sourceModified) {
+            this.sourceSize = sourceSize;
+            this.sourceModified = sourceModified;
+        }
+
+        private synchronized Instances get(String fileName) throws IOException {
+            if (instances == null) instances = loadFile(fileName);
+            return instances;
+        }
+    }
+
+    /***
+     * ===============
+     * HELPER METHODS
+     * ===============
+     */
+
+    private static boolean isSparse(Instances instances) {
+        for (int row = 0; row < instances.numInstances(); row++) {
+            if (instances.instance(row) instanceof SparseInstance) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rounds up to a multiple of 8, so the doubles are aligned
+     */
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
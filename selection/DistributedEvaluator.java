@@ -0,0 +1,268 @@
+package selection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scores candidate subsets on a number of worker JVMs (see EvaluationWorker),
+ * each holding its own copy of the dataset, connected over local TCP.
+ * <p>
+ * The candidates of a sweep go into one shared queue and every worker takes
+ * the next candidate as soon as it is free, so fast workers steal the work slow
+ * ones would otherwise have queued. If a worker dies (the process exits or the
+ * connection drops) the candidate it was scoring goes back on the queue for
+ * the remaining workers. Scores are stored by candidate position, so the result
+ * is the same however the candidates were shared out.
+ */
+public class DistributedEvaluator implements AutoCloseable {
+
+    // How long to wait for a worker to load the data and connect
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private final List<Worker> workers = new ArrayList<>();
+
+    // One thread per worker to talk to it
+    private final ExecutorService executor;
+
+    // Closes the workers if the JVM exits first, removed again by close()
+    private final Thread shutdownHook = new Thread(this::close);
+
+    /**
+     * Starts the workers and waits for them to connect
+     *
+     * @param numWorkers
+     * @param datasetArguments describe the dataset, see EvaluationWorker
+     * @param jvmArguments extra arguments for the worker JVMs (e.g. -Xmx4g)
+     * @throws IOException
+     */
+    public DistributedEvaluator(int numWorkers, List<String> datasetArguments, List<String> jvmArguments) throws IOException {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Need at least 1 worker, got " + numWorkers);
+        }
+
+        this.executor = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "evaluation-worker-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<Long, Process> processes = new HashMap<>();
+
+        try (ServerSocket server = new ServerSocket(0, numWorkers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+
+            for (int i = 0; i < numWorkers; i++) {
+                Process process = startWorker(server.getLocalPort(), datasetArguments, jvmArguments);
+                processes.put(process.pid(), process);
+            }
+
+            for (int i = 0; i < numWorkers; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+
+                Worker worker = new Worker(socket);
+                worker.process = processes.get(worker.pid);
+                workers.add(worker);
+            }
+        } catch (SocketTimeoutException e) {
+            abandon(processes.values());
+            throw new IOException("Only " + workers.size() + " of " + numWorkers + " workers connected", e);
+        } catch (IOException e) {
+            // A worker could not be started or did not identify itself
+            abandon(processes.values());
+            throw e;
+        }
+
+        // Don't leave workers running if we exit without closing
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Closes the workers which connected and destroys every process started,
+     * for when the constructor can't finish
+     */
+    private void abandon(Collection<Process> processes) {
+        close();
+        processes.forEach(Process::destroyForcibly);
+    }
+
+    private static Process startWorker(int port, List<String> datasetArguments, List<String> jvmArguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        // Workers use the same kernels as this JVM
+        if (Kernels.SELECTED.lanes() > 1) command.add("--add-modules=jdk.incubator.vector");
+        command.addAll(jvmArguments);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(EvaluationWorker.class.getName());
+        command.add(InetAddress.getLoopbackAddress().getHostAddress());
+        command.add(Integer.toString(port));
+        command.addAll(datasetArguments);
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Returns the score of each candidate, in the same order as the candidates.
+     *
+     * @param candidates
+     * @param base the subset the candidates are one feature away from, or null
+     * @return
+     * @throws Exception if a worker could not score a candidate, or every worker has died
+     */
+    public double[] classify(List<FeatureSubset> candidates, FeatureSubset base) throws Exception {
+        double[] results = new double[candidates.size()];
+
+        Deque<Integer> queue = new ConcurrentLinkedDeque<>();
+        for (int i = 0; i < results.length; i++) queue.add(i);
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        // A worker which fails puts its candidate back, but the others may have
+        // already found the queue empty and stopped, so go round again with the
+        // workers still alive until the queue is empty or none are left
+        while (!queue.isEmpty() && getNumWorkers() > 0) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Worker worker : workers) {
+                if (!worker.alive) continue;
+
+                tasks.add(() -> {
+                    Integer next;
+                    while (failure.get() == null && (next = queue.pollFirst()) != null) {
+                        try {
+                            results[next] = worker.classify(next, candidates.get(next), base);
+                        } catch (IOException e) {
+                            // Let another worker have this candidate
+                            queue.addFirst(next);
+                            worker.kill();
+                            System.err.println("Evaluation worker " + worker.pid + " failed: " + e);
+                            break;
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            executor.invokeAll(tasks);
+
+            if (failure.get() != null) throw failure.get();
+        }
+
+        if (!queue.isEmpty()) throw new IOException("All evaluation workers have failed");
+
+        return results;
+    }
+
+    /**
+     * Returns the number of workers still running
+     *
+     * @return
+     */
+    public int getNumWorkers() {
+        return (int) workers.stream().filter(worker -> worker.alive).count();
+    }
+
+    /**
+     * Shuts down every worker
+     */
+    @Override
+    public synchronized void close() {
+        for (Worker worker : workers) {
+            if (!worker.alive) continue;
+
+            try {
+                worker.out.writeByte(EvaluationWorker.SHUTDOWN);
+                worker.out.flush();
+            } catch (IOException e) {
+                // It will be killed below anyway
+            }
+            worker.kill();
+        }
+
+        executor.shutdownNow();
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down, possibly running this hook
+        }
+    }
+
+    /**
+     * The connection to one worker process
+     */
+    private static class Worker {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final long pid;
+
+        private Process process;
+
+        private volatile boolean alive = true;
+
+        // The last base sent, so it is only sent once per sweep
+        private FeatureSubset base;
+
+        private Worker(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.pid = in.readLong();
+        }
+
+        private double classify(int id, FeatureSubset subset, FeatureSubset base) throws Exception {
+            if (base != null && !base.equals(this.base)) {
+                out.writeByte(EvaluationWorker.BASE);
+                base.write(out);
+                this.base = base;
+            }
+
+            out.writeByte(EvaluationWorker.SCORE);
+            out.writeInt(id);
+            subset.write(out);
+            out.flush();
+
+            int responseId = in.readInt();
+            if (responseId != id) throw new IOException("Expected response " + id + " but got " + responseId);
+
+            if (in.readByte() == EvaluationWorker.FAILED) {
+                throw new Exception("Worker " + pid + " could not score " + subset + ": " + in.readUTF());
+            }
+
+            return in.readDouble();
+        }
+
+        private void kill() {
+            alive = false;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            if (process != null) process.destroy();
+        }
+    }
+}
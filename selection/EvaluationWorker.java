@@ -0,0 +1,146 @@
+package selection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A worker process for DistributedEvaluator. Loads its own copy of the
+ * dataset, connects back to the coordinator and scores the subsets it is
+ * sent, one at a time, until the coordinator shuts it down or disconnects.
+ * <p>
+ * Arguments: host port trainingFile [--testing file] [--seed seed] [--remove index]... [--incremental-naive-bayes]
+ * [--nearest-neighbours k incremental] [--cross-validation folds repeats stratified]
+ * <p>
+ * The dataset arguments are built by FeatureSelection so the worker's
+ * classifier is set up exactly as the coordinator's is.
+ */
+public class EvaluationWorker {
+
+    // Message types sent by the coordinator
+    static final byte SHUTDOWN = 0;
+    static final byte SCORE = 1;
+    static final byte BASE = 2;
+
+    // Response status sent by the worker
+    static final byte FAILED = 0;
+    static final byte OK = 1;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: EvaluationWorker host port trainingFile [--testing file] [--seed seed] [--remove index]... [--incremental-naive-bayes] [--nearest-neighbours k incremental] [--cross-validation folds repeats stratified]");
+            System.exit(1);
+        }
+
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        Classifier classifier = createClassifier(args, 2);
+
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            // Identify ourselves so the coordinator knows which process this is
+            out.writeLong(ProcessHandle.current().pid());
+            out.flush();
+
+            serve(classifier, in, out);
+        }
+    }
+
+    /**
+     * Builds the classifier described by the dataset arguments, starting at args[from]
+     */
+    static Classifier createClassifier(String[] args, int from) throws Exception {
+        String trainingFile = args[from];
+        String testingFile = null;
+        long seed = Classifier.SEED;
+        List<Integer> removed = new ArrayList<>();
+        boolean incrementalNaiveBayes = false;
+        int numNeighbours = 0;
+        boolean incrementalNearestNeighbours = false;
+        int numFolds = 0, numRepeats = 1;
+        boolean stratified = false;
+
+        for (int i = from + 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--testing":
+                    testingFile = args[++i];
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--remove":
+                    removed.add(Integer.parseInt(args[++i]));
+                    break;
+                case "--incremental-naive-bayes":
+                    incrementalNaiveBayes = true;
+                    break;
+                case "--nearest-neighbours":
+                    numNeighbours = Integer.parseInt(args[++i]);
+                    incrementalNearestNeighbours = Boolean.parseBoolean(args[++i]);
+                    break;
+                case "--cross-validation":
+                    numFolds = Integer.parseInt(args[++i]);
+                    numRepeats = Integer.parseInt(args[++i]);
+                    stratified = Boolean.parseBoolean(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown worker argument " + args[i]);
+            }
+        }
+
+        Classifier classifier = testingFile == null ? new Classifier(trainingFile, seed) : new Classifier(trainingFile, testingFile, seed);
+        for (int index : removed) classifier.removeAttribute(index);
+        if (incrementalNaiveBayes) classifier.setIncrementalNaiveBayes(true);
+        if (numNeighbours > 0) classifier.setNearestNeighbours(numNeighbours, incrementalNearestNeighbours);
+        if (numFolds > 0) classifier.setCrossValidation(numFolds, numRepeats, stratified);
+
+        return classifier;
+    }
+
+    private static void serve(Classifier classifier, DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                // The coordinator has gone away
+                return;
+            }
+
+            switch (type) {
+                case SHUTDOWN:
+                    return;
+                case BASE:
+                    classifier.setBase(FeatureSubset.read(in));
+                    break;
+                case SCORE:
+                    int id = in.readInt();
+                    FeatureSubset subset = FeatureSubset.read(in);
+
+                    out.writeInt(id);
+                    try {
+                        double score = classifier.classify(subset);
+                        out.writeByte(OK);
+                        out.writeDouble(score);
+                    } catch (Exception e) {
+                        out.writeByte(FAILED);
+                        out.writeUTF(String.valueOf(e));
+                    }
+                    out.flush();
+                    break;
+                default:
+                    throw new IOException("Unknown message type " + type);
+            }
+        }
+    }
+}
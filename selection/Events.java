@@ -0,0 +1,177 @@
+package selection;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import weka.core.Instances;
+
+import java.io.File;
+
+/**
+ * Java Flight Recorder events for what the search is doing, so a recording
+ * shows which iteration, candidate or phase the time and allocation went to.
+ * They are all duration events, begun before the work and committed after it.
+ * <p>
+ * When JFR isn't recording these events the JIT removes the event objects
+ * and begin()/commit() do nothing, so each costs next to nothing. Fields are
+ * only filled in (and anything extra computed) after shouldCommit() says the
+ * event will actually be recorded.
+ * <p>
+ * Record with e.g. java -XX:StartFlightRecording=filename=selection.jfr ...
+ * and look for the Feature Selection category in JDK Mission Control.
+ */
+final class Events {
+
+    private static final String CATEGORY = "Feature Selection";
+
+    private Events() {
+    }
+
+    @Name("selection.Iteration")
+    @Label("Selection Iteration")
+    @Category(CATEGORY)
+    @Description("One iteration of a selection method's main loop")
+    static class Iteration extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Iteration")
+        int iteration;
+
+        @Label("Subset Size")
+        @Description("Number of features selected at the end of the iteration")
+        int subsetSize;
+
+        @Label("Accuracy")
+        @Description("Validation accuracy of the selected features at the end of the iteration")
+        double accuracy;
+
+        void end(String method, int iteration, int subsetSize, double accuracy) {
+            if (!shouldCommit()) return;
+
+            this.method = method;
+            this.iteration = iteration;
+            this.subsetSize = subsetSize;
+            this.accuracy = accuracy;
+            commit();
+        }
+    }
+
+    @Name("selection.CandidateEvaluation")
+    @Label("Candidate Evaluation")
+    @Category(CATEGORY)
+    @Description("Scoring one candidate subset of a best() or worst() sweep, including cache lookups")
+    static class CandidateEvaluation extends Event {
+        @Label("Feature")
+        @Description("The feature added or removed to make the candidate, -1 if it isn't one feature away")
+        int feature;
+
+        @Label("Subset Size")
+        int subsetSize;
+
+        @Label("Accuracy")
+        @Description("The candidate's score, or an upper bound below the best so far if it was abandoned")
+        double accuracy;
+
+        void end(FeatureSubset base, FeatureSubset candidate, double accuracy) {
+            if (!shouldCommit()) return;
+
+            this.feature = base == null ? -1 : base.onlyDifference(candidate);
+            this.subsetSize = candidate.size();
+            this.accuracy = accuracy;
+            commit();
+        }
+    }
+
+    @Name("selection.Backtrack")
+    @Label("Floating Backtrack")
+    @Category(CATEGORY)
+    @Description("One conditional step of a floating search, removing (SFFS) or adding (SFBS) a feature")
+    static class Backtrack extends Event {
+        @Label("Feature")
+        int feature;
+
+        @Label("Removed")
+        @Description("True if the step removed the feature, false if it added it")
+        boolean removed;
+
+        @Label("Subset Size")
+        @Description("Number of features selected after the step, before it was undone")
+        int subsetSize;
+
+        @Label("Accuracy")
+        double accuracy;
+
+        @Label("Kept")
+        @Description("False if the step made no improvement and was undone")
+        boolean kept;
+
+        void end(int feature, boolean removed, int subsetSize, double accuracy, boolean kept) {
+            if (!shouldCommit()) return;
+
+            this.feature = feature;
+            this.removed = removed;
+            this.subsetSize = subsetSize;
+            this.accuracy = accuracy;
+            this.kept = kept;
+            commit();
+        }
+    }
+
+    @Name("selection.DatasetLoad")
+    @Label("Dataset Load")
+    @Category(CATEGORY)
+    @Description("Loading an ARFF file, from its binary cache if possible")
+    static class DatasetLoad extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Instances")
+        int instances;
+
+        @Label("Attributes")
+        int attributes;
+
+        @Label("From Cache")
+        @Description("True if read from the binary cache rather than parsed")
+        boolean fromCache;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        void end(String file, Instances loaded, boolean fromCache) {
+            if (!shouldCommit()) return;
+
+            this.file = file;
+            this.instances = loaded.numInstances();
+            this.attributes = loaded.numAttributes();
+            this.fromCache = fromCache;
+            this.size = new File(file).length();
+            commit();
+        }
+    }
+
+    @Name("selection.RemoveAttribute")
+    @Label("Remove Attribute")
+    @Category(CATEGORY)
+    @Description("Filtering an attribute out of the training, validation and testing instances")
+    static class RemoveAttribute extends Event {
+        @Label("Attribute Index")
+        int index;
+
+        @Label("Attribute Name")
+        String name;
+
+        void end(int index, String name) {
+            if (!shouldCommit()) return;
+
+            this.index = index;
+            this.name = name;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Scores each feature on its own with cheap filter methods, so the
+ * wrapper search only needs to consider the most promising features.
+ * <p>
+ * - Mutual information and chi-squared measure how much each feature says
+ * about the class. Numeric features are split into equal frequency bins first.
+ * - ReliefF rewards features whose values differ between near neighbours of
+ * different classes and agree between near neighbours of the same class, so
+ * it also picks up features which only matter together with others.
+ * <p>
+ * The methods are run at the same time, and each spreads its own work over
+ * the common ForkJoinPool. When several methods are combined each method's
+ * scores are scaled to [0, 1] (by their minimum and maximum) and averaged.
+ */
+public class FeatureRanking {
+
+    public enum Method {
+        MUTUAL_INFORMATION,
+        CHI_SQUARED,
+        RELIEF_F
+    }
+
+    // Number of bins numeric features are split into for mutual information and chi-squared
+    private static final int NUM_BINS = 10;
+
+    // Number of instances ReliefF samples, and neighbours it uses for each
+    private static final int RELIEF_SAMPLES = 250;
+    private static final int RELIEF_NEIGHBOURS = 10;
+
+    private static final long SEED = 1;
+
+    private final ColumnarDataset data;
+
+    // Instances with a class, the only ones used
+    private final int[] rows;
+
+    private final boolean[] nominal;
+
+    /**
+     * @param data the instances to score the features on, normally the training set
+     */
+    public FeatureRanking(ColumnarDataset data) {
+        this.data = data;
+        this.rows = IntStream.range(0, data.numInstances()).filter(row -> data.classValue(row) >= 0).toArray();
+        this.nominal = new boolean[data.numAttributes()];
+        for (int attribute = 0; attribute < nominal.length; attribute++) {
+            nominal[attribute] = data.getHeader().attribute(attribute).isNominal();
+        }
+    }
+
+    /**
+     * Returns the features with the k highest combined scores,
+     * or all of them if there are k or fewer
+     *
+     * @param k
+     * @param methods
+     * @return
+     * @throws Exception
+     */
+    public FeatureSubset top(int k, Method... methods) throws Exception {
+        double[] scores = scores(methods);
+
+        Integer[] features = features().boxed().toArray(Integer[]::new);
+        // Highest first, ties go to the lower index so the result doesn't depend on the sort
+        Arrays.sort(features, (a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Integer.compare(a, b));
+
+        return FeatureSubset.of(Arrays.asList(features).subList(0, Math.min(k, features.length)));
+    }
+
+    /**
+     * Returns the features whose combined score is at least the threshold
+     *
+     * @param threshold
+     * @param methods
+     * @return
+     * @throws Exception
+     */
+    public FeatureSubset above(double threshold, Method... methods) throws Exception {
+        double[] scores = scores(methods);
+        return FeatureSubset.of(features().filter(feature -> scores[feature] >= threshold).toArray());
+    }
+
+    /**
+     * Returns the score of every attribute (NaN for the class) from the
+     * specified methods. A single method's scores are returned as they are,
+     * several methods' scores are scaled to [0, 1] and averaged.
+     *
+     * @param methods
+     * @return
+     * @throws Exception
+     */
+    public double[] scores(Method... methods) throws Exception {
+        if (methods.length == 0) throw new IllegalArgumentException("At least one ranking method is needed");
+
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        for (Method method : methods) tasks.add(() -> score(method));
+
+        List<Future<double[]>> futures = ForkJoinPool.commonPool().invokeAll(tasks);
+        if (methods.length == 1) return futures.get(0).get();
+
+        double[] combined = new double[data.numAttributes()];
+        for (Future<double[]> future : futures) {
+            double[] scaled = scale(future.get());
+            for (int feature = 0; feature < combined.length; feature++) {
+                combined[feature] += scaled[feature] / methods.length;
+            }
+        }
+
+        return combined;
+    }
+
+    private double[] score(Method method) {
+        switch (method) {
+            case MUTUAL_INFORMATION:
+                return perFeature(this::mutualInformation);
+            case CHI_SQUARED:
+                return perFeature(this::chiSquared);
+            case RELIEF_F:
+                return reliefF();
+            default:
+                throw new IllegalArgumentException("Unknown ranking method " + method);
+        }
+    }
+
+    /***
+     * ===============
+     * MUTUAL INFORMATION AND CHI-SQUARED
+     * ===============
+     */
+
+    private double[] perFeature(ToDoubleFunction<double[][]> measure) {
+        double[] scores = new double[data.numAttributes()];
+        scores[data.classIndex()] = Double.NaN;
+
+        features().parallel().forEach(feature -> scores[feature] = measure.applyAsDouble(contingencyTable(feature)));
+
+        return scores;
+    }
+
+    /**
+     * Returns the weighted counts of each (value, class) pair of the feature,
+     * as table[value][class]. Instances missing the feature are left out.
+     */
+    private double[][] contingencyTable(int feature) {
+        int[] values = discretize(feature);
+        int numValues = 0;
+        for (int value : values) numValues = Math.max(numValues, value + 1);
+
+        double[][] table = new double[numValues][data.numClasses()];
+        for (int i = 0; i < rows.length; i++) {
+            if (values[i] >= 0) table[values[i]][data.classValue(rows[i])] += data.weight(rows[i]);
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the value index (nominal) or bin (numeric) of each used
+     * instance, -1 if the value is missing
+     */
+    private int[] discretize(int feature) {
+        double[] column = data.column(feature);
+        int[] values = new int[rows.length];
+
+        if (nominal[feature]) {
+            for (int i = 0; i < rows.length; i++) {
+                double value = column[rows[i]];
+                values[i] = Double.isNaN(value) ? -1 : (int) value;
+            }
+            return values;
+        }
+
+        double[] sorted = Arrays.stream(rows).mapToDouble(row -> column[row]).filter(value -> !Double.isNaN(value)).sorted().toArray();
+
+        // Upper bound of each bin, equal numbers of instances in each (apart from ties)
+        double[] cutPoints = new double[NUM_BINS - 1];
+        for (int bin = 0; bin < cutPoints.length && sorted.length > 0; bin++) {
+            cutPoints[bin] = sorted[Math.max(0, (int) ((long) (bin + 1) * sorted.length / NUM_BINS) - 1)];
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            double value = column[rows[i]];
+            if (Double.isNaN(value)) {
+                values[i] = -1;
+                continue;
+            }
+
+            int bin = 0;
+            while (bin < cutPoints.length && value > cutPoints[bin]) bin++;
+            values[i] = bin;
+        }
+
+        return values;
+    }
+
+    private double mutualInformation(double[][] table) {
+        double total = 0;
+        double[] valueTotals = new double[table.length];
+        double[] classTotals = new double[data.numClasses()];
+
+        for (int value = 0; value < table.length; value++) {
+            for (int c = 0; c < classTotals.length; c++) {
+                valueTotals[value] += table[value][c];
+                classTotals[c] += table[value][c];
+                total += table[value][c];
+            }
+        }
+
+        double information = 0;
+        for (int value = 0; value < table.length; value++) {
+            for (int c = 0; c < classTotals.length; c++) {
+                if (table[value][c] == 0) continue;
+                information += table[value][c] / total * Math.log(table[value][c] * total / (valueTotals[value] * classTotals[c]));
+            }
+        }
+
+        return information / Math.log(2);
+    }
+
+    private double chiSquared(double[][] table) {
+        double total = 0;
+        double[] valueTotals = new double[table.length];
+        double[] classTotals = new double[data.numClasses()];
+
+        for (int value = 0; value < table.length; value++) {
+            for (int c = 0; c < classTotals.length; c++) {
+                valueTotals[value] += table[value][c];
+                classTotals[c] += table[value][c];
+                total += table[value][c];
+            }
+        }
+
+        double statistic = 0;
+        for (int value = 0; value < table.length; value++) {
+            for (int c = 0; c < classTotals.length; c++) {
+                double expected = valueTotals[value] * classTotals[c] / total;
+                if (expected == 0) continue;
+                double difference = table[value][c] - expected;
+                statistic += difference * difference / expected;
+            }
+        }
+
+        return statistic;
+    }
+
+    /***
+     * ===============
+     * RELIEFF
+     * ===============
+     */
+
+    private double[] reliefF() {
+        int numAttributes = data.numAttributes();
+        int numClasses = data.numClasses();
+        int classIndex = data.classIndex();
+
+        // Ranges to scale numeric differences to [0, 1]
+        double[] ranges = new double[numAttributes];
+        for (int feature : features().toArray()) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int row : rows) {
+                double value = data.value(row, feature);
+                if (Double.isNaN(value)) continue;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            ranges[feature] = max > min ? max - min : 0;
+        }
+
+        double[] priors = new double[numClasses];
+        for (int row : rows) priors[data.classValue(row)]++;
+        for (int c = 0; c < numClasses; c++) priors[c] /= rows.length;
+
+        // A fixed sample of instances, so the ranking is repeatable
+        int[] samples = rows.clone();
+        Random random = new Random(SEED);
+        for (int i = samples.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = samples[i];
+            samples[i] = samples[j];
+            samples[j] = swap;
+        }
+        int numSamples = Math.min(RELIEF_SAMPLES, samples.length);
+
+        int[] features = features().toArray();
+
+        // Each sample's contribution, summed afterwards in order so the result doesn't depend on the threads
+        double[][] contributions = IntStream.range(0, numSamples).parallel()
+                .mapToObj(i -> reliefContribution(samples[i], features, ranges, priors))
+                .toArray(double[][]::new);
+
+        double[] weights = new double[numAttributes];
+        for (double[] contribution : contributions) {
+            for (int feature : features) weights[feature] += contribution[feature] / numSamples;
+        }
+        weights[classIndex] = Double.NaN;
+
+        return weights;
+    }
+
+    /**
+     * Finds the nearest neighbours of the sample in every class, and returns how
+     * much each feature's weight should change: down by the difference to the
+     * neighbours of the same class, up by the difference to the neighbours of
+     * other classes (weighted by how common those classes are)
+     */
+    private double[] reliefContribution(int sample, int[] features, double[] ranges, double[] priors) {
+        int numClasses = data.numClasses();
+        int sampleClass = data.classValue(sample);
+
+        // The nearest RELIEF_NEIGHBOURS of each class, kept sorted by distance
+        int[][] nearest = new int[numClasses][RELIEF_NEIGHBOURS];
+        double[][] distances = new double[numClasses][RELIEF_NEIGHBOURS];
+        int[] found = new int[numClasses];
+
+        for (int row : rows) {
+            if (row == sample) continue;
+
+            int c = data.classValue(row);
+            double distance = 0;
+            for (int feature : features) distance += difference(feature, sample, row, ranges);
+
+            // Insert into the sorted neighbours, dropping the furthest if full
+            int position = found[c] < RELIEF_NEIGHBOURS ? found[c]++ : RELIEF_NEIGHBOURS;
+            while (position > 0 && distances[c][position - 1] > distance) {
+                if (position < RELIEF_NEIGHBOURS) {
+                    distances[c][position] = distances[c][position - 1];
+                    nearest[c][position] = nearest[c][position - 1];
+                }
+                position--;
+            }
+            if (position < RELIEF_NEIGHBOURS) {
+                distances[c][position] = distance;
+                nearest[c][position] = row;
+            }
+        }
+
+        double[] contribution = new double[data.numAttributes()];
+        for (int c = 0; c < numClasses; c++) {
+            if (found[c] == 0) continue;
+
+            double scale = c == sampleClass ? -1.0 / found[c] : priors[c] / (1 - priors[sampleClass]) / found[c];
+            for (int n = 0; n < found[c]; n++) {
+                for (int feature : features) {
+                    contribution[feature] += scale * difference(feature, sample, nearest[c][n], ranges);
+                }
+            }
+        }
+
+        return contribution;
+    }
+
+    /**
+     * Returns how different the two instances are on the feature, in [0, 1].
+     * Nominal values either match or don't, numeric values are scaled by the
+     * feature's range and a missing value counts as completely different.
+     */
+    private double difference(int feature, int a, int b, double[] ranges) {
+        double first = data.value(a, feature);
+        double second = data.value(b, feature);
+
+        if (Double.isNaN(first) || Double.isNaN(second)) return 1;
+        if (nominal[feature]) return first == second ? 0 : 1;
+
+        return ranges[feature] == 0 ? 0 : Math.abs(first - second) / ranges[feature];
+    }
+
+    /***
+     * ===============
+     * HELPER METHODS
+     * ===============
+     */
+
+    private IntStream features() {
+        int classIndex = data.classIndex();
+        return IntStream.range(0, data.numAttributes()).filter(feature -> feature != classIndex);
+    }
+
+    /**
+     * Scales the scores to [0, 1] by their minimum and maximum
+     */
+    private static double[] scale(double[] scores) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            if (Double.isNaN(score)) continue;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+
+        double[] scaled = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            scaled[i] = Double.isNaN(scores[i]) ? Double.NaN : max > min ? (scores[i] - min) / (max - min) : 0;
+        }
+
+        return scaled;
+    }
+}
@@ -1,7 +1,20 @@
 package selection;
 
-import java.util.HashSet;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Top level class for feature selection, holds the classifier
@@ -15,11 +28,124 @@ public abstract class FeatureSelection {
     // The number of iterations to try if no improvement is made
     protected final int MAX_ITERATIONS_WITHOUT_PROGRESS;
 
-    private final boolean DEBUG = true;
-
     // The wrapped classifier to use
     private Classifier classifier;
 
+    // Number of candidate subsets to score at once, 1 scores them in order on the calling thread
+    private int parallelism = 1;
+
+    // Pool used to score candidates when parallelism > 1
+    private ForkJoinPool pool;
+
+    // The live threads of the pool, whose allocation is counted in each iteration's
+    private final Set<Thread> poolThreads = ConcurrentHashMap.newKeySet();
+
+    // Default number of subset scores to remember
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
+    // Scores of recently evaluated subsets, so revisited subsets are not retrained
+    private ScoreCache cache = new ScoreCache(DEFAULT_CACHE_SIZE);
+
+    // What the classifier was built from, so worker processes can build the same one
+    private final String trainingFile;
+    private final String testingFile;
+    private final List<Integer> removedAttributes = new ArrayList<>();
+
+    // Worker processes to score candidates on, null scores them in this process
+    private DistributedEvaluator workers;
+
+    // JVM arguments for the worker processes
+    private List<String> workerJvmArguments = new ArrayList<>();
+
+    // The subset the current sweep's candidates are one feature away from
+    private FeatureSubset base;
+
+    // Whether best() and worst() abandon candidates which can't beat the best so far
+    private boolean earlyAbandon;
+
+    // Number of candidates abandoned before being fully scored
+    private final AtomicLong abandoned = new AtomicLong();
+
+    // Races the candidates of best() and worst() if not null
+    private Race race;
+
+    // Where evaluation counts and timings are recorded, null if metrics are turned off
+    private MetricsRegistry metrics;
+
+    private MetricsRegistry.Histogram bestTimes;
+    private MetricsRegistry.Histogram worstTimes;
+    private MetricsRegistry.Histogram iterationTimes;
+    private MetricsRegistry.Histogram iterationAllocations;
+    private MetricsRegistry.Histogram workerTimes;
+    private MetricsRegistry.Counter workerEvaluations;
+
+    // When the current iteration started, and the bytes allocated by then
+    private long iterationStart;
+    private long iterationAllocatedBytes;
+
+    // Default number of events to hold for slow listeners before dropping them
+    private static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 8192;
+
+    // Delivers events to the listeners, null until a listener is added
+    private ListenerQueue listeners;
+
+    // Flight recorder event for the current iteration, and how many iterations have started
+    private Events.Iteration iterationEvent;
+    private int iterations;
+
+    // Writes the metrics to a file in the background, null if not writing them
+    private MetricsSnapshotWriter metricsWriter;
+
+    // The JMX name the metrics are registered under, null if not registered
+    private ObjectName metricsName;
+
+    // Default time between checkpoints
+    private static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 60 * 1000;
+
+    // Writes the search state in the background, null if not checkpointing
+    private CheckpointWriter checkpointWriter;
+
+    private long checkpointIntervalNanos;
+    private long lastCheckpoint;
+
+    // The state the next search should carry on from, null to start a new search
+    private Checkpoint resumeFrom;
+
+    // Filter methods to pre-select features with, empty to search every feature
+    private FeatureRanking.Method[] preselectionMethods = new FeatureRanking.Method[0];
+
+    // Keep the top k ranked features, or those scoring at least the threshold if k is 0
+    private int preselectionSize;
+    private double preselectionThreshold;
+
+    // The features which passed pre-selection, null until needed
+    private FeatureSubset preselected;
+
+    /**
+     * The limits which can stop a search part way through a sweep, see limitReached()
+     */
+    public enum Limit {
+        TIME, EVALUATIONS, TARGET_ACCURACY
+    }
+
+    // Limits on each search, 0 (NaN for the accuracy) for none
+    private long timeLimitNanos;
+    private long maxEvaluations;
+    private double targetAccuracy = Double.NaN;
+
+    // Whether a search is running, and when it scored its first subset
+    private volatile boolean searching;
+    private volatile long searchStart;
+
+    // Subsets scored by the classifier in the current or last search
+    private final AtomicLong evaluations = new AtomicLong();
+
+    // The limit which stopped the current or last search, null if none has
+    private volatile Limit limitReached;
+
+    // The best subset of the current or last search, null until there is one
+    private volatile SelectionEvent bestSoFar;
+
     /**
      * Creates a new FeatureSelection instance and classifier,
      * splits the specified file into training:testing:validation
@@ -32,6 +158,9 @@ public abstract class FeatureSelection {
     public FeatureSelection(String fileName, int maxIterationsWithoutProgress) throws Exception {
         this.classifier = new Classifier(fileName);
         this.MAX_ITERATIONS_WITHOUT_PROGRESS = maxIterationsWithoutProgress;
+        this.trainingFile = fileName;
+        this.testingFile = null;
+        setMetrics(new SimpleMetricsRegistry());
     }
 
     /**
@@ -48,6 +177,9 @@ public abstract class FeatureSelection {
     public FeatureSelection(String trainingFile, String testingFile, int maxIterationsWithoutProgress) throws Exception {
         this.classifier = new Classifier(trainingFile, testingFile);
         this.MAX_ITERATIONS_WITHOUT_PROGRESS = maxIterationsWithoutProgress;
+        this.trainingFile = trainingFile;
+        this.testingFile = testingFile;
+        setMetrics(new SimpleMetricsRegistry());
     }
 
 
@@ -70,6 +202,55 @@ public abstract class FeatureSelection {
      */
     public abstract Set<Integer> select() throws Exception;
 
+    /**
+     * Carries on the search saved in the checkpoint file, as select() would have.
+     * The selection must have been created with the same dataset (and removed
+     * attributes) as the search which wrote the checkpoint.
+     *
+     * @param checkpointFile
+     * @return
+     * @throws Exception
+     */
+    public Set<Integer> resume(String checkpointFile) throws Exception {
+        resumeFrom = readCheckpoint(checkpointFile);
+        try {
+            return select();
+        } finally {
+            resumeFrom = null;
+        }
+    }
+
+    /**
+     * Carries on the search saved in the checkpoint file, as select(maxNumFeatures)
+     * would have. The same maxNumFeatures as the original search should be given.
+     *
+     * @param checkpointFile
+     * @param maxNumFeatures
+     * @return
+     * @throws Exception
+     */
+    public Set<Integer> resume(String checkpointFile, int maxNumFeatures) throws Exception {
+        resumeFrom = readCheckpoint(checkpointFile);
+        try {
+            return select(maxNumFeatures);
+        } finally {
+            resumeFrom = null;
+        }
+    }
+
+    private Checkpoint readCheckpoint(String checkpointFile) throws Exception {
+        Checkpoint checkpoint = Checkpoint.read(Paths.get(checkpointFile));
+
+        if (!checkpoint.getMethod().equals(getClass().getSimpleName())) {
+            throw new IllegalArgumentException(checkpointFile + " is a checkpoint of " + checkpoint.getMethod() + " not " + getClass().getSimpleName());
+        }
+        if (checkpoint.getNumFeatures() != getNumFeatures()) {
+            throw new IllegalArgumentException(checkpointFile + " is a checkpoint of a dataset with " + checkpoint.getNumFeatures() + " features, not " + getNumFeatures());
+        }
+
+        return checkpoint;
+    }
+
     /**
      * Returns the index of the "best" feature in the remaining set of features,
      * ie the feature which when added to the selectedFeatures maximises
@@ -79,22 +260,18 @@ public abstract class FeatureSelection {
      * @param remainingFeatures
      * @return
      */
-    protected int best(Set<Integer> selectedFeatures, Set<Integer> remainingFeatures) throws Exception {
-        double highest = -Integer.MAX_VALUE;
-        int selected = -1;
+    protected int best(FeatureSubset selectedFeatures, FeatureSubset remainingFeatures) throws Exception {
+        int[] features = remainingFeatures.toArray();
+        List<FeatureSubset> candidates = new ArrayList<>(features.length);
 
-        for (int feature : remainingFeatures) {
-            Set<Integer> newFeatures = new HashSet<>(selectedFeatures);
-            newFeatures.add(feature);
+        // Every candidate is one feature away from the selected features
+        setBase(selectedFeatures);
 
-            double result = objectiveFunction(newFeatures);
-            if (result > highest) {
-                highest = result;
-                selected = feature;
-            }
+        for (int feature : features) {
+            candidates.add(selectedFeatures.with(feature));
         }
 
-        return selected;
+        return highestScoring(features, sweep(candidates, bestTimes, true));
     }
 
     /**
@@ -105,35 +282,451 @@ public abstract class FeatureSelection {
      * @param selectedFeatures
      * @return
      */
-    protected int worst(Set<Integer> selectedFeatures) throws Exception {
-        double highestAccuracy = -Integer.MAX_VALUE;
-        int selected = -1;
+    protected int worst(FeatureSubset selectedFeatures) throws Exception {
+        int[] features = selectedFeatures.toArray();
+        List<FeatureSubset> candidates = new ArrayList<>(features.length);
+
+        // Every candidate is one feature away from the selected features
+        setBase(selectedFeatures);
+
+        for (int feature : features) {
+            candidates.add(selectedFeatures.without(feature));
+        }
+
+        return highestScoring(features, sweep(candidates, worstTimes, true));
+    }
+
+    /**
+     * Returns the score of every candidate, in the same order as the candidates,
+     * where each candidate is one feature away from base. Unlike best() and worst()
+     * every score is exact, so candidates are never raced or abandoned.
+     *
+     * @param base
+     * @param candidates
+     * @return
+     * @throws Exception
+     */
+    protected double[] neighbours(FeatureSubset base, List<FeatureSubset> candidates) throws Exception {
+        setBase(base);
+        return sweep(candidates, bestTimes, false);
+    }
+
+    /**
+     * Scores the candidates of a sweep. If only the highest scoring candidate
+     * matters, as in best() and worst(), the others can be raced or abandoned
+     * rather than scored fully, if either is enabled.
+     *
+     * @param candidates
+     * @param times records how long the sweep took
+     * @param highestOnly
+     * @return
+     * @throws Exception
+     */
+    private double[] sweep(List<FeatureSubset> candidates, MetricsRegistry.Histogram times, boolean highestOnly) throws Exception {
+        beginSearch();
+        long start = System.nanoTime();
+        double[] results;
+
+        if (highestOnly && race != null && workers == null && classifier.canScorePartially()) {
+            results = racingObjectiveFunction(candidates);
+        } else {
+            results = objectiveFunction(candidates, highestOnly && earlyAbandon);
+        }
+
+        if (times != null) times.record(System.nanoTime() - start);
+
+        // Published from here rather than as they are scored, so they arrive in candidate order
+        if (listeners != null && listeners.hasListeners()) {
+            for (int i = 0; i < results.length; i++) {
+                FeatureSubset candidate = candidates.get(i);
+                publish(SelectionEvent.Type.CANDIDATE_SCORED, base.onlyDifference(candidate), candidate, candidate.size(), results[i]);
+            }
+        }
+
+        return results;
+    }
 
-        for (int feature : selectedFeatures) {
-            Set<Integer> newFeatures = new HashSet<>(selectedFeatures);
-            newFeatures.remove(feature);
+    /**
+     * Returns the feature whose candidate had the highest score. Scores are
+     * compared in the order the features were given, so the first of any tied
+     * candidates wins no matter how many threads scored them.
+     *
+     * @param features
+     * @param results
+     * @return the feature with the highest score, or -1 if there were no candidates
+     */
+    private int highestScoring(int[] features, double[] results) {
+        double highest = -Integer.MAX_VALUE;
+        int selected = -1;
 
-            double result = objectiveFunction(newFeatures);
-            if (result > highestAccuracy) {
-                highestAccuracy = result;
-                selected = feature;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] > highest) {
+                highest = results[i];
+                selected = features[i];
             }
         }
 
         return selected;
     }
 
+    /**
+     * Tells the classifier (and any workers) which subset the
+     * next candidates are one feature away from
+     *
+     * @param base
+     */
+    private void setBase(FeatureSubset base) {
+        this.base = base;
+        classifier.setBase(base);
+    }
+
+    /**
+     * Returns the objective function for each of the candidate subsets,
+     * in the same order as the candidates. If there are worker processes
+     * the candidates are scored on them, otherwise if the parallelism is
+     * greater than 1 the candidates are scored concurrently.
+     *
+     * @param candidates
+     * @return
+     * @throws Exception
+     */
+    protected double[] objectiveFunction(List<FeatureSubset> candidates) throws Exception {
+        return objectiveFunction(candidates, false);
+    }
+
+    /**
+     * Returns the objective function for each of the candidate subsets, as
+     * above. If earlyAbandon is true, a candidate is abandoned as soon as it
+     * is certain to score less than the highest candidate scored so far, and
+     * its result is only an upper bound which is less than that highest score.
+     * Only the highest score (and the first candidate with it) is then exact,
+     * whichever order the candidates are scored in.
+     *
+     * @param candidates
+     * @param earlyAbandon
+     * @return
+     * @throws Exception
+     */
+    protected double[] objectiveFunction(List<FeatureSubset> candidates, boolean earlyAbandon) throws Exception {
+        beginSearch();
+        if (workers != null) return distributedObjectiveFunction(candidates);
+
+        double[] results = new double[candidates.size()];
+        Double[] cached = new Double[candidates.size()];
+        boolean[] allowed = reserveEvaluations(candidates, cached);
+
+        // The highest exact score so far, as bits so threads can raise it atomically
+        AtomicLong incumbent = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+
+        List<Callable<Double>> tasks = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            FeatureSubset candidate = candidates.get(i);
+            Double known = cached[i];
+            boolean withinBudget = allowed[i];
+            tasks.add(() -> {
+                // Candidates left when a limit is reached aren't scored
+                if (!withinBudget || limitReached()) return Double.NEGATIVE_INFINITY;
+
+                Events.CandidateEvaluation event = new Events.CandidateEvaluation();
+                event.begin();
+                double result = earlyAbandon ? objectiveFunction(candidate, known, incumbent)
+                        : known != null ? reached(known) : evaluate(candidate);
+                event.end(base, candidate, result);
+                return result;
+            });
+        }
+
+        List<Double> scores = invokeAll(tasks);
+        for (int i = 0; i < results.length; i++) {
+            results[i] = scores.get(i);
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the objective function for the highest scoring candidates, racing
+     * them on growing batches of validation instances (see Race) so most are
+     * eliminated before they've classified every instance. Eliminated candidates
+     * score negative infinity. Cached candidates race with their known scores.
+     *
+     * @param candidates
+     * @return
+     * @throws Exception
+     */
+    private double[] racingObjectiveFunction(List<FeatureSubset> candidates) throws Exception {
+        double[] results = new double[candidates.size()];
+        PartialEvaluation[] evaluations = new PartialEvaluation[candidates.size()];
+        Double[] cached = new Double[candidates.size()];
+        boolean[] allowed = reserveEvaluations(candidates, cached);
+
+        List<Callable<Void>> training = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (cached[i] != null) {
+                results[i] = cached[i];
+                reached(cached[i]);
+                continue;
+            }
+
+            // Left out of the race when a limit is reached
+            if (!allowed[i] || limitReached()) {
+                results[i] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+
+            int candidate = i;
+            this.evaluations.incrementAndGet();
+            training.add(() -> {
+                evaluations[candidate] = classifier.partial(candidates.get(candidate));
+                return null;
+            });
+        }
+        invokeAll(training);
+
+        // Remember which were raced, the race drops eliminated candidates' evaluations
+        boolean[] raced = new boolean[results.length];
+        for (int i = 0; i < results.length; i++) raced[i] = evaluations[i] != null;
+
+        race.run(evaluations, results, this::invokeAll);
+
+        for (int i = 0; i < results.length; i++) {
+            if (raced[i] && results[i] != Double.NEGATIVE_INFINITY) {
+                cache.put(candidates.get(i), results[i]);
+                reached(results[i]);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs the tasks on the pool, or in order on the calling
+     * thread if the parallelism is 1, and returns their results
+     * in the same order as the tasks
+     *
+     * @param tasks
+     * @return
+     * @throws Exception the first exception thrown by a task
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        if (parallelism == 1 || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                // Rethrow what the task actually threw
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) throw (Exception) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw e;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Scores the candidates which are not in the cache on the worker processes
+     *
+     * @param candidates
+     * @return
+     * @throws Exception
+     */
+    private double[] distributedObjectiveFunction(List<FeatureSubset> candidates) throws Exception {
+        double[] results = new double[candidates.size()];
+
+        List<FeatureSubset> uncached = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Double[] cached = new Double[candidates.size()];
+        boolean[] allowed = reserveEvaluations(candidates, cached);
+        boolean stopped = limitReached();
+
+        for (int i = 0; i < results.length; i++) {
+            if (cached[i] != null) {
+                results[i] = cached[i];
+                reached(cached[i]);
+            } else if (!allowed[i] || stopped) {
+                // Left unscored when a limit is reached
+                results[i] = Double.NEGATIVE_INFINITY;
+            } else {
+                uncached.add(candidates.get(i));
+                positions.add(i);
+            }
+        }
+
+        if (uncached.isEmpty()) return results;
+        evaluations.addAndGet(uncached.size());
+
+        long start = System.nanoTime();
+        double[] scores = workers.classify(uncached, base);
+        if (metrics != null) {
+            workerTimes.record(System.nanoTime() - start);
+            workerEvaluations.add(scores.length);
+        }
+
+        for (int i = 0; i < scores.length; i++) {
+            results[positions.get(i)] = scores[i];
+            cache.put(uncached.get(i), scores[i]);
+            reached(scores[i]);
+        }
+
+        return results;
+    }
+
 
     /**
      * Returns the classification accuracy on the validation
-     * set using the specified features
+     * set using the specified features. Subsets which have
+     * been scored recently are answered from the cache.
+     *
+     * @param selectedFeatures
+     * @return
+     * @throws Exception
+     */
+    protected double objectiveFunction(FeatureSubset selectedFeatures) throws Exception {
+        beginSearch();
+        Double cached = cache.get(selectedFeatures);
+        if (cached != null) return reached(cached);
+
+        return evaluate(selectedFeatures);
+    }
+
+    /**
+     * Scores a subset which is not in the cache, and caches its score
+     */
+    private double evaluate(FeatureSubset selectedFeatures) throws Exception {
+        evaluations.incrementAndGet();
+        double result = classifier.classify(selectedFeatures);
+        cache.put(selectedFeatures, result);
+        return reached(result);
+    }
+
+    /**
+     * Returns the classification accuracy on the validation set using the
+     * specified features, or an upper bound on it if it is certain to be less
+     * than the incumbent. Abandoned scores are not cached, and exact scores
+     * raise the incumbent.
      *
      * @param selectedFeatures
+     * @param cached its score if it was in the cache, otherwise null
+     * @param incumbent the highest exact score so far, as double bits
      * @return
      * @throws Exception
      */
-    protected double objectiveFunction(Set<Integer> selectedFeatures) throws Exception {
-        return classifier.classify(selectedFeatures);
+    private double objectiveFunction(FeatureSubset selectedFeatures, Double cached, AtomicLong incumbent) throws Exception {
+        double result;
+
+        if (cached != null) {
+            result = cached;
+        } else {
+            evaluations.incrementAndGet();
+            double threshold = Double.longBitsToDouble(incumbent.get());
+            result = classifier.classify(selectedFeatures, threshold);
+
+            // Only strictly lower scores are abandoned, so ties are still exact and go to the first candidate
+            if (result < threshold) {
+                abandoned.incrementAndGet();
+                return result;
+            }
+
+            cache.put(selectedFeatures, result);
+        }
+        reached(result);
+
+        incumbent.accumulateAndGet(Double.doubleToLongBits(result),
+                (current, candidate) -> Double.longBitsToDouble(candidate) > Double.longBitsToDouble(current) ? candidate : current);
+        return result;
+    }
+
+    /**
+     * Marks the start of a search, so its clock and counters start again from
+     * the first subset it scores, even if the last search threw rather than
+     * reaching reportStopped()
+     */
+    protected void startSelection() {
+        searching = false;
+    }
+
+    /**
+     * Starts the clock and counters of a search, the first time it
+     * scores a subset. reportStopped() ends the search.
+     */
+    private void beginSearch() {
+        if (!searching) startSearch();
+    }
+
+    private synchronized void startSearch() {
+        if (searching) return;
+
+        evaluations.set(0);
+        limitReached = null;
+        bestSoFar = null;
+        searchStart = System.nanoTime();
+        searching = true;
+    }
+
+    /**
+     * Looks each candidate up in the cache, filling in cached with the scores
+     * found, and returns which of the candidates may be scored within the
+     * evaluation budget. Cached candidates are free (their scores are taken
+     * now, so they can't be evicted before they are used), the rest are allowed
+     * in order until the budget is used up, so the same candidates are scored
+     * however many threads score them.
+     */
+    private boolean[] reserveEvaluations(List<FeatureSubset> candidates, Double[] cached) {
+        boolean[] allowed = new boolean[candidates.size()];
+        long remaining = maxEvaluations > 0 ? maxEvaluations - evaluations.get() : Long.MAX_VALUE;
+
+        for (int i = 0; i < allowed.length; i++) {
+            cached[i] = cache.get(candidates.get(i));
+            if (cached[i] != null) {
+                allowed[i] = true;
+            } else if (remaining > 0) {
+                allowed[i] = true;
+                remaining--;
+            }
+        }
+
+        return allowed;
+    }
+
+    /**
+     * Notes a score, stopping the search if it reaches the target accuracy
+     *
+     * @return the score
+     */
+    private double reached(double accuracy) {
+        if (searching && accuracy >= targetAccuracy) limitReached = Limit.TARGET_ACCURACY;
+        return accuracy;
+    }
+
+    /**
+     * Returns true once the search has reached its time limit, evaluation budget
+     * or target accuracy. Sweeps stop scoring candidates as soon as this is true
+     * (those left score negative infinity, so best() and worst() pick from the
+     * candidates scored), and every search stops before its next iteration.
+     *
+     * @return
+     */
+    protected boolean limitReached() {
+        if (!searching) return false;
+        if (limitReached != null) return true;
+
+        if (timeLimitNanos > 0 && System.nanoTime() - searchStart >= timeLimitNanos) {
+            limitReached = Limit.TIME;
+        } else if (maxEvaluations > 0 && evaluations.get() >= maxEvaluations) {
+            limitReached = Limit.EVALUATIONS;
+        }
+
+        return limitReached != null;
     }
 
     /**
@@ -146,6 +739,12 @@ public abstract class FeatureSelection {
      */
     public void removeAttribute(int index) throws Exception {
         this.classifier.removeAttribute(index);
+        removedAttributes.add(index);
+
+        // The indices have shifted, so any cached scores refer to different features
+        cache.clear();
+        preselected = null;
+        restartWorkers();
     }
 
 
@@ -156,33 +755,706 @@ public abstract class FeatureSelection {
      */
     public void compareTestingAccuracy(Set<Integer> selectedIndices) throws Exception {
         System.out.printf("Accuracy using all features: %.3f%%\n", classifier.testAccuracy());
-        System.out.printf("Accuracy using features (%s): %.3f%%\n", selectedIndices, classifier.testAccuracy(selectedIndices));
+        System.out.printf("Accuracy using features (%s): %.3f%%\n", selectedIndices, classifier.testAccuracy(FeatureSubset.of(selectedIndices)));
+    }
+
+    /**
+     * Returns the accuracy on the testing instances using only the selected indices
+     *
+     * @param selectedIndices
+     * @return
+     * @throws Exception
+     */
+    public double testAccuracy(Set<Integer> selectedIndices) throws Exception {
+        return classifier.testAccuracy(FeatureSubset.of(selectedIndices));
     }
 
 
     /**
-     * Prints out the size and accuracy at each iteration of selection.
-     * Only prints if DEBUG is set to true, does nothing otherwise.
+     * Tells the listeners the search stepped to a subset
+     * of the given size and accuracy
      *
      * @param size
      * @param accuracy
      */
-    protected void printAccuracy(int size, double accuracy) {
-        if (DEBUG) System.out.println(size + ": " + accuracy);
+    protected void reportAccuracy(int size, double accuracy) {
+        publish(SelectionEvent.Type.STEP, -1, null, size, accuracy);
     }
 
-    /***
-     * ===============
-     * GETTERS / SETTERS
-     * ===============
+    /**
+     * Tells the listeners the search found a better subset than any before
+     *
+     * @param bestSoFar
+     * @param accuracy
      */
+    protected void reportNewBest(FeatureSubset bestSoFar, double accuracy) {
+        // Kept whether or not anyone is listening, see getBestSoFar()
+        this.bestSoFar = new SelectionEvent(SelectionEvent.Type.NEW_BEST, iterations, -1, bestSoFar, bestSoFar.size(), accuracy);
+        if (listeners != null && listeners.hasListeners()) listeners.publish(this.bestSoFar);
+    }
 
-    protected int getNumFeatures() {
-        return classifier.getNumFeatures();
+    /**
+     * Tells the listeners the search stopped, and the best subset it found
+     *
+     * @param bestSoFar
+     * @param accuracy
+     */
+    protected void reportStopped(FeatureSubset bestSoFar, double accuracy) {
+        searching = false;
+        publish(SelectionEvent.Type.STOPPED, -1, bestSoFar, bestSoFar.size(), accuracy);
+    }
+
+    private void publish(SelectionEvent.Type type, int feature, FeatureSubset subset, int size, double accuracy) {
+        if (listeners == null || !listeners.hasListeners()) return;
+
+        listeners.publish(new SelectionEvent(type, iterations, feature, subset, size, accuracy));
+    }
+
+    /**
+     * Marks the start of an iteration of the search, see endIteration()
+     */
+    protected void startIteration() {
+        iterationEvent = new Events.Iteration();
+        iterationEvent.begin();
+        iterations++;
+
+        if (metrics == null) return;
+        iterationStart = System.nanoTime();
+        iterationAllocatedBytes = allocatedBytes();
     }
 
-    protected Set<Integer> getAllFeatureIndices() {
-        return classifier.getAllFeatureIndices();
+    /**
+     * Records the wall time and allocation of the iteration
+     * since startIteration() was called
+     *
+     * @param selectedFeatures the features selected at the end of the iteration
+     * @param accuracy their accuracy
+     */
+    protected void endIteration(FeatureSubset selectedFeatures, double accuracy) {
+        if (metrics != null) {
+            iterationTimes.record(System.nanoTime() - iterationStart);
+            // Threads which finished during the iteration take their bytes with them
+            iterationAllocations.record(Math.max(0, allocatedBytes() - iterationAllocatedBytes));
+        }
+
+        iterationEvent.end(getClass().getSimpleName(), iterations, selectedFeatures.size(), accuracy);
+        publish(SelectionEvent.Type.ITERATION, -1, selectedFeatures, selectedFeatures.size(), accuracy);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the search thread (the caller)
+     * and the live threads of the pool, or 0 if the JVM can't tell. Bytes
+     * allocated by pool threads which have since finished are not counted.
+     */
+    private long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) return 0;
+
+        long total = hotspot.getCurrentThreadAllocatedBytes();
+        if (poolThreads.isEmpty()) return total;
+
+        long[] ids = poolThreads.stream().mapToLong(Thread::getId).toArray();
+        for (long bytes : hotspot.getThreadAllocatedBytes(ids)) {
+            // -1 for threads which finished while being asked
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the state to carry on from if the search is being
+     * resumed, otherwise null and the search should start afresh.
+     * Only the first call of a search returns the state.
+     *
+     * @return
+     */
+    protected Checkpoint resumeState() {
+        Checkpoint checkpoint = resumeFrom;
+        resumeFrom = null;
+        return checkpoint;
+    }
+
+    /**
+     * Returns true if it is time to write a checkpoint. Searches check this
+     * at the end of each iteration, so the state is only copied when it is needed.
+     *
+     * @return
+     */
+    protected boolean isCheckpointDue() {
+        return checkpointWriter != null && System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos;
+    }
+
+    /**
+     * Writes the state of the search to the checkpoint file in the background
+     *
+     * @param selectedFeatures
+     * @param remainingFeatures
+     * @param bestSoFar
+     * @param highestAccuracy
+     * @param lastAccuracy
+     * @param iterationsWithoutImprovement
+     * @param visitedSubsets
+     */
+    protected void checkpoint(FeatureSubset selectedFeatures, FeatureSubset remainingFeatures, FeatureSubset bestSoFar,
+                              double highestAccuracy, double lastAccuracy, double iterationsWithoutImprovement,
+                              Set<FeatureSubset> visitedSubsets) {
+        if (checkpointWriter == null) return;
+
+        checkpointWriter.submit(new Checkpoint(getClass().getSimpleName(), getNumFeatures(), selectedFeatures, remainingFeatures,
+                bestSoFar, highestAccuracy, lastAccuracy, iterationsWithoutImprovement, visitedSubsets));
+        lastCheckpoint = System.nanoTime();
+    }
+
+    /***
+     * ===============
+     * GETTERS / SETTERS
+     * ===============
+     */
+
+    protected int getNumFeatures() {
+        return classifier.getNumFeatures();
+    }
+
+    /**
+     * Returns the features the search should consider, which is every
+     * feature unless pre-selection has been turned on
+     *
+     * @return
+     * @throws Exception
+     */
+    protected FeatureSubset getAllFeatureIndices() throws Exception {
+        if (preselectionMethods.length == 0) return classifier.getAllFeatureIndices();
+
+        if (preselected == null) {
+            FeatureRanking ranking = new FeatureRanking(classifier.getTrainingColumns());
+            preselected = preselectionSize > 0
+                    ? ranking.top(preselectionSize, preselectionMethods)
+                    : ranking.above(preselectionThreshold, preselectionMethods);
+        }
+
+        return preselected;
+    }
+
+    /**
+     * Only lets the search consider the k features ranked highest by the
+     * filter methods (see FeatureRanking), rather than every feature.
+     * With no methods every feature is considered again.
+     *
+     * @param k
+     * @param methods
+     */
+    public void setPreselection(int k, FeatureRanking.Method... methods) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Must pre-select at least 1 feature, got " + k);
+        }
+
+        this.preselectionMethods = methods.clone();
+        this.preselectionSize = k;
+        this.preselected = null;
+    }
+
+    /**
+     * Only lets the search consider the features whose filter score (see
+     * FeatureRanking) is at least the threshold, rather than every feature.
+     * Several methods' scores are combined into [0, 1].
+     *
+     * @param threshold
+     * @param methods
+     */
+    public void setPreselectionThreshold(double threshold, FeatureRanking.Method... methods) {
+        this.preselectionMethods = methods.clone();
+        this.preselectionSize = 0;
+        this.preselectionThreshold = threshold;
+        this.preselected = null;
+    }
+
+    /**
+     * Scores subsets with the incremental Naive Bayes evaluator rather
+     * than training a Weka classifier for every subset, see
+     * Classifier.setIncrementalNaiveBayes
+     *
+     * @param enabled
+     * @throws Exception
+     */
+    public void setIncrementalNaiveBayes(boolean enabled) throws Exception {
+        classifier.setIncrementalNaiveBayes(enabled);
+        cache.clear();
+        restartWorkers();
+    }
+
+    /**
+     * Switches the classifier to K-NN with numNeighbours neighbours, or back
+     * to Naive Bayes with 0, scoring subsets incrementally if asked to, see
+     * Classifier.setNearestNeighbours
+     *
+     * @param numNeighbours
+     * @param incremental
+     * @throws Exception
+     */
+    public void setNearestNeighbours(int numNeighbours, boolean incremental) throws Exception {
+        classifier.setNearestNeighbours(numNeighbours, incremental);
+        cache.clear();
+        restartWorkers();
+    }
+
+    /**
+     * Scores subsets by k-fold cross-validation over the training and
+     * validation instances rather than the single fixed split, see
+     * Classifier.setCrossValidation. 0 folds goes back to the fixed split.
+     *
+     * @param numFolds
+     * @param numRepeats number of times to repeat the cross-validation with a different shuffle
+     * @param stratified keep the class proportions of each fold close to the whole data
+     * @throws Exception
+     */
+    public void setCrossValidation(int numFolds, int numRepeats, boolean stratified) throws Exception {
+        classifier.setCrossValidation(numFolds, numRepeats, stratified);
+        cache.clear();
+        restartWorkers();
+    }
+
+    public long getSeed() {
+        return classifier.getSeed();
+    }
+
+    /**
+     * Shuffles the data with a different seed (Classifier.SEED by default) before
+     * splitting it, keeping the classifier's other settings. Reloads the dataset,
+     * so is best called before the search starts.
+     *
+     * @param seed
+     * @throws Exception
+     */
+    public void setSeed(long seed) throws Exception {
+        if (seed == classifier.getSeed()) return;
+
+        Classifier reshuffled = testingFile == null ? new Classifier(trainingFile, seed) : new Classifier(trainingFile, testingFile, seed);
+        for (int index : removedAttributes) reshuffled.removeAttribute(index);
+        if (classifier.isIncrementalNaiveBayes()) reshuffled.setIncrementalNaiveBayes(true);
+        if (classifier.getNumNeighbours() > 0) reshuffled.setNearestNeighbours(classifier.getNumNeighbours(), classifier.isIncrementalNearestNeighbours());
+        if (classifier.getNumFolds() > 0) reshuffled.setCrossValidation(classifier.getNumFolds(), classifier.getNumRepeats(), classifier.isStratified());
+        reshuffled.setMetrics(metrics);
+
+        classifier = reshuffled;
+        cache.clear();
+        preselected = null;
+        restartWorkers();
+    }
+
+    /**
+     * Stops each search once it has run for the given time, measured from the
+     * first subset it scores, even part way through a sweep. 0 for no limit.
+     *
+     * @param millis
+     */
+    public void setTimeLimit(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("The time limit can not be negative, got " + millis);
+        this.timeLimitNanos = millis * 1_000_000;
+    }
+
+    public long getTimeLimit() {
+        return timeLimitNanos / 1_000_000;
+    }
+
+    /**
+     * Stops each search once the classifier has scored the given number of
+     * subsets, even part way through a sweep. Subsets answered from the cache
+     * are free. Only the single subset a search steps to after a sweep can go
+     * over the budget, and it is almost always cached. 0 for no limit.
+     *
+     * @param maxEvaluations
+     */
+    public void setMaxEvaluations(long maxEvaluations) {
+        if (maxEvaluations < 0) throw new IllegalArgumentException("The evaluation budget can not be negative, got " + maxEvaluations);
+        this.maxEvaluations = maxEvaluations;
+    }
+
+    public long getMaxEvaluations() {
+        return maxEvaluations;
+    }
+
+    /**
+     * Stops each search as soon as any subset scores at least the
+     * accuracy, even part way through a sweep. NaN for no target.
+     *
+     * @param accuracy
+     */
+    public void setTargetAccuracy(double accuracy) {
+        this.targetAccuracy = accuracy;
+    }
+
+    public double getTargetAccuracy() {
+        return targetAccuracy;
+    }
+
+    /**
+     * Returns the limit which stopped the current or last search,
+     * or null if it hasn't been stopped by one
+     *
+     * @return
+     */
+    public Limit getLimitReached() {
+        return limitReached;
+    }
+
+    /**
+     * Returns the number of subsets the classifier has scored
+     * in the current or last search, not counting cache hits
+     *
+     * @return
+     */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    /**
+     * Returns the best subset and accuracy the current search has found so far,
+     * or the result of the last search once it has stopped, as a NEW_BEST event.
+     * Can be called from any thread while the search is running. Null until the
+     * search has found a subset.
+     *
+     * @return
+     */
+    public SelectionEvent getBestSoFar() {
+        return bestSoFar;
+    }
+
+    public boolean isEarlyAbandon() {
+        return earlyAbandon;
+    }
+
+    /**
+     * Lets best() and worst() stop scoring a candidate as soon as it has
+     * misclassified enough validation instances that it can't beat the
+     * highest scoring candidate so far. The same feature is chosen either way.
+     * Worker processes and cross-validation always score candidates fully.
+     *
+     * @param enabled
+     */
+    public void setEarlyAbandon(boolean enabled) {
+        this.earlyAbandon = enabled;
+    }
+
+    /**
+     * Returns the number of candidates which were abandoned before being fully scored
+     *
+     * @return
+     */
+    public long getAbandonedEvaluations() {
+        return abandoned.get();
+    }
+
+    /**
+     * Adds a listener for the progress of the search: each step, iteration,
+     * candidate scored, new best subset and the end of the search. Events are
+     * delivered on a background thread through a bounded queue, so a slow
+     * listener never holds the search up, but if it falls too far behind events
+     * are dropped (see getDroppedEvents). shutdown() waits for the events
+     * already queued to be delivered.
+     *
+     * @param listener
+     */
+    public void addListener(SelectionListener listener) {
+        if (listeners == null) listeners = new ListenerQueue(DEFAULT_LISTENER_QUEUE_CAPACITY);
+        listeners.addListener(listener);
+    }
+
+    public void removeListener(SelectionListener listener) {
+        if (listeners != null) listeners.removeListener(listener);
+    }
+
+    /**
+     * Returns the number of events dropped because the listeners fell behind
+     *
+     * @return
+     */
+    public long getDroppedEvents() {
+        return listeners == null ? 0 : listeners.getDropped();
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records metrics in the registry rather than the default in-memory one:
+     * <p>
+     * - classify.nanos: the time to score each subset in this process
+     * - classify.partial.nanos: the time to train each raced subset
+     * - sweep.best.nanos, sweep.worst.nanos: the time of each best() and worst() sweep
+     * - iteration.nanos, iteration.allocatedBytes: the wall time and allocation of each iteration
+     * - workers.batch.nanos, workers.evaluations: the subsets scored on worker processes
+     * - cache.hits, cache.misses, cache.size, evaluations.abandoned, race.eliminated, race.instancesSkipped
+     * <p>
+     * Set the registry before registering it with JMX or writing snapshots.
+     * Null turns metrics off, so nothing is timed or recorded.
+     *
+     * @param metrics
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        classifier.setMetrics(metrics);
+
+        if (metrics == null) {
+            bestTimes = worstTimes = iterationTimes = iterationAllocations = workerTimes = null;
+            workerEvaluations = null;
+            return;
+        }
+
+        bestTimes = metrics.histogram("sweep.best.nanos");
+        worstTimes = metrics.histogram("sweep.worst.nanos");
+        iterationTimes = metrics.histogram("iteration.nanos");
+        iterationAllocations = metrics.histogram("iteration.allocatedBytes");
+        workerTimes = metrics.histogram("workers.batch.nanos");
+        workerEvaluations = metrics.counter("workers.evaluations");
+
+        // Read through the fields, the cache and race can be replaced
+        metrics.gauge("cache.hits", () -> cache.getHits());
+        metrics.gauge("cache.misses", () -> cache.getMisses());
+        metrics.gauge("cache.size", () -> cache.size());
+        metrics.gauge("evaluations.abandoned", abandoned::get);
+        metrics.gauge("race.eliminated", () -> race == null ? 0 : race.getEliminated());
+        metrics.gauge("race.instancesSkipped", () -> race == null ? 0 : race.getInstancesSkipped());
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, so they can be
+     * watched with JConsole or VisualVM. They are unregistered by shutdown().
+     *
+     * @param name e.g. selection:type=Metrics,name=SFS
+     * @throws Exception
+     */
+    public void registerMetricsMBean(String name) throws Exception {
+        if (metrics == null) throw new IllegalStateException("Metrics are turned off");
+        if (metricsName != null) MetricsMBean.unregister(metricsName);
+        metricsName = MetricsMBean.register(metrics, name);
+    }
+
+    /**
+     * Writes a JSON snapshot of the metrics to the file every interval, and
+     * once more on shutdown(). A null file name stops writing snapshots.
+     *
+     * @param fileName
+     * @param intervalMillis
+     * @throws Exception
+     */
+    public void setMetricsSnapshot(String fileName, long intervalMillis) throws Exception {
+        if (fileName != null && metrics == null) throw new IllegalStateException("Metrics are turned off");
+
+        if (metricsWriter != null) metricsWriter.close();
+        metricsWriter = fileName == null ? null : new MetricsSnapshotWriter(metrics, Paths.get(fileName), intervalMillis);
+    }
+
+    public Race getRacing() {
+        return race;
+    }
+
+    /**
+     * Races the candidates of best() and worst() on growing batches of validation
+     * instances, eliminating those which are very likely worse than another (see Race).
+     * Unlike early abandonment this is statistical, so with confidence c the chosen
+     * feature is the same as a full sweep's with probability at least c. Racing
+     * takes precedence over early abandonment. Worker processes and cross-validation
+     * always score candidates fully. Null stops racing.
+     *
+     * @param race
+     */
+    public void setRacing(Race race) {
+        this.race = race;
+    }
+
+    public ScoreCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the maximum number of subset scores to remember,
+     * 0 turns the cache off. Any cached scores are discarded.
+     *
+     * @param size
+     */
+    public void setCacheSize(int size) {
+        this.cache = new ScoreCache(size);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many candidate subsets are scored at once in best() and worst().
+     * 1 (the default) scores them one after another on the calling thread.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+        }
+
+        if (pool != null) pool.shutdown();
+
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism, this::newPoolThread, null, false) : null;
+    }
+
+    /**
+     * Creates a thread of the pool which is tracked while it is alive,
+     * so allocatedBytes() can count it
+     */
+    private ForkJoinWorkerThread newPoolThread(ForkJoinPool pool) {
+        return new ForkJoinWorkerThread(pool) {
+            @Override
+            protected void onStart() {
+                super.onStart();
+                poolThreads.add(this);
+            }
+
+            @Override
+            protected void onTermination(Throwable exception) {
+                poolThreads.remove(this);
+                super.onTermination(exception);
+            }
+        };
+    }
+
+    /**
+     * Saves the state of the search to the file every minute, see resume
+     *
+     * @param fileName
+     */
+    public void setCheckpoint(String fileName) {
+        setCheckpoint(fileName, DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Saves the state of the search to the file at the end of the first
+     * iteration after each interval, see resume. The file is written in the
+     * background. A null file name stops checkpointing.
+     *
+     * @param fileName
+     * @param intervalMillis 0 checkpoints every iteration
+     */
+    public void setCheckpoint(String fileName, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 0, got " + intervalMillis);
+        }
+
+        if (checkpointWriter != null) checkpointWriter.close();
+
+        Path file = fileName == null ? null : Paths.get(fileName);
+        this.checkpointWriter = file == null ? null : new CheckpointWriter(file);
+        this.checkpointIntervalNanos = intervalMillis * 1000000;
+        this.lastCheckpoint = System.nanoTime();
+    }
+
+    public int getDistributedWorkers() {
+        return workers == null ? 0 : workers.getNumWorkers();
+    }
+
+    /**
+     * Scores candidate subsets on the specified number of worker JVMs
+     * on this machine, each with its own copy of the dataset (see
+     * DistributedEvaluator). 0 (the default) scores them in this process.
+     *
+     * @param numWorkers
+     * @throws Exception
+     */
+    public void setDistributedWorkers(int numWorkers) throws Exception {
+        if (numWorkers < 0) {
+            throw new IllegalArgumentException("Number of workers must be at least 0, got " + numWorkers);
+        }
+
+        if (workers != null) workers.close();
+        workers = numWorkers > 0 ? new DistributedEvaluator(numWorkers, workerArguments(), workerJvmArguments) : null;
+    }
+
+    /**
+     * Sets the JVM arguments (e.g. -Xmx4g) for worker processes started afterwards
+     *
+     * @param arguments
+     */
+    public void setWorkerJvmArguments(List<String> arguments) {
+        this.workerJvmArguments = new ArrayList<>(arguments);
+    }
+
+    /**
+     * Stops any worker processes and threads, the selection
+     * can not be used in parallel or distributed afterwards.
+     * Waits for the last checkpoint to be written.
+     */
+    public void shutdown() {
+        if (workers != null) workers.close();
+        if (pool != null) pool.shutdown();
+
+        if (checkpointWriter != null) checkpointWriter.close();
+        if (listeners != null) listeners.close();
+
+        try {
+            if (metricsWriter != null) metricsWriter.close();
+            if (metricsName != null) MetricsMBean.unregister(metricsName);
+        } catch (Exception e) {
+            System.err.println("Could not stop metrics: " + e.getMessage());
+        }
+
+        workers = null;
+        pool = null;
+        parallelism = 1;
+        checkpointWriter = null;
+        metricsWriter = null;
+        metricsName = null;
+        listeners = null;
+    }
+
+    /**
+     * Workers have a copy of the dataset as it was when they started,
+     * so need restarting if it changes
+     */
+    private void restartWorkers() throws Exception {
+        if (workers != null) setDistributedWorkers(workers.getNumWorkers());
+    }
+
+    /**
+     * Returns the arguments a worker needs to build the same classifier as this
+     */
+    private List<String> workerArguments() {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(trainingFile);
+
+        if (testingFile != null) {
+            arguments.add("--testing");
+            arguments.add(testingFile);
+        }
+
+        if (classifier.getSeed() != Classifier.SEED) {
+            arguments.add("--seed");
+            arguments.add(Long.toString(classifier.getSeed()));
+        }
+
+        for (int index : removedAttributes) {
+            arguments.add("--remove");
+            arguments.add(Integer.toString(index));
+        }
+
+        if (classifier.isIncrementalNaiveBayes()) arguments.add("--incremental-naive-bayes");
+
+        if (classifier.getNumNeighbours() > 0) {
+            arguments.add("--nearest-neighbours");
+            arguments.add(Integer.toString(classifier.getNumNeighbours()));
+            arguments.add(Boolean.toString(classifier.isIncrementalNearestNeighbours()));
+        }
+
+        if (classifier.getNumFolds() > 0) {
+            arguments.add("--cross-validation");
+            arguments.add(Integer.toString(classifier.getNumFolds()));
+            arguments.add(Integer.toString(classifier.getNumRepeats()));
+            arguments.add(Boolean.toString(classifier.isStratified()));
+        }
+
+        return arguments;
     }
 
 
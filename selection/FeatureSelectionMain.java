@@ -1,5 +1,8 @@
 package selection;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -9,22 +12,71 @@ import java.util.Set;
  */
 public class FeatureSelectionMain {
 
+    // Time between metrics snapshots
+    private static final long METRICS_INTERVAL_MILLIS = 10 * 1000;
+
     private static void printHelp(){
         System.out.println("-------------------");
         System.out.println("PARAMETERS");
-        System.out.println("1 - String. Type of selection to use. Must be one of: SFS, SBS, SFFS, SFBS");
+        System.out.println("1 - String. Type of selection to use. Must be one of: SFS, SBS, SFFS, SFBS, BEAM, GA");
         System.out.println("2 - String. Training filename (must be .arff file)");
         System.out.println("3 - String (OPTIONAL). Testing filename to use (must be .arff file). If no testing file is specified the training file will be split.");
         System.out.println("4 - Integer. Max iterations without progression, used for the stopping criteria. ");
+        System.out.println("--checkpoint file (OPTIONAL). Save the state of the search to the file every minute.");
+        System.out.println("--resume file (OPTIONAL). Carry on the search saved in the checkpoint file, the other parameters must be the same as the original run.");
+        System.out.println("--metrics file (OPTIONAL). Write a JSON snapshot of the evaluation counts and timings to the file every 10 seconds.");
+        System.out.println("--events file (OPTIONAL). Write every step, iteration, candidate score and new best subset to the file as JSON lines.");
+        System.out.println("--knn k (OPTIONAL). Classify with K-NN using k neighbours rather than Naive Bayes, scoring subsets incrementally.");
+        System.out.println("--jmx (OPTIONAL). Register the metrics with JMX as selection:type=Metrics,name=<type>.");
+        System.out.println("--time-limit seconds (OPTIONAL). Stop the search after this long, returning the best subset found so far.");
+        System.out.println("--max-evaluations n (OPTIONAL). Stop the search once n subsets have been scored.");
+        System.out.println("--target-accuracy percent (OPTIONAL). Stop the search as soon as a subset scores at least this accuracy.");
 
         System.out.println("-------------------");
 
     }
 
     public static void main(String[] args) throws Exception {
+        if (args == null) args = new String[0];
+
+        // Pull out the optional flags, leaving the positional parameters
+        String checkpointFile = null;
+        String resumeFile = null;
+        String metricsFile = null;
+        String eventsFile = null;
+        int numNeighbours = 0;
+        boolean jmx = false;
+        long timeLimitSeconds = 0;
+        long maxEvaluations = 0;
+        double targetAccuracy = Double.NaN;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+                checkpointFile = args[++i];
+            } else if (args[i].equals("--resume") && i + 1 < args.length) {
+                resumeFile = args[++i];
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals("--events") && i + 1 < args.length) {
+                eventsFile = args[++i];
+            } else if (args[i].equals("--knn") && i + 1 < args.length) {
+                numNeighbours = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--time-limit") && i + 1 < args.length) {
+                timeLimitSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--max-evaluations") && i + 1 < args.length) {
+                maxEvaluations = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--target-accuracy") && i + 1 < args.length) {
+                targetAccuracy = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--jmx")) {
+                jmx = true;
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        args = positional.toArray(new String[0]);
 
         // Only 3 or 4 arguments are allowed
-        if (args == null || (args.length != 3 && args.length != 4)){
+        if (args.length != 3 && args.length != 4){
             System.out.println("INCORRECT NUMBER OF PARAMETERS SPECIFIED");
             printHelp();
             return;
@@ -37,31 +89,38 @@ public class FeatureSelectionMain {
         String testingFileName = args.length == 4 ? args[argc++] : null;
         int maxIterationsWithoutProgress = Integer.parseInt(args[argc++]);
 
-        FeatureSelection featureSelection;
-
-        FeatureSelection selector = null;
-        switch (type.toUpperCase()) {
-            case "SBS":
-                selector = testingFileName == null ? new SequentialBackwardSelection(fileName, maxIterationsWithoutProgress) : new SequentialBackwardSelection(fileName, testingFileName, maxIterationsWithoutProgress);
-                break;
-            case "SFS":
-                selector = testingFileName == null ? new SequentialForwardSelection(fileName, maxIterationsWithoutProgress) : new SequentialForwardSelection(fileName, testingFileName, maxIterationsWithoutProgress);
-                break;
-            case "SFBS":
-                selector = testingFileName == null ? new SequentialFloatingBackwardSelection(fileName, maxIterationsWithoutProgress) : new SequentialFloatingBackwardSelection(fileName, testingFileName, maxIterationsWithoutProgress);
-                break;
-            case "SFFS":
-                selector = testingFileName == null ? new SequentialFloatingForwardSelection(fileName, maxIterationsWithoutProgress) : new SequentialFloatingForwardSelection(fileName, testingFileName, maxIterationsWithoutProgress);
-                break;
-            default:
-                System.out.println("INVALID TYPE SPECIFIED");
-                printHelp();
-                return;
+        if (!type.toUpperCase().matches("SFS|SBS|SFFS|SFBS|BEAM|GA")) {
+            System.out.println("INVALID TYPE SPECIFIED");
+            printHelp();
+            return;
         }
+        FeatureSelection selector = SelectionJob.createSelector(type, fileName, testingFileName, maxIterationsWithoutProgress);
 
         System.out.println("FEATURE SELECTION - " + type);
         System.out.println("-------------------");
-        Set<Integer> selectedIndices = selector.select();
+        // Keep checkpointing to the same file when resuming, unless told otherwise
+        if (checkpointFile == null) checkpointFile = resumeFile;
+        if (numNeighbours > 0) selector.setNearestNeighbours(numNeighbours, true);
+        if (checkpointFile != null) selector.setCheckpoint(checkpointFile);
+        if (metricsFile != null) selector.setMetricsSnapshot(metricsFile, METRICS_INTERVAL_MILLIS);
+        selector.setTimeLimit(timeLimitSeconds * 1000);
+        selector.setMaxEvaluations(maxEvaluations);
+        selector.setTargetAccuracy(targetAccuracy);
+        if (jmx) selector.registerMetricsMBean("selection:type=Metrics,name=" + type.toUpperCase());
+
+        // Print the size and accuracy of each step as the search goes
+        selector.addListener(event -> {
+            if (event.getType() == SelectionEvent.Type.STEP) System.out.println(event.getSize() + ": " + event.getAccuracy());
+        });
+
+        FileSink events = eventsFile == null ? null : new FileSink(Paths.get(eventsFile));
+        if (events != null) selector.addListener(events);
+
+        Set<Integer> selectedIndices = resumeFile == null ? selector.select() : selector.resume(resumeFile);
+        // Waits for the listeners to catch up
+        selector.shutdown();
+        if (events != null) events.close();
+        if (selector.getLimitReached() != null) System.out.println("Stopped at the " + selector.getLimitReached() + " limit after " + selector.getEvaluations() + " evaluations");
         selector.compareTestingAccuracy(selectedIndices);
         System.out.println("-------------------");
 
@@ -0,0 +1,324 @@
+package selection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * An immutable set of feature indices stored as a bitset.
+ * <p>
+ * Adding or removing a feature returns a new subset, which copies the
+ * long[] words (one word per 64 features) rather than boxing every index.
+ * The words are always trimmed to the highest selected feature, so two
+ * equal subsets have identical word arrays and equality is a straight
+ * array comparison. The hash is computed once on construction, which
+ * makes subsets cheap keys for the score cache and the visited sets.
+ */
+public final class FeatureSubset implements Iterable<Integer> {
+
+    public static final FeatureSubset EMPTY = new FeatureSubset(new long[0]);
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+
+    // Bit i of word i / 64 is set if feature i is selected
+    private final long[] words;
+
+    // Number of selected features
+    private final int size;
+
+    private final int hash;
+
+    /**
+     * Takes ownership of words, which must already be trimmed
+     * (i.e. the last word must be non zero).
+     *
+     * @param words
+     */
+    private FeatureSubset(long[] words) {
+        this.words = words;
+
+        int count = 0;
+        for (long word : words) count += Long.bitCount(word);
+
+        this.size = count;
+        this.hash = Arrays.hashCode(words);
+    }
+
+    /**
+     * Returns the subset containing the given features
+     *
+     * @param features
+     * @return
+     */
+    public static FeatureSubset of(int... features) {
+        long[] words = new long[0];
+        for (int feature : features) {
+            checkIndex(feature);
+            int wordIndex = wordIndex(feature);
+            if (wordIndex >= words.length) words = Arrays.copyOf(words, wordIndex + 1);
+            words[wordIndex] |= 1L << feature;
+        }
+        return new FeatureSubset(trim(words));
+    }
+
+    /**
+     * Returns the subset containing the given features
+     *
+     * @param features
+     * @return
+     */
+    public static FeatureSubset of(Collection<Integer> features) {
+        return of(features.stream().mapToInt(i -> i).toArray());
+    }
+
+    /**
+     * Returns the subset of all features from 0..numFeatures - 1
+     *
+     * @param numFeatures
+     * @return
+     */
+    public static FeatureSubset range(int numFeatures) {
+        if (numFeatures <= 0) return EMPTY;
+
+        long[] words = new long[wordIndex(numFeatures - 1) + 1];
+        Arrays.fill(words, -1L);
+        // Clear the bits past the last feature
+        words[words.length - 1] = -1L >>> -numFeatures;
+        return new FeatureSubset(words);
+    }
+
+    /**
+     * Returns a copy of this subset with the feature added
+     *
+     * @param feature
+     * @return
+     */
+    public FeatureSubset with(int feature) {
+        checkIndex(feature);
+        if (contains(feature)) return this;
+
+        int wordIndex = wordIndex(feature);
+        long[] copy = Arrays.copyOf(words, Math.max(words.length, wordIndex + 1));
+        copy[wordIndex] |= 1L << feature;
+        return new FeatureSubset(copy);
+    }
+
+    /**
+     * Returns a copy of this subset with the feature removed
+     *
+     * @param feature
+     * @return
+     */
+    public FeatureSubset without(int feature) {
+        if (!contains(feature)) return this;
+
+        long[] copy = words.clone();
+        copy[wordIndex(feature)] &= ~(1L << feature);
+        return new FeatureSubset(trim(copy));
+    }
+
+    /**
+     * Returns the uniform crossover of this subset and the other, taking each
+     * feature from this subset where the mask's bit is set, and from the other
+     * where it's clear. The mask gives one word per 64 features, in order.
+     *
+     * @param other
+     * @param mask
+     * @return
+     */
+    public FeatureSubset crossover(FeatureSubset other, LongSupplier mask) {
+        long[] child = new long[Math.max(words.length, other.words.length)];
+        for (int i = 0; i < child.length; i++) {
+            long bits = mask.getAsLong();
+            long mine = i < words.length ? words[i] : 0;
+            long theirs = i < other.words.length ? other.words[i] : 0;
+            child[i] = (mine & bits) | (theirs & ~bits);
+        }
+        return new FeatureSubset(trim(child));
+    }
+
+    public boolean contains(int feature) {
+        if (feature < 0) return false;
+        int wordIndex = wordIndex(feature);
+        return wordIndex < words.length && (words[wordIndex] & (1L << feature)) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the first selected feature greater than or equal to
+     * from, or -1 if there is none. Allows iterating without boxing:
+     * for (int i = s.nextFeature(0); i >= 0; i = s.nextFeature(i + 1))
+     *
+     * @param from
+     * @return
+     */
+    public int nextFeature(int from) {
+        if (from < 0) from = 0;
+
+        int wordIndex = wordIndex(from);
+        if (wordIndex >= words.length) return -1;
+
+        long word = words[wordIndex] & (-1L << from);
+        while (true) {
+            if (word != 0) return (wordIndex * Long.SIZE) + Long.numberOfTrailingZeros(word);
+            if (++wordIndex == words.length) return -1;
+            word = words[wordIndex];
+        }
+    }
+
+    /**
+     * Returns the one feature that is in exactly one of this subset
+     * and other, or -1 if the subsets are equal or differ by more
+     * than one feature.
+     *
+     * @param other
+     * @return
+     */
+    public int onlyDifference(FeatureSubset other) {
+        int difference = -1;
+        int length = Math.max(words.length, other.words.length);
+
+        for (int i = 0; i < length; i++) {
+            long word = (i < words.length ? words[i] : 0) ^ (i < other.words.length ? other.words[i] : 0);
+            if (word == 0) continue;
+
+            // More than one feature differs
+            if (difference != -1 || Long.bitCount(word) != 1) return -1;
+            difference = (i * Long.SIZE) + Long.numberOfTrailingZeros(word);
+        }
+
+        return difference;
+    }
+
+    /**
+     * Returns the selected features in ascending order
+     *
+     * @return
+     */
+    public int[] toArray() {
+        int[] features = new int[size];
+        int i = 0;
+        for (int feature = nextFeature(0); feature >= 0; feature = nextFeature(feature + 1)) {
+            features[i++] = feature;
+        }
+        return features;
+    }
+
+    /**
+     * Returns a mutable copy of the selected features, in ascending order
+     *
+     * @return
+     */
+    public Set<Integer> toSet() {
+        Set<Integer> features = new LinkedHashSet<>();
+        for (int feature = nextFeature(0); feature >= 0; feature = nextFeature(feature + 1)) {
+            features.add(feature);
+        }
+        return features;
+    }
+
+    /**
+     * Writes the subset as its number of words followed by the words
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    /**
+     * Reads a subset written by write()
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static FeatureSubset read(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid feature subset length " + length);
+
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) words[i] = in.readLong();
+        return new FeatureSubset(trim(words));
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = nextFeature(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (next < 0) throw new NoSuchElementException();
+                int feature = next;
+                next = nextFeature(feature + 1);
+                return feature;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FeatureSubset)) return false;
+
+        FeatureSubset other = (FeatureSubset) o;
+        return hash == other.hash && size == other.size && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /***
+     * ===============
+     * HELPER METHODS
+     * ===============
+     */
+
+    private static int wordIndex(int feature) {
+        return feature >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private static void checkIndex(int feature) {
+        if (feature < 0) {
+            throw new IndexOutOfBoundsException("Feature index can not be negative, got " + feature);
+        }
+    }
+
+    /**
+     * Drops trailing zero words so equal subsets have equal arrays
+     */
+    private static long[] trim(long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) length--;
+        return length == words.length ? words : Arrays.copyOf(words, length);
+    }
+}
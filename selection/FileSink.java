@@ -0,0 +1,64 @@
+package selection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A listener which appends each event to a file as one line of JSON, e.g.
+ * <p>
+ * {"type": "NEW_BEST", "time": 1700000000000, "iteration": 3, "size": 3, "accuracy": 84.5, "features": [1, 2, 7]}
+ * <p>
+ * Lines are buffered and only flushed when the search stops or the sink is
+ * closed, so writing costs little even with an event per candidate.
+ */
+public class FileSink implements SelectionListener, AutoCloseable {
+
+    private final BufferedWriter writer;
+
+    /**
+     * Creates the file, or truncates it if it already exists
+     *
+     * @param file
+     * @throws IOException
+     */
+    public FileSink(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void onEvent(SelectionEvent event) throws IOException {
+        StringBuilder line = new StringBuilder(96);
+        line.append("{\"type\": \"").append(event.getType())
+                .append("\", \"time\": ").append(event.getTimeMillis())
+                .append(", \"iteration\": ").append(event.getIteration());
+
+        if (event.getFeature() != -1) line.append(", \"feature\": ").append(event.getFeature());
+
+        // JSON has no infinities, which racing gives eliminated candidates
+        double accuracy = event.getAccuracy();
+        line.append(", \"size\": ").append(event.getSize())
+                .append(", \"accuracy\": ").append(Double.isFinite(accuracy) ? Double.toString(accuracy) : "null");
+
+        if (event.getSubset() != null) {
+            line.append(", \"features\": [");
+            String separator = "";
+            for (int feature : event.getSubset().toArray()) {
+                line.append(separator).append(feature);
+                separator = ", ";
+            }
+            line.append(']');
+        }
+
+        writer.write(line.append("}\n").toString());
+
+        if (event.getType() == SelectionEvent.Type.STOPPED) writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
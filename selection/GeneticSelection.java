@@ -0,0 +1,281 @@
+package selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Performs selection with a Genetic Algorithm (GA)
+ * <p>
+ * - Starts with a population of random subsets
+ * - Each generation keeps the best few subsets, and breeds the rest of the
+ *   next population by tournament selection, uniform crossover and mutation
+ * - Stops when the stopping criteria is met, returning the best subset seen
+ * <p>
+ * Subsets are bitsets (see FeatureSubset), so crossover works a word of 64
+ * features at a time. Each generation's new subsets are scored together
+ * through objectiveFunction, so concurrently if the parallelism is above 1,
+ * and a subset seen before (in this generation or an earlier one) is never
+ * scored again. Every child is bred from its own random stream, split in
+ * order from one seeded with getSeed(), so the search is the same however
+ * many threads score it. A generation cut short by a limit (see setMaxEvaluations)
+ * ranks its unscored children last. The stopping criteria sees the number of generations
+ * without improvement and the size of the best subset.
+ * <p>
+ * Genetic selection isn't checkpointed, so can't be resumed.
+ */
+public class GeneticSelection extends FeatureSelection {
+
+    public static final int DEFAULT_POPULATION_SIZE = 50;
+
+    // Best subsets copied unchanged into the next generation
+    private static final int ELITES = 2;
+
+    // Subsets competing for each parent
+    private static final int TOURNAMENT_SIZE = 3;
+
+    private int populationSize = DEFAULT_POPULATION_SIZE;
+
+    // Chance of each feature being flipped in a child, 0 for 1 / number of features
+    private double mutationRate;
+
+    // Subsets the last search bred again after scoring them
+    private long duplicates;
+
+    public GeneticSelection(String file, int maxIterationsWithoutProgress) throws Exception {
+        super(file, maxIterationsWithoutProgress);
+    }
+
+    public GeneticSelection(String training, String testing, int maxIterationsWithoutProgress) throws Exception {
+        super(training, testing, maxIterationsWithoutProgress);
+    }
+
+    /**
+     * Returns the best subset of at most maxNumFeatures features,
+     * stopping as select() does
+     *
+     * @param maxNumFeatures
+     * @return
+     * @throws Exception
+     */
+    public Set<Integer> select(int maxNumFeatures) throws Exception {
+        return select((noImprovement, size) -> noImprovement < MAX_ITERATIONS_WITHOUT_PROGRESS, maxNumFeatures);
+    }
+
+    public Set<Integer> select() throws Exception {
+        return select((noImprovement, size) -> noImprovement < MAX_ITERATIONS_WITHOUT_PROGRESS);
+    }
+
+    public Set<Integer> select(Criteria criteria) throws Exception {
+        return select(criteria, Integer.MAX_VALUE);
+    }
+
+    private Set<Integer> select(Criteria criteria, int maxNumFeatures) throws Exception {
+        startSelection();
+
+        if (resumeState() != null) throw new IllegalStateException("Genetic selection can not be resumed from a checkpoint");
+        if (maxNumFeatures < 1) throw new IllegalArgumentException("Need at least 1 feature, got " + maxNumFeatures);
+
+        int[] features = getAllFeatureIndices().toArray();
+        if (features.length == 0) return FeatureSubset.EMPTY.toSet();
+
+        int limit = Math.min(maxNumFeatures, features.length);
+        double rate = mutationRate > 0 ? mutationRate : 1.0 / features.length;
+
+        duplicates = 0;
+        Map<FeatureSubset, Double> scores = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(getSeed());
+
+        List<FeatureSubset> population = new ArrayList<>();
+        for (int i = 0; i < populationSize; i++) population.add(randomSubset(features, limit, random.split()));
+        score(population, scores);
+        List<FeatureSubset> ranked = rank(population, scores);
+
+        // Keep track of the best solution, so we never get worse
+        FeatureSubset bestSoFar = ranked.get(0);
+        double highestAccuracy = scores.get(bestSoFar);
+        reportNewBest(bestSoFar, highestAccuracy);
+        reportAccuracy(bestSoFar.size(), highestAccuracy);
+
+        // Number of generations with no improvement
+        double noImprovement = 0;
+
+        while (!limitReached() && criteria.evaluate(noImprovement, bestSoFar.size())) {
+            startIteration();
+
+            // The elites survive unchanged, the rest are bred from the whole population
+            List<FeatureSubset> next = new ArrayList<>(ranked.subList(0, Math.min(ELITES, ranked.size())));
+            int elites = next.size();
+            while (next.size() < populationSize) {
+                SplittableRandom childRandom = random.split();
+                FeatureSubset mother = tournament(population, scores, childRandom);
+                FeatureSubset father = tournament(population, scores, childRandom);
+                next.add(breed(mother, father, features, limit, rate, childRandom));
+            }
+
+            score(next.subList(elites, next.size()), scores);
+            population = next;
+            ranked = rank(population, scores);
+
+            FeatureSubset fittest = ranked.get(0);
+            double accuracy = scores.get(fittest);
+
+            if (greaterThan(accuracy, highestAccuracy)) {
+                highestAccuracy = accuracy;
+                bestSoFar = fittest;
+                reportNewBest(bestSoFar, highestAccuracy);
+                noImprovement = 0;
+            } else {
+                noImprovement++;
+            }
+            reportAccuracy(fittest.size(), accuracy);
+
+            endIteration(fittest, accuracy);
+        }
+
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
+    }
+
+    /**
+     * Scores the subsets which haven't been scored before, all at once
+     */
+    private void score(List<FeatureSubset> population, Map<FeatureSubset, Double> scores) throws Exception {
+        Set<FeatureSubset> unseen = new LinkedHashSet<>();
+        for (FeatureSubset subset : population) {
+            if (!scores.containsKey(subset) && unseen.add(subset)) continue;
+            duplicates++;
+        }
+        if (unseen.isEmpty()) return;
+
+        List<FeatureSubset> candidates = new ArrayList<>(unseen);
+        double[] results = objectiveFunction(candidates);
+
+        for (int i = 0; i < results.length; i++) scores.put(candidates.get(i), results[i]);
+    }
+
+    /**
+     * Returns the population highest scoring first, smaller subsets first
+     * among equal scores, otherwise in population order
+     */
+    private static List<FeatureSubset> rank(List<FeatureSubset> population, Map<FeatureSubset, Double> scores) {
+        List<FeatureSubset> ranked = new ArrayList<>(population);
+        // List.sort is stable
+        ranked.sort((a, b) -> fitter(a, b, scores) ? -1 : fitter(b, a, scores) ? 1 : 0);
+        return ranked;
+    }
+
+    private static boolean fitter(FeatureSubset a, FeatureSubset b, Map<FeatureSubset, Double> scores) {
+        int compare = Double.compare(scores.get(a), scores.get(b));
+        return compare > 0 || (compare == 0 && a.size() < b.size());
+    }
+
+    private static FeatureSubset tournament(List<FeatureSubset> population, Map<FeatureSubset, Double> scores, SplittableRandom random) {
+        FeatureSubset winner = population.get(random.nextInt(population.size()));
+        for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+            FeatureSubset challenger = population.get(random.nextInt(population.size()));
+            if (fitter(challenger, winner, scores)) winner = challenger;
+        }
+        return winner;
+    }
+
+    /**
+     * Returns the uniform crossover of the parents with some features flipped,
+     * trimmed to the limit and never empty
+     */
+    private static FeatureSubset breed(FeatureSubset mother, FeatureSubset father, int[] features, int limit, double rate, SplittableRandom random) {
+        FeatureSubset child = mother.crossover(father, random::nextLong);
+
+        // Jump straight to each flipped feature, rather than a coin toss per feature
+        if (rate >= 1) {
+            for (int feature : features) child = flip(child, feature);
+        } else {
+            double skip = Math.log1p(-rate);
+            for (long i = (long) (Math.log(1 - random.nextDouble()) / skip); i < features.length;
+                 i += 1 + (long) (Math.log(1 - random.nextDouble()) / skip)) {
+                child = flip(child, features[(int) i]);
+            }
+        }
+
+        return repair(child, features, limit, random);
+    }
+
+    private static FeatureSubset flip(FeatureSubset subset, int feature) {
+        return subset.contains(feature) ? subset.without(feature) : subset.with(feature);
+    }
+
+    /**
+     * Returns a subset with between 1 and limit of the features, chosen at random
+     */
+    private static FeatureSubset randomSubset(int[] features, int limit, SplittableRandom random) {
+        int size = 1 + random.nextInt(limit);
+
+        // A partial Fisher-Yates shuffle picks size distinct features
+        int[] shuffled = features.clone();
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(shuffled.length - i);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+
+        return FeatureSubset.of(Arrays.copyOf(shuffled, size));
+    }
+
+    /**
+     * Drops random features from a subset over the limit, or adds one to an empty subset
+     */
+    private static FeatureSubset repair(FeatureSubset subset, int[] features, int limit, SplittableRandom random) {
+        if (subset.isEmpty()) return subset.with(features[random.nextInt(features.length)]);
+
+        while (subset.size() > limit) {
+            int[] selected = subset.toArray();
+            subset = subset.without(selected[random.nextInt(selected.length)]);
+        }
+        return subset;
+    }
+
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    /**
+     * Sets the number of subsets in each generation
+     *
+     * @param populationSize
+     */
+    public void setPopulationSize(int populationSize) {
+        if (populationSize <= ELITES) throw new IllegalArgumentException("The population must be more than " + ELITES + ", got " + populationSize);
+        this.populationSize = populationSize;
+    }
+
+    public double getMutationRate() {
+        return mutationRate;
+    }
+
+    /**
+     * Sets the chance of each feature being flipped in a child,
+     * 0 (the default) for 1 / the number of features
+     *
+     * @param mutationRate
+     */
+    public void setMutationRate(double mutationRate) {
+        if (mutationRate < 0 || mutationRate > 1) throw new IllegalArgumentException("The mutation rate must be from 0 to 1, got " + mutationRate);
+        this.mutationRate = mutationRate;
+    }
+
+    /**
+     * Returns the number of subsets the last search bred again after they
+     * had already been scored, so didn't score a second time
+     *
+     * @return
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,125 @@
+package selection;
+
+/**
+ * The arithmetic inner loops of the incremental evaluators: adding one
+ * feature's column of scores or distances to a subset's, and picking the
+ * most probable class. There is a plain Java implementation and one using
+ * the Vector API (jdk.incubator.vector), which is picked once at startup
+ * if the JVM was started with --add-modules jdk.incubator.vector.
+ * <p>
+ * Both implementations do exactly the same floating point operations in
+ * the same order for every element, so their results are bitwise equal
+ * and the choice never changes which subset is selected. The system
+ * property selection.kernels=scalar or =vector overrides the choice.
+ */
+public interface Kernels {
+
+    // Picked the first time any evaluator needs it
+    Kernels SELECTED = select();
+
+    /**
+     * Adds source[sourceOffset..sourceOffset + length) to target[targetOffset..targetOffset + length)
+     *
+     * @param target
+     * @param targetOffset
+     * @param source
+     * @param sourceOffset
+     * @param length
+     */
+    void add(double[] target, int targetOffset, double[] source, int sourceOffset, int length);
+
+    /**
+     * Adds sign * source[sourceOffset + j] to each distances[j], j < length, recording
+     * errors[j] = tolerance * (distances[j] + source[sourceOffset + j]) from before the
+     * addition and bounds[j] = distances[j] + errors[j] from after it
+     *
+     * @param distances
+     * @param source
+     * @param sourceOffset
+     * @param sign 1 or -1
+     * @param tolerance relative rounding error to allow for
+     * @param errors
+     * @param bounds
+     * @param length
+     */
+    void addWithErrors(double[] distances, double[] source, int sourceOffset, double sign, double tolerance,
+                       double[] errors, double[] bounds, int length);
+
+    /**
+     * Predicts the class of instances from (inclusive) to to (exclusive). The score
+     * of class c for instance i is values[k] + sign * column[k], where k is
+     * i * instanceStride + c * classStride. predictions[i - from] is set to the first
+     * class with the highest score, or 0 if every score is negative infinity.
+     * NaN scores are never the highest.
+     *
+     * @param values
+     * @param column may be null if sign is 0
+     * @param sign
+     * @param instanceStride distance between one instance's scores and the next's
+     * @param classStride distance between one class's scores and the next's
+     * @param numClasses
+     * @param from
+     * @param to
+     * @param predictions
+     */
+    void argmax(double[] values, double[] column, double sign, int instanceStride, int classStride, int numClasses,
+                int from, int to, int[] predictions);
+
+    /**
+     * Returns true if argmax() is fastest with the scores stored class by class
+     * (classStride of the number of instances, instanceStride of 1), false if
+     * instance by instance (instanceStride of the number of classes, classStride of 1)
+     *
+     * @return
+     */
+    default boolean prefersClassMajor() {
+        return lanes() > 1;
+    }
+
+    /**
+     * Returns the number of doubles processed at once, 1 for the scalar kernels
+     *
+     * @return
+     */
+    int lanes();
+
+    /**
+     * Returns the plain Java kernels
+     *
+     * @return
+     */
+    static Kernels scalar() {
+        return ScalarKernels.INSTANCE;
+    }
+
+    /**
+     * Returns the Vector API kernels, or null if jdk.incubator.vector isn't available
+     *
+     * @return
+     */
+    static Kernels vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+
+        // Only loaded by name, so nothing links against the incubator module when it's missing
+        try {
+            return (Kernels) Class.forName("selection.VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Kernels select() {
+        String choice = System.getProperty("selection.kernels", "auto");
+        if (choice.equals("scalar")) return scalar();
+
+        Kernels vector = vector();
+        if (vector == null) {
+            if (choice.equals("vector")) System.err.println("Vector API unavailable (run with --add-modules jdk.incubator.vector), using scalar kernels");
+            return scalar();
+        }
+
+        // A single lane is just the scalar loop with extra overhead
+        if (choice.equals("auto") && vector.lanes() < 2) return scalar();
+        return vector;
+    }
+}
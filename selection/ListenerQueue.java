@@ -0,0 +1,110 @@
+package selection;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers events to listeners on a background thread through a bounded
+ * queue, so the search only ever pays for an offer() and is never held up
+ * by a slow listener. If the listeners fall so far behind that the queue is
+ * full, new events are dropped (and counted) rather than waited for.
+ * <p>
+ * Listeners which throw are reported on stderr and carry on receiving events.
+ */
+public class ListenerQueue implements AutoCloseable {
+
+    // Marks the end of the events, so the delivery thread stops once it has caught up
+    private static final SelectionEvent END = new SelectionEvent(SelectionEvent.Type.STOPPED, 0, -1, null, 0, 0);
+
+    private final List<SelectionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final BlockingQueue<SelectionEvent> queue;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread thread;
+
+    /**
+     * @param capacity the most events to hold before dropping new ones
+     */
+    public ListenerQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, got " + capacity);
+        }
+
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::deliver, "selection-listeners");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void addListener(SelectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SelectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Queues the event without waiting, dropping it if the queue is full
+     *
+     * @param event
+     */
+    public void publish(SelectionEvent event) {
+        if (!queue.offer(event)) dropped.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void deliver() {
+        try {
+            while (true) {
+                SelectionEvent event = queue.take();
+                if (event == END) return;
+
+                for (SelectionListener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (Exception e) {
+                        System.err.println("Selection listener failed on " + event + ": " + e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed without waiting, drop what's left
+        }
+    }
+
+    /**
+     * Delivers the events already queued, then stops. If interrupted it
+     * drops the events not yet delivered rather than waiting for them, and
+     * the thread's interrupt status is set again.
+     */
+    @Override
+    public void close() {
+        try {
+            // Wait for room rather than drop the end marker, the listeners will make some
+            if (!queue.offer(END, 1, TimeUnit.MINUTES)) thread.interrupt();
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package selection;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * A read-only JMX view of a MetricsRegistry, with one attribute per value in
+ * its snapshot (e.g. classify.nanos.p99), so the metrics can be watched in
+ * JConsole or VisualVM while a search is running. Metrics created after
+ * registration show up the next time the attributes are listed.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers a view of the registry with the platform MBean server
+     *
+     * @param registry
+     * @param name e.g. selection:type=Metrics,name=SFS
+     * @return the name registered, to unregister with
+     * @throws Exception
+     */
+    public static ObjectName register(MetricsRegistry registry, String name) throws Exception {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(registry), objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregisters a view registered with register, if it is still registered
+     *
+     * @param name
+     * @throws Exception
+     */
+    public static void unregister(ObjectName name) throws Exception {
+        if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.snapshot().get(attribute);
+        if (value == null) throw new AttributeNotFoundException("No metric " + attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = registry.snapshot();
+
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+            if (value != null) list.add(new Attribute(attribute, value));
+        }
+
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snapshot = registry.snapshot();
+
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> metric : snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(metric.getKey(), metric.getValue().getClass().getName(),
+                    metric.getKey(), true, false, false);
+        }
+
+        return new MBeanInfo(getClass().getName(), "Feature selection metrics", attributes, null, null, null);
+    }
+}
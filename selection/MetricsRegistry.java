@@ -0,0 +1,69 @@
+package selection;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Where FeatureSelection and Classifier record what they are doing: how many
+ * subsets were classified and how long each took, how long each best() and
+ * worst() sweep took, and the wall time and allocation of each iteration.
+ * SimpleMetricsRegistry keeps them in memory, other registries can forward
+ * them to a monitoring system instead.
+ * <p>
+ * Metrics are created the first time they are asked for, and asking again
+ * with the same name returns the same metric. Every method may be called
+ * from several threads at once.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * A count which only goes up
+     */
+    interface Counter {
+        void add(long amount);
+
+        default void increment() {
+            add(1);
+        }
+
+        long get();
+    }
+
+    /**
+     * The distribution of a value, e.g. a latency in nanoseconds
+     */
+    interface Histogram {
+        void record(long value);
+
+        long count();
+
+        /**
+         * Returns the value the given fraction of recorded values are at or below
+         *
+         * @param quantile between 0 and 1
+         * @return
+         */
+        long percentile(double quantile);
+    }
+
+    Counter counter(String name);
+
+    Histogram histogram(String name);
+
+    /**
+     * Registers a value which is read whenever the metrics are, replacing
+     * any gauge already registered with the same name
+     *
+     * @param name
+     * @param value
+     */
+    void gauge(String name, LongSupplier value);
+
+    /**
+     * Returns the current value of every metric, sorted by name. Histograms
+     * are flattened into name.count, name.mean, name.p99 and so on.
+     *
+     * @return
+     */
+    Map<String, Number> snapshot();
+}
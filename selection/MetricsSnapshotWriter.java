@@ -0,0 +1,119 @@
+package selection;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a JSON snapshot of a MetricsRegistry to a file on a background
+ * thread every interval, and once more when closed. Each snapshot replaces
+ * the last, and is written to a temporary file and moved into place so a
+ * reader never sees half a snapshot.
+ * <p>
+ * The file is one object, e.g. {"timestamp": 1700000000000, "metrics": {"classify.nanos.count": 120, ...}}
+ */
+public class MetricsSnapshotWriter implements AutoCloseable {
+
+    private final MetricsRegistry registry;
+
+    private final Path file;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param registry
+     * @param file
+     * @param intervalMillis time between snapshots
+     */
+    public MetricsSnapshotWriter(MetricsRegistry registry, Path file, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be greater than 0, got " + intervalMillis);
+        }
+
+        this.registry = registry;
+        this.file = file;
+        executor.scheduleAtFixedRate(this::writeSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private void writeSnapshot() {
+        try {
+            write();
+        } catch (IOException e) {
+            // The previous snapshot is still intact, so carry on searching
+            System.err.println("Could not write metrics " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a snapshot now, on the calling thread
+     *
+     * @throws IOException
+     */
+    public synchronized void write() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, toJson(System.currentTimeMillis(), registry.snapshot()).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String toJson(long timestamp, Map<String, Number> metrics) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\": ").append(timestamp).append(", \"metrics\": {");
+
+        String separator = "";
+        for (Map.Entry<String, Number> metric : metrics.entrySet()) {
+            json.append(separator).append('"').append(escape(metric.getKey())).append("\": ");
+
+            // JSON has no infinities or NaN
+            Number value = metric.getValue();
+            boolean finite = !(value instanceof Double) || Double.isFinite(value.doubleValue());
+            json.append(finite ? value : "null");
+
+            separator = ", ";
+        }
+
+        return json.append("}}\n").toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a final one. If interrupted
+     * while waiting for a periodic snapshot it writes the final one anyway,
+     * and the thread's interrupt status is set again.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        boolean interrupted = false;
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        // Set again afterwards, as writing to a file on an interrupted thread fails
+        try {
+            write();
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
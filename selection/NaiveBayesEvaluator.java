@@ -0,0 +1,423 @@
+package selection;
+
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Instances;
+import weka.estimators.Estimator;
+
+/**
+ * Scores subsets with Naive Bayes without retraining.
+ * <p>
+ * Naive Bayes treats every feature independently, so the estimator learnt
+ * for a feature is the same whichever other features are selected. This
+ * trains one Weka NaiveBayes on all the features, then for every validation
+ * instance stores the log probability each feature contributes to each class.
+ * A subset is scored by summing the columns of its features, and a subset one
+ * feature away from the base is scored by adding or subtracting one column
+ * from the base sums in O(validation size * classes).
+ * <p>
+ * The log probabilities are clamped exactly as Weka clamps the probabilities
+ * (at 1e-75), and missing values are skipped, so the predictions agree with
+ * NaiveBayes trained through a Remove filter apart from floating point ties.
+ * Memory use is features * validation size * classes doubles, stored class by
+ * class if the kernels predict a block of instances at once (see Kernels).
+ * <p>
+ * If the validation set is stored sparse (see ColumnarDataset) a feature's
+ * column is kept as the log probability of a 0 for each class, which every
+ * instance gets, plus the difference for each of its non-zeros. Then memory is
+ * (features + non-zeros) * classes doubles, and adding or removing a feature
+ * costs its non-zeros rather than the whole validation set, apart from
+ * counting the predictions.
+ */
+public class NaiveBayesEvaluator implements SubsetEvaluator {
+
+    // Weka never lets a single probability drop below this
+    private static final double MIN_PROBABILITY = 1e-75;
+
+    private final int numClasses;
+
+    // Number of validation instances which have a class value
+    private final int numInstances;
+
+    // The class of each validation instance
+    private final int[] classes;
+
+    // Whether scores are stored class by class rather than instance by instance, to suit the kernels
+    private final boolean classMajor = Kernels.SELECTED.prefersClassMajor();
+
+    // Number of validation instances predicted at once
+    private static final int BLOCK_SIZE = 64;
+
+    // Log prior of each class, repeated for every validation instance
+    private final double[] priors;
+
+    // columns[feature][index(instance, class)], null for the class attribute or if stored sparse
+    private final double[][] columns;
+
+    // Sparse storage, zeros[feature][class] is the log probability of a 0, and the
+    // differences[feature][k * numClasses + class] from it of the k'th non-zero, in row nonZeroRows[feature][k]
+    private final double[][] zeros;
+    private final int[][] nonZeroRows;
+    private final double[][] differences;
+
+    // The subset the next candidates are expected to be close to, along with its sums
+    private volatile Base base;
+
+    public NaiveBayesEvaluator(Instances training, ColumnarDataset validation) throws Exception {
+        NaiveBayes naiveBayes = new NaiveBayes();
+        naiveBayes.buildClassifier(training);
+
+        Estimator[][] distributions = naiveBayes.getConditionalEstimators();
+        Estimator classDistribution = naiveBayes.getClassEstimator();
+
+        this.numClasses = training.numClasses();
+
+        // Weka leaves instances without a class out of the accuracy
+        int withClass = 0;
+        for (int i = 0; i < validation.numInstances(); i++) {
+            if (validation.classValue(i) != -1) withClass++;
+        }
+
+        this.numInstances = withClass;
+        this.classes = new int[numInstances];
+        this.priors = new double[numInstances * numClasses];
+        this.columns = new double[training.numAttributes()][];
+        this.zeros = validation.isSparse() ? new double[training.numAttributes()][] : null;
+        this.nonZeroRows = validation.isSparse() ? new int[training.numAttributes()][] : null;
+        this.differences = validation.isSparse() ? new double[training.numAttributes()][] : null;
+
+        // The row of each validation instance among those with a class, -1 if it has none
+        int[] rows = new int[validation.numInstances()];
+
+        int row = 0;
+        for (int i = 0; i < validation.numInstances(); i++) {
+            if (validation.classValue(i) == -1) {
+                rows[i] = -1;
+                continue;
+            }
+
+            rows[i] = row;
+            classes[row] = validation.classValue(i);
+            for (int c = 0; c < numClasses; c++) {
+                priors[index(row, c)] = Math.log(classDistribution.getProbability(c));
+            }
+            row++;
+        }
+
+        int classIndex = training.classIndex();
+        for (int feature = 0; feature < training.numAttributes(); feature++) {
+            if (feature == classIndex) continue;
+
+            // Weka numbers its estimators without the class attribute
+            Estimator[] estimators = distributions[feature < classIndex ? feature : feature - 1];
+
+            if (validation.isSparse()) {
+                setSparseColumn(feature, estimators, validation, rows);
+                continue;
+            }
+
+            double[] column = new double[numInstances * numClasses];
+            double[] values = validation.column(feature);
+
+            row = 0;
+            for (int i = 0; i < validation.numInstances(); i++) {
+                if (validation.classValue(i) == -1) continue;
+
+                // Missing values contribute nothing, the column stays 0
+                if (!Double.isNaN(values[i])) {
+                    double value = values[i];
+                    for (int c = 0; c < numClasses; c++) {
+                        double probability = Math.max(MIN_PROBABILITY, estimators[c].getProbability(value));
+                        column[index(row, c)] = Math.log(probability);
+                    }
+                }
+                row++;
+            }
+
+            columns[feature] = column;
+        }
+    }
+
+    /**
+     * Stores the feature's log probabilities as the log probability of a 0
+     * and the difference from it of each non-zero of an instance with a class
+     */
+    private void setSparseColumn(int feature, Estimator[] estimators, ColumnarDataset validation, int[] rows) {
+        double[] zero = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            zero[c] = Math.log(Math.max(MIN_PROBABILITY, estimators[c].getProbability(0)));
+        }
+
+        int from = validation.columnStarts()[feature];
+        int to = validation.columnStarts()[feature + 1];
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            if (rows[validation.rowIndices()[k]] != -1) count++;
+        }
+
+        int[] featureRows = new int[count];
+        double[] featureDifferences = new double[count * numClasses];
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            int row = rows[validation.rowIndices()[k]];
+            if (row == -1) continue;
+
+            double value = validation.nonZeroValues()[k];
+            featureRows[n] = row;
+            for (int c = 0; c < numClasses; c++) {
+                // Missing values contribute nothing, so take away the 0's contribution
+                double probability = Double.isNaN(value) ? 0 : Math.log(Math.max(MIN_PROBABILITY, estimators[c].getProbability(value)));
+                featureDifferences[n * numClasses + c] = probability - zero[c];
+            }
+            n++;
+        }
+
+        zeros[feature] = zero;
+        nonZeroRows[feature] = featureRows;
+        differences[feature] = featureDifferences;
+    }
+
+    /**
+     * Returns the number of validation instances with a class,
+     * which the accuracy is a percentage of
+     *
+     * @return
+     */
+    public int numInstances() {
+        return numInstances;
+    }
+
+    @Override
+    public void setBase(FeatureSubset subset) {
+        this.base = new Base(subset, sums(subset));
+    }
+
+    @Override
+    public double classify(FeatureSubset indices) {
+        return classify(indices, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Stops counting once so many instances are misclassified that
+     * the accuracy can no longer reach the threshold
+     */
+    @Override
+    public double classify(FeatureSubset indices, double threshold) {
+        Base current = base;
+        int maxMisses = SubsetEvaluator.maxMisses(numInstances, threshold);
+
+        if (current != null) {
+            int feature = current.subset.onlyDifference(indices);
+
+            if (feature != -1) {
+                // Adding a feature adds its column, removing it takes the column away
+                int sign = indices.contains(feature) ? 1 : -1;
+                if (zeros != null) return accuracy(shifted(current.sums, feature, sign), null, 0, maxMisses);
+                return accuracy(current.sums, columns[feature], sign, maxMisses);
+            }
+
+            if (current.subset.equals(indices)) {
+                return accuracy(current.sums, null, 0, maxMisses);
+            }
+        }
+
+        return accuracy(sums(indices), null, 0, maxMisses);
+    }
+
+    /**
+     * Returns the log posterior (up to a constant) of each class
+     * for each validation instance using the specified features
+     *
+     * @param indices
+     * @return
+     */
+    private double[] sums(FeatureSubset indices) {
+        double[] sums = priors.clone();
+
+        if (zeros != null) {
+            // Every instance gets the log probability of a 0 for every feature, added up once
+            double[] zero = new double[numClasses];
+            for (int feature = indices.nextFeature(0); feature >= 0; feature = indices.nextFeature(feature + 1)) {
+                for (int c = 0; c < numClasses; c++) zero[c] += zeros[feature][c];
+                addNonZeros(sums, feature, 1);
+            }
+            addToEveryRow(sums, zero, 1);
+            return sums;
+        }
+
+        for (int feature = indices.nextFeature(0); feature >= 0; feature = indices.nextFeature(feature + 1)) {
+            Kernels.SELECTED.add(sums, 0, columns[feature], 0, sums.length);
+        }
+
+        return sums;
+    }
+
+    /**
+     * Returns a copy of the sums with the sparse feature's column added (sign 1) or taken away (sign -1)
+     */
+    private double[] shifted(double[] sums, int feature, int sign) {
+        double[] shifted = sums.clone();
+        addToEveryRow(shifted, zeros[feature], sign);
+        addNonZeros(shifted, feature, sign);
+        return shifted;
+    }
+
+    private void addToEveryRow(double[] sums, double[] perClass, int sign) {
+        for (int row = 0; row < numInstances; row++) {
+            for (int c = 0; c < numClasses; c++) sums[index(row, c)] += sign * perClass[c];
+        }
+    }
+
+    private void addNonZeros(double[] sums, int feature, int sign) {
+        int[] rows = nonZeroRows[feature];
+        double[] featureDifferences = differences[feature];
+
+        for (int k = 0; k < rows.length; k++) {
+            for (int c = 0; c < numClasses; c++) sums[index(rows[k], c)] += sign * featureDifferences[k * numClasses + c];
+        }
+    }
+
+    /**
+     * Returns the percentage of validation instances whose most probable class
+     * (sums + sign * column) is correct. Ties go to the first class, as in Weka.
+     * Stops as soon as more than maxMisses instances are wrong, and returns the
+     * best accuracy still possible.
+     *
+     * @param sums
+     * @param column may be null if sign is 0
+     * @param sign
+     * @param maxMisses
+     * @return
+     */
+    private double accuracy(double[] sums, double[] column, int sign, int maxMisses) {
+        if (numInstances == 0) return 0;
+
+        int correct = 0;
+        int misses = 0;
+        int[] predictions = new int[Math.min(BLOCK_SIZE, numInstances)];
+
+        for (int from = 0; from < numInstances; from += BLOCK_SIZE) {
+            int to = Math.min(numInstances, from + BLOCK_SIZE);
+            predict(sums, column, sign, from, to, predictions);
+
+            for (int row = from; row < to; row++) {
+                if (predictions[row - from] == classes[row]) {
+                    correct++;
+                } else if (++misses > maxMisses) {
+                    return 100.0 * (numInstances - misses) / numInstances;
+                }
+            }
+        }
+
+        return 100.0 * correct / numInstances;
+    }
+
+    /**
+     * Sets predictions[row - from] to the most probable class (sums + sign * column)
+     * of each validation instance from..to. Ties go to the first class, as in Weka.
+     */
+    private void predict(double[] sums, double[] column, int sign, int from, int to, int[] predictions) {
+        if (classMajor) {
+            Kernels.SELECTED.argmax(sums, column, sign, 1, numInstances, numClasses, from, to, predictions);
+        } else {
+            Kernels.SELECTED.argmax(sums, column, sign, numClasses, 1, numClasses, from, to, predictions);
+        }
+    }
+
+    private int index(int row, int c) {
+        return classMajor ? c * numInstances + row : row * numClasses + c;
+    }
+
+    /**
+     * Scores the subset a batch of validation instances at a time
+     *
+     * @param indices
+     * @return
+     */
+    @Override
+    public PartialEvaluation partial(FeatureSubset indices) {
+        Base current = base;
+
+        if (current != null) {
+            int feature = current.subset.onlyDifference(indices);
+
+            if (feature != -1) {
+                int sign = indices.contains(feature) ? 1 : -1;
+                if (zeros != null) return new Partial(shifted(current.sums, feature, sign), null, 0);
+                return new Partial(current.sums, columns[feature], sign);
+            }
+
+            if (current.subset.equals(indices)) {
+                return new Partial(current.sums, null, 0);
+            }
+        }
+
+        return new Partial(sums(indices), null, 0);
+    }
+
+    /**
+     * Classifies validation instances in order, from sums + sign * column
+     */
+    private class Partial implements PartialEvaluation {
+        private final double[] sums;
+        private final double[] column;
+        private final int sign;
+
+        private int evaluated;
+        private int correct;
+        private final int[] predictions = new int[BLOCK_SIZE];
+
+        private Partial(double[] sums, double[] column, int sign) {
+            this.sums = sums;
+            this.column = column;
+            this.sign = sign;
+        }
+
+        @Override
+        public int numInstances() {
+            return numInstances;
+        }
+
+        @Override
+        public void evaluateUntil(int count) {
+            while (evaluated < Math.min(count, numInstances)) {
+                int to = Math.min(Math.min(count, numInstances), evaluated + BLOCK_SIZE);
+                predict(sums, column, sign, evaluated, to, predictions);
+
+                for (int row = evaluated; row < to; row++) {
+                    if (predictions[row - evaluated] == classes[row]) correct++;
+                }
+                evaluated = to;
+            }
+        }
+
+        @Override
+        public int numEvaluated() {
+            return evaluated;
+        }
+
+        @Override
+        public int numCorrect() {
+            return correct;
+        }
+
+        @Override
+        public double accuracy() {
+            evaluateUntil(numInstances);
+            return numInstances == 0 ? 0 : 100.0 * correct / numInstances;
+        }
+    }
+
+    /**
+     * A subset along with its precomputed sums, kept
+     * together so they can be swapped atomically
+     */
+    private static class Base {
+        private final FeatureSubset subset;
+        private final double[] sums;
+
+        private Base(FeatureSubset subset, double[] sums) {
+            this.subset = subset;
+            this.sums = sums;
+        }
+    }
+}
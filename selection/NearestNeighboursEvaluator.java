@@ -0,0 +1,570 @@
+package selection;
+
+import java.util.Arrays;
+
+/**
+ * Scores subsets with k-nearest neighbours (Weka's IBk) without retraining.
+ * <p>
+ * IBk's squared Euclidean distance is a sum over the selected features, so the
+ * validation-by-training matrix of distances for a subset is the sum of one
+ * matrix per feature. This keeps the matrix for the base subset, and scores a
+ * candidate one feature away by adding or subtracting that feature's matrix,
+ * then finding each validation instance's nearest training instances in
+ * O(training size) rather than retraining IBk.
+ * <p>
+ * Distances are computed exactly as IBk computes them: numeric attributes are
+ * normalised by their range over the training instances and the validation
+ * instances classified so far (IBk widens its ranges with every instance it
+ * classifies), missing values count as in EuclideanDistance, and every training
+ * instance as close as the k-th nearest gets a vote, on top of IBk's 1 / n prior
+ * for every class. Adding or subtracting a feature's distances rounds differently
+ * to IBk summing them in attribute order, which would break the exact ties that
+ * discrete attributes give, so the training instances whose distance is within
+ * rounding error of the k-th nearest are summed again in attribute order. So the
+ * predictions agree exactly with IBk trained through a Remove filter.
+ * <p>
+ * When the base moves one feature (as it does between the sweeps of every
+ * sequential search) its matrix is updated in place by adding or subtracting
+ * that feature's matrix, rather than summed again over the whole subset. The
+ * rounding error this builds up is tracked as an absolute bound (every feature's
+ * squared distance is at most 1), and widens the band of distances summed again.
+ * <p>
+ * Every matrix is stored row by row, one validation instance's distances to
+ * every training instance together, so scoring streams through the base and
+ * feature matrices in order. The per-feature matrices are computed up front if
+ * they fit in the memory budget, otherwise each row is computed as it is needed.
+ */
+public class NearestNeighboursEvaluator implements SubsetEvaluator {
+
+    // Fraction of the maximum heap the per-feature matrices may take up by default
+    private static final int DEFAULT_MEMORY_DIVISOR = 4;
+
+    private final int numNeighbours;
+
+    private final int numClasses;
+
+    // Number of attributes other than the class, the most any squared distance can be
+    private final int numFeatures;
+
+    // Training instances with a class value, which are the neighbours
+    private final int numTraining;
+    private final int[] trainingClasses;
+    private final double[] trainingWeights;
+
+    // Validation instances with a class value, which the accuracy is a percentage of
+    private final int numInstances;
+    private final int[] classes;
+
+    // Per attribute, null for the class attribute
+    private final boolean[] nominal;
+    private final double[][] trainingValues;
+    private final double[][] validationValues;
+
+    // The range of each numeric attribute when each validation instance is classified
+    private final double[][] minimums;
+    private final double[][] maximums;
+
+    // columns[feature][instance * numTraining + neighbour], the squared distance due to the feature, null if not precomputed
+    private final double[][] columns;
+
+    // The subset the next candidates are expected to be close to, along with its distances
+    private volatile Base base;
+
+    /**
+     * @param training
+     * @param validation
+     * @param numNeighbours k
+     */
+    public NearestNeighboursEvaluator(ColumnarDataset training, ColumnarDataset validation, int numNeighbours) {
+        this(training, validation, numNeighbours, Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_DIVISOR);
+    }
+
+    /**
+     * @param training
+     * @param validation
+     * @param numNeighbours k
+     * @param memoryBudget most bytes to precompute the per-feature matrices in
+     */
+    public NearestNeighboursEvaluator(ColumnarDataset training, ColumnarDataset validation, int numNeighbours, long memoryBudget) {
+        if (numNeighbours < 1) {
+            throw new IllegalArgumentException("Number of neighbours must be at least 1, got " + numNeighbours);
+        }
+
+        this.numNeighbours = numNeighbours;
+        this.numClasses = training.numClasses();
+
+        // IBk drops training instances without a class
+        int[] trainingRows = rowsWithClass(training);
+        this.numTraining = trainingRows.length;
+        this.trainingClasses = new int[numTraining];
+        this.trainingWeights = new double[numTraining];
+        for (int j = 0; j < numTraining; j++) {
+            trainingClasses[j] = training.classValue(trainingRows[j]);
+            trainingWeights[j] = training.weight(trainingRows[j]);
+        }
+
+        // Evaluation leaves instances without a class out of the accuracy
+        int[] validationRows = rowsWithClass(validation);
+        this.numInstances = validationRows.length;
+        this.classes = new int[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            classes[i] = validation.classValue(validationRows[i]);
+        }
+
+        int numAttributes = training.numAttributes();
+        this.nominal = new boolean[numAttributes];
+        this.trainingValues = new double[numAttributes][];
+        this.validationValues = new double[numAttributes][];
+        this.minimums = new double[numAttributes][];
+        this.maximums = new double[numAttributes][];
+
+        for (int feature = 0; feature < numAttributes; feature++) {
+            if (feature == training.classIndex()) continue;
+
+            nominal[feature] = training.getHeader().attribute(feature).isNominal();
+            trainingValues[feature] = select(training.column(feature), trainingRows);
+            validationValues[feature] = select(validation.column(feature), validationRows);
+            if (!nominal[feature]) setRanges(feature, validation.column(feature), validation);
+        }
+
+        this.numFeatures = numAttributes - 1;
+        boolean precompute = (long) numFeatures * numInstances * numTraining * Double.BYTES <= memoryBudget;
+
+        this.columns = new double[numAttributes][];
+        if (precompute) {
+            for (int feature = 0; feature < numAttributes; feature++) {
+                if (feature == training.classIndex()) continue;
+
+                double[] column = new double[numInstances * numTraining];
+                for (int i = 0; i < numInstances; i++) {
+                    for (int j = 0; j < numTraining; j++) column[i * numTraining + j] = distance(feature, i, j);
+                }
+                columns[feature] = column;
+            }
+        }
+    }
+
+    private static int[] rowsWithClass(ColumnarDataset data) {
+        int count = 0;
+        for (int row = 0; row < data.numInstances(); row++) {
+            if (data.classValue(row) != -1) count++;
+        }
+
+        int[] rows = new int[count];
+        count = 0;
+        for (int row = 0; row < data.numInstances(); row++) {
+            if (data.classValue(row) != -1) rows[count++] = row;
+        }
+        return rows;
+    }
+
+    private static double[] select(double[] values, int[] rows) {
+        double[] selected = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) selected[i] = values[rows[i]];
+        return selected;
+    }
+
+    /**
+     * Works out the range IBk normalises the attribute by when it classifies
+     * each validation instance: the range over the training instances, widened
+     * by every validation instance so far including the one being classified
+     * (even those without a class, which Evaluation still classifies)
+     */
+    private void setRanges(int feature, double[] validationColumn, ColumnarDataset validation) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (double value : trainingValues[feature]) {
+            if (Double.isNaN(value)) continue;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        double[] rowMinimums = new double[numInstances];
+        double[] rowMaximums = new double[numInstances];
+
+        int i = 0;
+        for (int row = 0; row < validation.numInstances(); row++) {
+            double value = validationColumn[row];
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            if (validation.classValue(row) == -1) continue;
+            rowMinimums[i] = min;
+            rowMaximums[i] = max;
+            i++;
+        }
+
+        minimums[feature] = rowMinimums;
+        maximums[feature] = rowMaximums;
+    }
+
+    /**
+     * Adds the squared distance due to the feature between validation instance
+     * i and every training instance to distances[offset..offset + numTraining)
+     */
+    private void addDistances(int feature, int i, double[] distances, int offset) {
+        double[] column = columns[feature];
+        if (column != null) {
+            Kernels.SELECTED.add(distances, offset, column, i * numTraining, numTraining);
+        } else {
+            for (int j = 0; j < numTraining; j++) {
+                distances[offset + j] += distance(feature, i, j);
+            }
+        }
+    }
+
+    /**
+     * Returns the squared distance due to the feature between
+     * validation instance i and training instance j
+     */
+    private double distance(int feature, int i, int j) {
+        if (columns[feature] != null) return columns[feature][i * numTraining + j];
+
+        double value = validationValues[feature][i];
+        double other = trainingValues[feature][j];
+
+        if (nominal[feature]) {
+            // 0 if the values are the same, otherwise (or if either is missing) 1
+            boolean same = !Double.isNaN(value) && !Double.isNaN(other) && (int) value == (int) other;
+            return same ? 0 : 1;
+        }
+
+        double difference = difference(value, other, minimums[feature][i], maximums[feature][i]);
+        return difference * difference;
+    }
+
+    /**
+     * The difference between two numeric values, as in NormalizableDistance.difference
+     */
+    private static double difference(double value, double other, double min, double max) {
+        boolean missing = Double.isNaN(value);
+        boolean otherMissing = Double.isNaN(other);
+
+        if (!missing && !otherMissing) return normalise(value, min, max) - normalise(other, min, max);
+        if (missing && otherMissing) return 1;
+
+        // The known value's distance from whichever end of the range is furthest away
+        double difference = normalise(otherMissing ? value : other, min, max);
+        return difference < 0.5 ? 1 - difference : difference;
+    }
+
+    private static double normalise(double value, double min, double max) {
+        return max == min ? 0 : (value - min) / (max - min);
+    }
+
+    /**
+     * Returns the number of validation instances with a class,
+     * which the accuracy is a percentage of
+     *
+     * @return
+     */
+    public int numInstances() {
+        return numInstances;
+    }
+
+    /**
+     * Moves the base to the subset. One feature away from the current base, the
+     * feature's distances are added or subtracted in place, in O(validation size
+     * * training size), so this must not be called while candidates of the current
+     * base are being scored. Otherwise the distances are summed in attribute order,
+     * as IBk does, so they are exact and only the candidates' single addition or
+     * subtraction rounds.
+     */
+    @Override
+    public void setBase(FeatureSubset subset) {
+        Base current = base;
+        if (current != null && current.subset.equals(subset)) return;
+
+        int feature = current == null ? -1 : current.subset.onlyDifference(subset);
+        if (feature != -1) {
+            double sign = subset.contains(feature) ? 1 : -1;
+            double[] differences = columns[feature] == null ? new double[numTraining] : null;
+            double[] errors = new double[numTraining];
+            double[] bounds = new double[numTraining];
+
+            for (int i = 0; i < numInstances; i++) {
+                double[] column = columns[feature];
+                int from = i * numTraining;
+                if (column == null) {
+                    for (int j = 0; j < numTraining; j++) differences[j] = distance(feature, i, j);
+                    column = differences;
+                    from = 0;
+                }
+                // Only the sign matters here, the rounding is bounded below
+                Kernels.SELECTED.addWithErrors(current.distances[i], column, from, sign, 0, errors, bounds, numTraining);
+            }
+
+            // Every value added to is at most numFeatures, so rounds by at most half an ulp of it
+            double drift = current.drift == 0 ? (current.subset.size() + 1) * Math.ulp(1.0) * numFeatures : current.drift;
+            this.base = new Base(subset, current.distances, drift + Math.ulp(1.0) * numFeatures);
+            return;
+        }
+
+        double[][] distances = new double[numInstances][numTraining];
+        for (int i = 0; i < numInstances; i++) {
+            for (int f = subset.nextFeature(0); f >= 0; f = subset.nextFeature(f + 1)) {
+                addDistances(f, i, distances[i], 0);
+            }
+        }
+
+        this.base = new Base(subset, distances, 0);
+    }
+
+    @Override
+    public double classify(FeatureSubset indices) {
+        return classify(indices, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Stops counting once so many instances are misclassified that
+     * the accuracy can no longer reach the threshold
+     */
+    @Override
+    public double classify(FeatureSubset indices, double threshold) {
+        Scorer scorer = scorer(indices);
+        if (numInstances == 0) return 0;
+
+        int maxMisses = SubsetEvaluator.maxMisses(numInstances, threshold);
+        int correct = 0;
+        int misses = 0;
+
+        for (int i = 0; i < numInstances; i++) {
+            if (scorer.predict(i) == classes[i]) {
+                correct++;
+            } else if (++misses > maxMisses) {
+                return 100.0 * (numInstances - misses) / numInstances;
+            }
+        }
+
+        return 100.0 * correct / numInstances;
+    }
+
+    /**
+     * Scores the subset a batch of validation instances at a time
+     *
+     * @param indices
+     * @return
+     */
+    @Override
+    public PartialEvaluation partial(FeatureSubset indices) {
+        Scorer scorer = scorer(indices);
+
+        return new PartialEvaluation() {
+            private int evaluated;
+            private int correct;
+
+            @Override
+            public int numInstances() {
+                return numInstances;
+            }
+
+            @Override
+            public void evaluateUntil(int count) {
+                for (; evaluated < Math.min(count, numInstances); evaluated++) {
+                    if (scorer.predict(evaluated) == classes[evaluated]) correct++;
+                }
+            }
+
+            @Override
+            public int numEvaluated() {
+                return evaluated;
+            }
+
+            @Override
+            public int numCorrect() {
+                return correct;
+            }
+
+            @Override
+            public double accuracy() {
+                evaluateUntil(numInstances);
+                return numInstances == 0 ? 0 : 100.0 * correct / numInstances;
+            }
+        };
+    }
+
+    /**
+     * Returns a scorer for the subset, which works from the base's
+     * distances if the subset is the base or one feature away from it
+     */
+    private Scorer scorer(FeatureSubset indices) {
+        Base current = base;
+
+        if (current != null) {
+            int feature = current.subset.onlyDifference(indices);
+
+            if (feature != -1) return new Scorer(indices, current, feature, indices.contains(feature) ? 1 : -1);
+            if (current.subset.equals(indices)) return new Scorer(indices, current, -1, 0);
+        }
+
+        return new Scorer(indices, null, -1, 0);
+    }
+
+    /**
+     * Predicts the class of validation instances for one subset, from the base
+     * distances plus or minus one feature's, or from scratch if there's no base.
+     * Holds the working arrays, so is only used by one thread.
+     */
+    private class Scorer {
+        private final int[] features;
+        private final double[][] base;
+        private final int feature;
+        private final double sign;
+
+        // Bound on the relative rounding error of the base plus or minus the feature, against IBk's sum
+        private final double tolerance;
+
+        // Bound on the absolute error on top of that when the base was updated in place, otherwise 0
+        private final double drift;
+
+        private final double[] distances = new double[numTraining];
+        private final double[] errors;
+        private final double[] bounds;
+        // The feature's distances when they aren't precomputed
+        private final double[] differences;
+        private final double[] nearest = new double[numNeighbours];
+        private final double[] distribution = new double[numClasses];
+
+        private Scorer(FeatureSubset subset, Base base, int feature, double sign) {
+            this.features = subset.toArray();
+            this.base = base == null ? null : base.distances;
+            this.feature = feature;
+            this.sign = sign;
+            this.tolerance = (features.length + 3) * Math.ulp(1.0);
+            // The base's own error, then IBk's and this addition's rounding, which are within numFeatures
+            this.drift = base == null || base.drift == 0 ? 0 : base.drift + (features.length + 1) * Math.ulp(1.0) * numFeatures;
+            this.errors = feature == -1 && drift == 0 ? null : new double[numTraining];
+            this.bounds = feature == -1 && drift == 0 ? null : new double[numTraining];
+            this.differences = feature == -1 || columns[feature] != null ? null : new double[numTraining];
+        }
+
+        /**
+         * Returns the class IBk predicts for validation instance i,
+         * or -1 if there are no training instances
+         */
+        private int predict(int i) {
+            if (numTraining == 0) return -1;
+
+            if (base == null) {
+                // Summed in attribute order, so exact
+                for (int j = 0; j < numTraining; j++) distances[j] = sum(i, j);
+            } else {
+                System.arraycopy(base[i], 0, distances, 0, numTraining);
+                if (feature != -1 || drift != 0) correct(i);
+            }
+
+            double kth = kthNearest(distances);
+            double total = (double) numClasses / numTraining;
+            Arrays.fill(distribution, 1.0 / numTraining);
+
+            // Every instance as close as the k-th nearest votes, on top of a small prior for every class
+            for (int j = 0; j < numTraining; j++) {
+                if (distances[j] <= kth) {
+                    distribution[trainingClasses[j]] += trainingWeights[j];
+                    total += trainingWeights[j];
+                }
+            }
+
+            // The first class with the highest probability, as in Evaluation
+            int predicted = -1;
+            double highest = 0;
+            for (int c = 0; c < numClasses; c++) {
+                double probability = distribution[c] / total;
+                if (probability > highest) {
+                    predicted = c;
+                    highest = probability;
+                }
+            }
+
+            return predicted;
+        }
+
+        /**
+         * Adds or subtracts the feature's distances (if any) from the base's, then
+         * makes the distances which could be as close as the k-th nearest exact, and
+         * the rest infinite. Every distance is within its bound of IBk's, so the k-th
+         * smallest upper bound is at least IBk's k-th nearest distance, and only
+         * instances whose lower bound is within it can get a vote.
+         */
+        private void correct(int i) {
+            if (feature == -1) {
+                Arrays.fill(errors, 0);
+                System.arraycopy(distances, 0, bounds, 0, numTraining);
+            } else {
+                double[] column = columns[feature];
+                int from = i * numTraining;
+
+                if (column == null) {
+                    for (int j = 0; j < numTraining; j++) differences[j] = distance(feature, i, j);
+                    column = differences;
+                    from = 0;
+                }
+
+                Kernels.SELECTED.addWithErrors(distances, column, from, sign, tolerance, errors, bounds, numTraining);
+            }
+
+            if (drift != 0) {
+                for (int j = 0; j < numTraining; j++) {
+                    errors[j] += drift;
+                    bounds[j] += drift;
+                }
+            }
+
+            double upper = kthNearest(bounds);
+
+            for (int j = 0; j < numTraining; j++) {
+                distances[j] = distances[j] - errors[j] <= upper ? sum(i, j) : Double.POSITIVE_INFINITY;
+            }
+        }
+
+        /**
+         * Returns the squared distance between validation instance i and
+         * training instance j, summed over the subset in attribute order
+         */
+        private double sum(int i, int j) {
+            double distance = 0;
+            for (int f : features) distance += distance(f, i, j);
+            return distance;
+        }
+
+        /**
+         * Returns the k-th smallest of the values, or the
+         * largest if there are fewer than k of them
+         */
+        private double kthNearest(double[] values) {
+            int found = 0;
+            for (double value : values) {
+                if (found == numNeighbours && value >= nearest[numNeighbours - 1]) continue;
+
+                int position = found < numNeighbours ? found++ : numNeighbours - 1;
+                while (position > 0 && nearest[position - 1] > value) {
+                    nearest[position] = nearest[position - 1];
+                    position--;
+                }
+                nearest[position] = value;
+            }
+            return nearest[found - 1];
+        }
+    }
+
+    /**
+     * A subset along with its distance matrix, one row per validation
+     * instance, kept together so they can be swapped atomically
+     */
+    private static class Base {
+        private final FeatureSubset subset;
+        private final double[][] distances;
+
+        // Bound on the distances' absolute error once updated in place, 0 while summed in attribute order
+        private final double drift;
+
+        private Base(FeatureSubset subset, double[][] distances, double drift) {
+            this.subset = subset;
+            this.distances = distances;
+            this.drift = drift;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package selection;
+
+/**
+ * Scores one subset on the validation instances a batch at a time,
+ * so a race (see Race) can drop it before every instance is classified.
+ * The model is trained once, when the partial evaluation is created.
+ */
+public interface PartialEvaluation {
+
+    /**
+     * Returns the number of validation instances (with a class) there are to classify
+     *
+     * @return
+     */
+    int numInstances();
+
+    /**
+     * Classifies validation instances until count of them have been classified
+     *
+     * @param count
+     * @throws Exception
+     */
+    void evaluateUntil(int count) throws Exception;
+
+    /**
+     * Returns the number of validation instances classified so far
+     *
+     * @return
+     */
+    int numEvaluated();
+
+    /**
+     * Returns the number of validation instances classified correctly so far
+     *
+     * @return
+     */
+    int numCorrect();
+
+    /**
+     * Classifies any remaining validation instances and returns the accuracy,
+     * exactly as Classifier.classify would have for the same subset
+     *
+     * @return
+     * @throws Exception
+     */
+    double accuracy() throws Exception;
+}
@@ -0,0 +1,265 @@
+package selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Races the candidates of a sweep against each other on growing batches of
+ * validation instances (Maron and Moore's Hoeffding races). After each batch
+ * every surviving candidate has a confidence interval on its accuracy, and a
+ * candidate is dropped once its upper bound is below the highest lower bound.
+ * The batches double in size until one candidate is left or every instance has
+ * been classified, and only the candidates left (the finalists) are scored on
+ * the whole validation set.
+ * <p>
+ * The intervals use either Hoeffding's bound, or the empirical Bernstein bound,
+ * which is tighter for candidates whose accuracy is near 0% or 100%. The confidence
+ * is split between every comparison of a race, so with confidence 0.95 the best
+ * candidate survives a race at least 95% of the time.
+ * <p>
+ * The counters are for every race run so far, and are safe to read while racing.
+ */
+public class Race {
+
+    public enum Bound {
+        HOEFFDING,
+        BERNSTEIN
+    }
+
+    /**
+     * Runs tasks, possibly concurrently, rethrowing the first failure
+     */
+    public interface Runner {
+        void runAll(List<Callable<Void>> tasks) throws Exception;
+    }
+
+    // Number of validation instances in the first batch
+    private static final int DEFAULT_FIRST_BATCH = 32;
+
+    private final double confidence;
+
+    private final Bound bound;
+
+    private final int firstBatch;
+
+    private final AtomicLong races = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong eliminated = new AtomicLong();
+    private final AtomicLong instancesEvaluated = new AtomicLong();
+    private final AtomicLong instancesSkipped = new AtomicLong();
+
+    /**
+     * @param confidence the probability the best candidate survives, e.g. 0.95
+     * @param bound
+     */
+    public Race(double confidence, Bound bound) {
+        this(confidence, bound, DEFAULT_FIRST_BATCH);
+    }
+
+    /**
+     * @param confidence the probability the best candidate survives, e.g. 0.95
+     * @param bound
+     * @param firstBatch number of validation instances in the first batch
+     */
+    public Race(double confidence, Bound bound, int firstBatch) {
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1, got " + confidence);
+        }
+        if (firstBatch < 1) {
+            throw new IllegalArgumentException("The first batch must have at least 1 instance, got " + firstBatch);
+        }
+
+        this.confidence = confidence;
+        this.bound = bound;
+        this.firstBatch = firstBatch;
+    }
+
+    /**
+     * Races the candidates. Candidates with a known score (e.g. from the cache) have
+     * a null evaluation and their score in results, and take part with an exact interval.
+     * On return the finalists have their exact scores in results, and eliminated
+     * candidates have negative infinity so they are never chosen.
+     *
+     * @param evaluations the partial evaluation of each candidate, null if the score is known
+     * @param results the known scores, filled in with the results
+     * @param runner runs the batches of the surviving candidates
+     * @throws Exception
+     */
+    public void run(PartialEvaluation[] evaluations, double[] results, Runner runner) throws Exception {
+        int numCandidates = evaluations.length;
+        int numInstances = 0;
+        int numRaced = 0;
+
+        for (PartialEvaluation evaluation : evaluations) {
+            if (evaluation == null) continue;
+            numInstances = Math.max(numInstances, evaluation.numInstances());
+            numRaced++;
+        }
+
+        races.incrementAndGet();
+        candidates.addAndGet(numRaced);
+
+        boolean[] alive = new boolean[numCandidates];
+        Arrays.fill(alive, true);
+
+        double[] lower = new double[numCandidates];
+        double[] upper = new double[numCandidates];
+        for (int i = 0; i < numCandidates; i++) {
+            if (evaluations[i] == null) lower[i] = upper[i] = results[i] / 100;
+        }
+
+        // Every candidate is compared once per batch, so share the confidence between all of them
+        int numBatches = 1;
+        for (long size = firstBatch; size < numInstances; size *= 2) numBatches++;
+        double delta = (1 - confidence) / Math.max(1, (long) numRaced * numBatches);
+
+        int target = 0;
+        int batch = firstBatch;
+        int numAlive = numCandidates;
+
+        while (numAlive > 1 && target < numInstances) {
+            target = (int) Math.min(numInstances, (long) target + batch);
+            batch *= 2;
+
+            int until = target;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < numCandidates; i++) {
+                PartialEvaluation evaluation = evaluations[i];
+                if (alive[i] && evaluation != null) {
+                    tasks.add(() -> {
+                        evaluation.evaluateUntil(until);
+                        return null;
+                    });
+                }
+            }
+            runner.runAll(tasks);
+
+            double leader = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < numCandidates; i++) {
+                if (!alive[i] || evaluations[i] == null) {
+                    if (alive[i]) leader = Math.max(leader, lower[i]);
+                    continue;
+                }
+
+                int evaluated = evaluations[i].numEvaluated();
+                double accuracy = evaluated == 0 ? 0 : (double) evaluations[i].numCorrect() / evaluated;
+                double width = evaluated == 0 ? 1 : width(accuracy, evaluated, delta);
+
+                lower[i] = Math.max(0, accuracy - width);
+                upper[i] = Math.min(1, accuracy + width);
+                leader = Math.max(leader, lower[i]);
+            }
+
+            for (int i = 0; i < numCandidates; i++) {
+                if (alive[i] && upper[i] < leader) {
+                    alive[i] = false;
+                    numAlive--;
+                    results[i] = Double.NEGATIVE_INFINITY;
+                    if (evaluations[i] != null) eliminated.incrementAndGet();
+                    record(evaluations[i], numInstances);
+                    evaluations[i] = null;
+                }
+            }
+        }
+
+        // Score the finalists on every instance
+        List<Callable<Void>> finalists = new ArrayList<>();
+        for (int i = 0; i < numCandidates; i++) {
+            PartialEvaluation evaluation = evaluations[i];
+            if (!alive[i] || evaluation == null) continue;
+
+            int candidate = i;
+            finalists.add(() -> {
+                results[candidate] = evaluation.accuracy();
+                return null;
+            });
+        }
+        runner.runAll(finalists);
+
+        for (int i = 0; i < numCandidates; i++) {
+            if (alive[i]) record(evaluations[i], numInstances);
+        }
+    }
+
+    /**
+     * Returns the half width of the confidence interval on
+     * an accuracy (in [0, 1]) measured on n instances
+     */
+    private double width(double accuracy, int n, double delta) {
+        switch (bound) {
+            case HOEFFDING:
+                return Math.sqrt(Math.log(2 / delta) / (2.0 * n));
+            case BERNSTEIN:
+                // Each instance is right or wrong, so the empirical variance is p(1 - p)
+                double variance = accuracy * (1 - accuracy);
+                double log = Math.log(3 / delta);
+                return Math.sqrt(2 * variance * log / n) + 3 * log / n;
+            default:
+                throw new IllegalArgumentException("Unknown bound " + bound);
+        }
+    }
+
+    private void record(PartialEvaluation evaluation, int numInstances) {
+        if (evaluation == null) return;
+
+        instancesEvaluated.addAndGet(evaluation.numEvaluated());
+        instancesSkipped.addAndGet(numInstances - evaluation.numEvaluated());
+    }
+
+    /***
+     * ===============
+     * GETTERS
+     * ===============
+     */
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public Bound getBound() {
+        return bound;
+    }
+
+    public long getRaces() {
+        return races.get();
+    }
+
+    public long getCandidates() {
+        return candidates.get();
+    }
+
+    public long getEliminated() {
+        return eliminated.get();
+    }
+
+    /**
+     * Returns the number of validation instances classified by
+     * every candidate raced so far
+     *
+     * @return
+     */
+    public long getInstancesEvaluated() {
+        return instancesEvaluated.get();
+    }
+
+    /**
+     * Returns the number of validation instances which weren't classified
+     * because their candidate was eliminated, i.e. the work saved
+     *
+     * @return
+     */
+    public long getInstancesSkipped() {
+        return instancesSkipped.get();
+    }
+
+    @Override
+    public String toString() {
+        long total = getInstancesEvaluated() + getInstancesSkipped();
+        return String.format("Race(%d races, %d of %d candidates eliminated, %d of %d instances skipped (%.1f%%))",
+                getRaces(), getEliminated(), getCandidates(), getInstancesSkipped(), total,
+                total == 0 ? 0.0 : 100.0 * getInstancesSkipped() / total);
+    }
+}
@@ -0,0 +1,80 @@
+package selection;
+
+/**
+ * The kernels as plain loops, used when the Vector API isn't available
+ */
+final class ScalarKernels implements Kernels {
+
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public int lanes() {
+        return 1;
+    }
+
+    @Override
+    public void add(double[] target, int targetOffset, double[] source, int sourceOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] += source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void addWithErrors(double[] distances, double[] source, int sourceOffset, double sign, double tolerance,
+                              double[] errors, double[] bounds, int length) {
+        for (int j = 0; j < length; j++) {
+            double difference = source[sourceOffset + j];
+            errors[j] = tolerance * (distances[j] + difference);
+            distances[j] += sign * difference;
+            bounds[j] = distances[j] + errors[j];
+        }
+    }
+
+    @Override
+    public void argmax(double[] values, double[] column, double sign, int instanceStride, int classStride, int numClasses,
+                       int from, int to, int[] predictions) {
+        for (int i = from; i < to; i++) {
+            int offset = i * instanceStride;
+            int predicted = 0;
+            double highest = Double.NEGATIVE_INFINITY;
+
+            // Separate loops for consecutive scores, where C2 drops the bounds checks
+            if (classStride == 1 && column == null) {
+                for (int c = 0; c < numClasses; c++) {
+                    double score = values[offset + c];
+                    if (score > highest) {
+                        highest = score;
+                        predicted = c;
+                    }
+                }
+            } else if (classStride == 1) {
+                for (int c = 0; c < numClasses; c++) {
+                    double score = values[offset + c] + sign * column[offset + c];
+                    if (score > highest) {
+                        highest = score;
+                        predicted = c;
+                    }
+                }
+            } else {
+                for (int c = 0; c < numClasses; c++) {
+                    int k = offset + c * classStride;
+                    double score = column == null ? values[k] : values[k] + sign * column[k];
+                    if (score > highest) {
+                        highest = score;
+                        predicted = c;
+                    }
+                }
+            }
+
+            predictions[i - from] = predicted;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,103 @@
+package selection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the objective function score of recently evaluated
+ * feature subsets, so revisiting a subset does not retrain the classifier.
+ * <p>
+ * The cache holds at most capacity subsets, once full the least recently
+ * used subset is evicted. All methods are synchronized so the cache can
+ * be shared by the threads scoring candidates in parallel.
+ */
+public class ScoreCache {
+
+    // Maximum number of subsets to remember, 0 disables the cache
+    private final int capacity;
+
+    // Iterates in access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<FeatureSubset, Double> scores;
+
+    private long hits;
+    private long misses;
+
+    public ScoreCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity can not be negative, got " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.scores = new LinkedHashMap<FeatureSubset, Double>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FeatureSubset, Double> eldest) {
+                return size() > ScoreCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached score for the subset, or null if it
+     * has not been scored (or has since been evicted).
+     *
+     * @param subset
+     * @return
+     */
+    public synchronized Double get(FeatureSubset subset) {
+        Double score = scores.get(subset);
+
+        if (score == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return score;
+    }
+
+    /**
+     * Stores the score for the subset
+     *
+     * @param subset
+     * @param score
+     */
+    public synchronized void put(FeatureSubset subset, double score) {
+        if (capacity == 0) return;
+        scores.put(subset, score);
+    }
+
+    /**
+     * Forgets every score, used when the underlying data changes.
+     * The hit and miss counters are kept.
+     */
+    public synchronized void clear() {
+        scores.clear();
+    }
+
+    /***
+     * ===============
+     * GETTERS
+     * ===============
+     */
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return scores.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses, %d/%d subsets cached", hits, misses, scores.size(), capacity);
+    }
+}
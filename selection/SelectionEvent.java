@@ -0,0 +1,107 @@
+package selection;
+
+/**
+ * Something which happened during a search, delivered to every
+ * SelectionListener. Events are immutable, so can be kept or passed
+ * between threads freely.
+ */
+public class SelectionEvent {
+
+    public enum Type {
+        // A subset was stepped to (a feature added or removed), with its accuracy
+        STEP,
+        // An iteration of the main loop finished, with the subset and accuracy it finished on
+        ITERATION,
+        // A candidate of a best() or worst() sweep was scored
+        CANDIDATE_SCORED,
+        // The search found a better subset than any before it
+        NEW_BEST,
+        // The search stopped, with the best subset it found
+        STOPPED
+    }
+
+    private final Type type;
+
+    private final long timeMillis;
+
+    private final int iteration;
+
+    private final int feature;
+
+    private final FeatureSubset subset;
+
+    private final int size;
+
+    private final double accuracy;
+
+    /**
+     * @param type
+     * @param iteration the number of iterations started, 0 before the first
+     * @param feature the candidate's feature, -1 for anything other than CANDIDATE_SCORED
+     * @param subset the subset the event is about, null if only its size is known
+     * @param size number of features in the subset
+     * @param accuracy
+     */
+    public SelectionEvent(Type type, int iteration, int feature, FeatureSubset subset, int size, double accuracy) {
+        this.type = type;
+        this.timeMillis = System.currentTimeMillis();
+        this.iteration = iteration;
+        this.feature = feature;
+        this.subset = subset;
+        this.size = size;
+        this.accuracy = accuracy;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Returns the feature added or removed to make the
+     * candidate, or -1 if this isn't a CANDIDATE_SCORED event
+     *
+     * @return
+     */
+    public int getFeature() {
+        return feature;
+    }
+
+    /**
+     * Returns the subset, or null for STEP events which only know its size
+     *
+     * @return
+     */
+    public FeatureSubset getSubset() {
+        return subset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the accuracy. For CANDIDATE_SCORED events it is only exact
+     * for the winning candidate if early abandonment or racing is on,
+     * eliminated candidates then score an upper bound or negative infinity.
+     *
+     * @return
+     */
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(iteration " + iteration + ", size " + size + ", accuracy " + accuracy
+                + (feature == -1 ? "" : ", feature " + feature)
+                + (subset == null ? "" : ", features " + subset) + ")";
+    }
+}
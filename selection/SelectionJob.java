@@ -0,0 +1,376 @@
+package selection;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One feature selection run submitted to a SelectionServer or listed in a
+ * BatchRunner manifest, described by the
+ * members of a JSON object:
+ * <p>
+ * {"algorithm": "SFS", "training": "data/musk.arff", "testing": "data/musk-test.arff",
+ * "seed": 123, "maxIterationsWithoutProgress": 10, "numFeatures": 20, "classifier": "knn", "neighbours": 5,
+ * "incremental": true, "earlyAbandon": false, "parallelism": 1, "beamWidth": 5,
+ * "timeLimitMillis": 60000, "maxEvaluations": 5000, "targetAccuracy": 95}
+ * <p>
+ * Only algorithm (SFS, SBS, SFFS, SFBS, BEAM or GA) and training are required. The seed shuffles
+ * the data before it is split (Classifier.SEED by default). The classifier
+ * is "naive-bayes" (the default) or "knn", and incremental scores subsets without
+ * retraining Weka's classifier. The job keeps track of the search's progress from
+ * its events, so it can be polled while it runs. beamWidth is only used by BEAM.
+ * The last three limit the search (see FeatureSelection.setTimeLimit), and are off by default.
+ */
+public class SelectionJob implements Runnable {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final String id;
+
+    private final String algorithm;
+    private final String training;
+    private final String testing;
+    private final long seed;
+    private final int maxIterationsWithoutProgress;
+    private final int numFeatures;
+    private final String classifier;
+    private final int neighbours;
+    private final boolean incremental;
+    private final boolean earlyAbandon;
+    private final int parallelism;
+    private final int beamWidth;
+    private final long timeLimitMillis;
+    private final long maxEvaluations;
+    private final double targetAccuracy;
+
+    private final long submittedMillis = System.currentTimeMillis();
+    private volatile long startedMillis;
+    private volatile long finishedMillis;
+
+    private volatile Status status = Status.QUEUED;
+
+    // Progress, from the search's events
+    private volatile int iteration;
+    private volatile int size;
+    private volatile double accuracy = Double.NaN;
+    private volatile double bestAccuracy = Double.NaN;
+    private volatile FeatureSubset bestFeatures;
+
+    // The result, once the job is done
+    private volatile Set<Integer> selected;
+    private volatile double testAccuracy = Double.NaN;
+    private volatile String error;
+    private volatile FeatureSelection.Limit limitReached;
+
+    /**
+     * Reads the job from the members of its JSON object
+     *
+     * @param id
+     * @param parameters
+     * @throws IllegalArgumentException if a parameter is missing or invalid
+     */
+    public SelectionJob(String id, Map<String, Object> parameters) {
+        this.id = id;
+        this.algorithm = string(parameters, "algorithm", null).toUpperCase();
+        this.training = string(parameters, "training", null);
+        this.testing = string(parameters, "testing", "");
+        this.seed = integer(parameters, "seed", Classifier.SEED);
+        this.maxIterationsWithoutProgress = integer(parameters, "maxIterationsWithoutProgress", 10);
+        this.numFeatures = integer(parameters, "numFeatures", 0);
+        this.classifier = string(parameters, "classifier", "naive-bayes");
+        this.neighbours = integer(parameters, "neighbours", 5);
+        this.incremental = bool(parameters, "incremental", true);
+        this.earlyAbandon = bool(parameters, "earlyAbandon", false);
+        this.parallelism = integer(parameters, "parallelism", 1);
+        this.beamWidth = integer(parameters, "beamWidth", BeamSearchSelection.DEFAULT_BEAM_WIDTH);
+        this.timeLimitMillis = integer(parameters, "timeLimitMillis", 0L);
+        this.maxEvaluations = integer(parameters, "maxEvaluations", 0L);
+        this.targetAccuracy = number(parameters, "targetAccuracy", Double.NaN);
+
+        if (!algorithm.matches("SFS|SBS|SFFS|SFBS|BEAM|GA")) {
+            throw new IllegalArgumentException("algorithm must be one of SFS, SBS, SFFS, SFBS, BEAM or GA, got " + algorithm);
+        }
+        if (!classifier.equals("naive-bayes") && !classifier.equals("knn")) {
+            throw new IllegalArgumentException("classifier must be naive-bayes or knn, got " + classifier);
+        }
+        if (maxIterationsWithoutProgress < 1 || numFeatures < 0 || neighbours < 1 || parallelism < 1 || beamWidth < 1) {
+            throw new IllegalArgumentException("maxIterationsWithoutProgress, neighbours, parallelism and beamWidth must be at least 1, numFeatures at least 0");
+        }
+        if (timeLimitMillis < 0 || maxEvaluations < 0) {
+            throw new IllegalArgumentException("timeLimitMillis and maxEvaluations must be at least 0");
+        }
+    }
+
+    /**
+     * Runs the selection, recording the result or the failure
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (status != Status.QUEUED) return;
+            status = Status.RUNNING;
+        }
+        startedMillis = System.currentTimeMillis();
+
+        FeatureSelection selector = null;
+        try {
+            selector = createSelector(algorithm, training, testing.isEmpty() ? null : testing, maxIterationsWithoutProgress);
+            selector.setSeed(seed);
+            if (selector instanceof BeamSearchSelection) ((BeamSearchSelection) selector).setBeamWidth(beamWidth);
+
+            if (classifier.equals("knn")) {
+                selector.setNearestNeighbours(neighbours, incremental);
+            } else if (incremental) {
+                selector.setIncrementalNaiveBayes(true);
+            }
+            selector.setEarlyAbandon(earlyAbandon);
+            selector.setParallelism(parallelism);
+            selector.setTimeLimit(timeLimitMillis);
+            selector.setMaxEvaluations(maxEvaluations);
+            selector.setTargetAccuracy(targetAccuracy);
+            selector.addListener(this::onEvent);
+
+            Set<Integer> result = numFeatures > 0 ? selector.select(numFeatures) : selector.select();
+            limitReached = selector.getLimitReached();
+            testAccuracy = selector.testAccuracy(result);
+            selected = result;
+            status = Status.DONE;
+        } catch (Throwable e) {
+            error = e.toString();
+            status = Status.FAILED;
+        } finally {
+            if (selector != null) selector.shutdown();
+            finishedMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Cancels the job if it hasn't started yet
+     *
+     * @return true if it was cancelled
+     */
+    public synchronized boolean cancel() {
+        if (status != Status.QUEUED) return false;
+
+        status = Status.CANCELLED;
+        finishedMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Creates a selector of the given type, SFS, SBS, SFFS, SFBS, BEAM or GA
+     *
+     * @param algorithm
+     * @param training
+     * @param testing null to split the training file
+     * @param maxIterationsWithoutProgress
+     * @return
+     * @throws Exception
+     */
+    static FeatureSelection createSelector(String algorithm, String training, String testing, int maxIterationsWithoutProgress) throws Exception {
+        switch (algorithm.toUpperCase()) {
+            case "SBS":
+                return testing == null ? new SequentialBackwardSelection(training, maxIterationsWithoutProgress) : new SequentialBackwardSelection(training, testing, maxIterationsWithoutProgress);
+            case "SFS":
+                return testing == null ? new SequentialForwardSelection(training, maxIterationsWithoutProgress) : new SequentialForwardSelection(training, testing, maxIterationsWithoutProgress);
+            case "SFBS":
+                return testing == null ? new SequentialFloatingBackwardSelection(training, maxIterationsWithoutProgress) : new SequentialFloatingBackwardSelection(training, testing, maxIterationsWithoutProgress);
+            case "SFFS":
+                return testing == null ? new SequentialFloatingForwardSelection(training, maxIterationsWithoutProgress) : new SequentialFloatingForwardSelection(training, testing, maxIterationsWithoutProgress);
+            case "BEAM":
+                return testing == null ? new BeamSearchSelection(training, maxIterationsWithoutProgress) : new BeamSearchSelection(training, testing, maxIterationsWithoutProgress);
+            case "GA":
+                return testing == null ? new GeneticSelection(training, maxIterationsWithoutProgress) : new GeneticSelection(training, testing, maxIterationsWithoutProgress);
+            default:
+                throw new IllegalArgumentException("Unknown selection type " + algorithm);
+        }
+    }
+
+    private void onEvent(SelectionEvent event) {
+        switch (event.getType()) {
+            case ITERATION:
+                iteration = event.getIteration();
+                size = event.getSize();
+                accuracy = event.getAccuracy();
+                break;
+            case STEP:
+                size = event.getSize();
+                accuracy = event.getAccuracy();
+                break;
+            case NEW_BEST:
+                bestFeatures = event.getSubset();
+                bestAccuracy = event.getAccuracy();
+                break;
+            default:
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getTraining() {
+        return training;
+    }
+
+    /**
+     * Returns the testing file, or null if the training file is split
+     *
+     * @return
+     */
+    public String getTesting() {
+        return testing.isEmpty() ? null : testing;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the maximum number of features to select, 0 for no limit
+     *
+     * @return
+     */
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * Returns when the job started running, or 0 if it hasn't
+     *
+     * @return
+     */
+    public long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the selected features, or null until the job is done
+     *
+     * @return
+     */
+    public Set<Integer> getSelected() {
+        return selected;
+    }
+
+    /**
+     * Returns the test accuracy of the selected features, or NaN until the job is done
+     *
+     * @return
+     */
+    public double getTestAccuracy() {
+        return testAccuracy;
+    }
+
+    /**
+     * Returns why the job failed, or null if it hasn't
+     *
+     * @return
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        Status current = status;
+        return current == Status.DONE || current == Status.FAILED || current == Status.CANCELLED;
+    }
+
+    /**
+     * Returns the job's parameters, status and progress, and its result once it is done
+     *
+     * @return
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\": ").append(Json.quote(id))
+                .append(", \"status\": \"").append(status).append('"')
+                .append(", \"algorithm\": ").append(Json.quote(algorithm))
+                .append(", \"training\": ").append(Json.quote(training));
+        if (!testing.isEmpty()) json.append(", \"testing\": ").append(Json.quote(testing));
+        json.append(", \"seed\": ").append(seed)
+                .append(", \"maxIterationsWithoutProgress\": ").append(maxIterationsWithoutProgress);
+        if (numFeatures > 0) json.append(", \"numFeatures\": ").append(numFeatures);
+        json.append(", \"classifier\": ").append(Json.quote(classifier))
+                .append(", \"submitted\": ").append(submittedMillis);
+        if (startedMillis != 0) json.append(", \"started\": ").append(startedMillis);
+        if (finishedMillis != 0) json.append(", \"finished\": ").append(finishedMillis);
+
+        json.append(", \"iteration\": ").append(iteration)
+                .append(", \"size\": ").append(size)
+                .append(", \"accuracy\": ").append(Json.number(accuracy))
+                .append(", \"bestAccuracy\": ").append(Json.number(bestAccuracy));
+        if (bestFeatures != null) json.append(", \"bestFeatures\": ").append(bestFeatures);
+
+        if (selected != null) {
+            json.append(", \"selected\": ").append(FeatureSubset.of(selected))
+                    .append(", \"testAccuracy\": ").append(Json.number(testAccuracy));
+            if (limitReached != null) json.append(", \"limitReached\": \"").append(limitReached).append('"');
+        }
+        if (error != null) json.append(", \"error\": ").append(Json.quote(error));
+
+        return json.append('}').toString();
+    }
+
+    /***
+     * ===============
+     * HELPER METHODS FOR READING THE PARAMETERS
+     * ===============
+     */
+
+    private static String string(Map<String, Object> parameters, String name, String defaultValue) {
+        Object value = parameters.get(name);
+        if (value == null) {
+            if (defaultValue == null) throw new IllegalArgumentException(name + " is required");
+            return defaultValue;
+        }
+        if (!(value instanceof String)) throw new IllegalArgumentException(name + " must be a string");
+        return (String) value;
+    }
+
+    private static int integer(Map<String, Object> parameters, String name, int defaultValue) {
+        long value = integer(parameters, name, (long) defaultValue);
+        if (value != (int) value) throw new IllegalArgumentException(name + " must be between " + Integer.MIN_VALUE + " and " + Integer.MAX_VALUE);
+        return (int) value;
+    }
+
+    private static long integer(Map<String, Object> parameters, String name, long defaultValue) {
+        Object value = parameters.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Double) || (Double) value != Math.rint((Double) value)) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+        // longValue() would clamp anything larger
+        if ((Double) value < -0x1p63 || (Double) value >= 0x1p63) {
+            throw new IllegalArgumentException(name + " must be between " + Long.MIN_VALUE + " and " + Long.MAX_VALUE);
+        }
+        return ((Double) value).longValue();
+    }
+
+    private static double number(Map<String, Object> parameters, String name, double defaultValue) {
+        Object value = parameters.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Double)) throw new IllegalArgumentException(name + " must be a number");
+        return (Double) value;
+    }
+
+    private static boolean bool(Map<String, Object> parameters, String name, boolean defaultValue) {
+        Object value = parameters.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Boolean)) throw new IllegalArgumentException(name + " must be true or false");
+        return (Boolean) value;
+    }
+}
@@ -0,0 +1,11 @@
+package selection;
+
+/**
+ * Receives the progress of a search, see FeatureSelection.addListener.
+ * Events are delivered in order on a background thread, never on the
+ * thread running the search, so a listener may take its time.
+ */
+public interface SelectionListener {
+
+    void onEvent(SelectionEvent event) throws Exception;
+}
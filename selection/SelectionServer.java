@@ -0,0 +1,286 @@
+package selection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs feature selection jobs (see SelectionJob) submitted over a local HTTP/JSON API,
+ * so a pipeline running many jobs pays for JVM startup, JIT warm-up and parsing each
+ * dataset once rather than once per job. Datasets are kept in memory between jobs (see
+ * DatasetCache.retain) until their file changes.
+ * <p>
+ * Jobs run on a fixed number of workers. Waiting jobs are queued up to a limit, beyond
+ * which submissions are refused with 429 Too Many Requests so callers can back off.
+ * <p>
+ * POST /jobs with a JSON job starts it, replying 202 with the job and its Location.<br>
+ * GET /jobs lists every job, GET /jobs/{id} gives one job's progress or result.<br>
+ * DELETE /jobs/{id} cancels a job which hasn't started yet.<br>
+ * GET /status gives the number of running and queued jobs and retained datasets.
+ * <p>
+ * The server only listens on the loopback address.
+ */
+public class SelectionServer implements AutoCloseable {
+
+    // Finished jobs to remember, the oldest are forgotten first
+    private static final int MAX_FINISHED_JOBS = 1000;
+
+    // Threads answering requests, which are quick as the jobs run elsewhere
+    private static final int REQUEST_THREADS = 4;
+
+    private final HttpServer server;
+
+    private final ExecutorService requestExecutor;
+
+    private final ThreadPoolExecutor jobExecutor;
+
+    private final int numWorkers;
+    private final int queueCapacity;
+
+    // Every job remembered, in submission order
+    private final Map<String, SelectionJob> jobs = new ConcurrentHashMap<>();
+    private final List<String> order = new ArrayList<>();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Starts the server
+     *
+     * @param port 0 for any free port, see getPort()
+     * @param numWorkers number of jobs to run at once
+     * @param queueCapacity number of jobs to hold waiting for a worker
+     * @throws IOException
+     */
+    public SelectionServer(int port, int numWorkers, int queueCapacity) throws IOException {
+        if (numWorkers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Need at least 1 worker and a queue of at least 1, got " + numWorkers + " and " + queueCapacity);
+        }
+        this.numWorkers = numWorkers;
+        this.queueCapacity = queueCapacity;
+
+        this.jobExecutor = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> new Thread(runnable, "selection-job"));
+        this.requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "selection-server-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/jobs", this::handleJobs);
+        server.createContext("/status", this::handleStatus);
+        server.start();
+
+        // Last, so a server which fails to start doesn't keep datasets, close() releases them
+        DatasetCache.retain();
+    }
+
+    /**
+     * Returns the port the server is listening on
+     *
+     * @return
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Queues a job
+     *
+     * @param parameters the members of the job's JSON object
+     * @return the job
+     * @throws IllegalArgumentException if the parameters are invalid
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public SelectionJob submit(Map<String, Object> parameters) {
+        SelectionJob job = new SelectionJob(Long.toString(nextId.getAndIncrement()), parameters);
+
+        try {
+            jobExecutor.execute(job);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+
+        remember(job);
+        return job;
+    }
+
+    /**
+     * Returns the job with the given id, or null if there isn't one
+     *
+     * @param id
+     * @return
+     */
+    public SelectionJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Stops accepting requests, cancels the queued jobs and waits for the
+     * running ones to finish. If interrupted it stops waiting, and the
+     * thread's interrupt status is set again.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        requestExecutor.shutdownNow();
+
+        for (Runnable queued : jobExecutor.shutdownNow()) ((SelectionJob) queued).cancel();
+        try {
+            jobExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!closed.getAndSet(true)) DatasetCache.release();
+    }
+
+    private void remember(SelectionJob job) {
+        synchronized (order) {
+            jobs.put(job.getId(), job);
+            order.add(job.getId());
+
+            // Forget the oldest finished jobs once there are too many
+            int finished = 0;
+            for (String id : order) if (jobs.get(id).isFinished()) finished++;
+
+            for (Iterator<String> ids = order.iterator(); ids.hasNext() && finished > MAX_FINISHED_JOBS; ) {
+                String id = ids.next();
+                if (!jobs.get(id).isFinished()) continue;
+
+                ids.remove();
+                jobs.remove(id);
+                finished--;
+            }
+        }
+    }
+
+    /***
+     * ===============
+     * REQUEST HANDLERS
+     * ===============
+     */
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String id = path.startsWith("/jobs/") ? path.substring("/jobs/".length()) : null;
+            String method = exchange.getRequestMethod();
+
+            if (id == null && method.equals("POST")) {
+                submit(exchange);
+            } else if (id == null && method.equals("GET")) {
+                List<String> all = new ArrayList<>();
+                synchronized (order) {
+                    for (String each : order) all.add(jobs.get(each).toJson());
+                }
+                respond(exchange, 200, "{\"jobs\": [" + String.join(", ", all) + "]}");
+            } else if (id == null || id.isEmpty() || id.contains("/")) {
+                respond(exchange, 404, error("No such resource " + path));
+            } else {
+                SelectionJob job = jobs.get(id);
+                if (job == null) {
+                    respond(exchange, 404, error("No job " + id));
+                } else if (method.equals("GET")) {
+                    respond(exchange, 200, job.toJson());
+                } else if (method.equals("DELETE")) {
+                    if (job.cancel()) {
+                        jobExecutor.remove(job);
+                        respond(exchange, 200, job.toJson());
+                    } else {
+                        respond(exchange, 409, error("Job " + id + " is " + job.getStatus() + ", only queued jobs can be cancelled"));
+                    }
+                } else {
+                    respond(exchange, 405, error("Method " + method + " not allowed"));
+                }
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(e.toString()));
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        SelectionJob job;
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            job = submit(Json.parseObject(body));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+            return;
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 429, error("The queue is full (" + queueCapacity + " jobs waiting)"));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+        respond(exchange, 202, job.toJson());
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, error("Method " + exchange.getRequestMethod() + " not allowed"));
+            return;
+        }
+
+        respond(exchange, 200, "{\"workers\": " + numWorkers
+                + ", \"running\": " + jobExecutor.getActiveCount()
+                + ", \"queued\": " + jobExecutor.getQueue().size()
+                + ", \"queueCapacity\": " + queueCapacity
+                + ", \"completed\": " + jobExecutor.getCompletedTaskCount()
+                + ", \"rejected\": " + rejected.get()
+                + ", \"retainedDatasets\": " + DatasetCache.numRetained() + "}");
+    }
+
+    private static String error(String message) {
+        return "{\"error\": " + Json.quote(String.valueOf(message)) + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Starts a server, with the optional parameters port (default 8080),
+     * number of workers (default the number of processors) and queue capacity (default 64)
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int numWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        SelectionServer server = new SelectionServer(port, numWorkers, queueCapacity);
+        System.out.println("Selection server listening on http://localhost:" + server.getPort()
+                + " with " + numWorkers + " workers and a queue of " + queueCapacity);
+    }
+}
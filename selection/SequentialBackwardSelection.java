@@ -1,6 +1,6 @@
 package selection;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -45,28 +45,45 @@ public class SequentialBackwardSelection extends FeatureSelection {
     }
 
     private Set<Integer> select(Criteria criteria, int maxNumFeatures) throws Exception {
+        startSelection();
+
         // To begin with all features are selected
-        Set<Integer> selectedFeatures = getAllFeatureIndices();
+        FeatureSubset selectedFeatures = getAllFeatureIndices();
 
         // Keep track of the best solution, so we never get worse
         double highestAccuracy = 0;
-        Set<Integer> bestSoFar = new HashSet<>();
-        double accuracy = objectiveFunction(selectedFeatures);
-        double lastAccuracy = accuracy;
-
-        printAccuracy(selectedFeatures.size(), accuracy);
+        FeatureSubset bestSoFar = FeatureSubset.EMPTY;
+        double accuracy;
+        double lastAccuracy;
 
         // Number of iterations with no improvement
         double iterationsWithoutImprovement = 0;
 
-        while (criteria.evaluate(iterationsWithoutImprovement, selectedFeatures.size())) {
+        Checkpoint resumed = resumeState();
+        if (resumed != null) {
+            // Carry on from where the checkpointed search got to
+            selectedFeatures = resumed.getSelectedFeatures();
+            highestAccuracy = resumed.getHighestAccuracy();
+            bestSoFar = resumed.getBestSoFar();
+            lastAccuracy = resumed.getLastAccuracy();
+            iterationsWithoutImprovement = resumed.getIterationsWithoutImprovement();
+        } else {
+            accuracy = objectiveFunction(selectedFeatures);
+            lastAccuracy = accuracy;
+
+            reportAccuracy(selectedFeatures.size(), accuracy);
+        }
+
+        while (!limitReached() && criteria.evaluate(iterationsWithoutImprovement, selectedFeatures.size())) {
+            startIteration();
+
             int feature = worst(selectedFeatures);
 
             // No more valid features
             if (feature == -1) break;
 
             // Remove the feature so we do not keep selecting the same one
-            selectedFeatures.remove(feature);
+            selectedFeatures = selectedFeatures.without(feature);
 
             accuracy = objectiveFunction(selectedFeatures);
 
@@ -74,8 +91,9 @@ public class SequentialBackwardSelection extends FeatureSelection {
             if ((greaterThan(accuracy, highestAccuracy) || (equalTo(accuracy, highestAccuracy) && selectedFeatures.size() < bestSoFar.size()))
                     && selectedFeatures.size() <= maxNumFeatures) {
                 highestAccuracy = accuracy;
-                // Make a copy, so we don't accidentally modify this
-                bestSoFar = new HashSet<>(selectedFeatures);
+                // Subsets are immutable, so this can't be modified accidentally
+                bestSoFar = selectedFeatures;
+                reportNewBest(bestSoFar, highestAccuracy);
             }
 
             if (lessThanOrEqualTo(accuracy, lastAccuracy)) {
@@ -86,10 +104,17 @@ public class SequentialBackwardSelection extends FeatureSelection {
 
             lastAccuracy = accuracy;
 
-            printAccuracy(selectedFeatures.size(), accuracy);
+            reportAccuracy(selectedFeatures.size(), accuracy);
+
+            endIteration(selectedFeatures, accuracy);
+
+            if (isCheckpointDue()) {
+                checkpoint(selectedFeatures, FeatureSubset.EMPTY, bestSoFar, highestAccuracy, lastAccuracy, iterationsWithoutImprovement, Collections.emptySet());
+            }
         }
 
-        return bestSoFar;
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
     }
 
 
@@ -35,29 +35,47 @@ public class SequentialFloatingBackwardSelection extends FeatureSelection {
     }
 
     private Set<Integer> select(Criteria criteria, int maxNumFeatures) throws Exception {
+        startSelection();
 
         // To begin with all features are selected, so all the indices from 0..totalFeatures are remaining
-        Set<Integer> selectedFeatures = getAllFeatureIndices();
+        FeatureSubset selectedFeatures = getAllFeatureIndices();
 
         // Subset of only remaining features indices
-        Set<Integer> remainingFeatures = new HashSet<>();
+        FeatureSubset remainingFeatures = FeatureSubset.EMPTY;
 
         // Keep track of the best solution, so we never get worse
         double highestAccuracy = 0;
-        Set<Integer> bestSoFar = new HashSet<>();
-        double accuracy = objectiveFunction(selectedFeatures);
-        double lastAccuracy = accuracy;
+        FeatureSubset bestSoFar = FeatureSubset.EMPTY;
+        double accuracy;
+        double lastAccuracy;
 
         // Keep track of the visited states to avoid getting stuck in an infinite loop
-        Set<Set<Integer>> visitedSubsets = new HashSet<Set<Integer>>();
-        visitedSubsets.add(new HashSet<>(selectedFeatures));
+        Set<FeatureSubset> visitedSubsets = new HashSet<>();
 
         // Number of iterations with no improvement
         int iterationsWithoutImprovement = 0;
 
-        printAccuracy(selectedFeatures.size(), accuracy);
+        Checkpoint resumed = resumeState();
+        if (resumed != null) {
+            // Carry on from where the checkpointed search got to
+            selectedFeatures = resumed.getSelectedFeatures();
+            remainingFeatures = resumed.getRemainingFeatures();
+            highestAccuracy = resumed.getHighestAccuracy();
+            bestSoFar = resumed.getBestSoFar();
+            lastAccuracy = resumed.getLastAccuracy();
+            visitedSubsets = resumed.getVisitedSubsets();
+            iterationsWithoutImprovement = (int) resumed.getIterationsWithoutImprovement();
+        } else {
+            accuracy = objectiveFunction(selectedFeatures);
+            lastAccuracy = accuracy;
+
+            visitedSubsets.add(selectedFeatures);
+
+            reportAccuracy(selectedFeatures.size(), accuracy);
+        }
 
-        while (criteria.evaluate(iterationsWithoutImprovement, selectedFeatures.size())) {
+        while (!limitReached() && criteria.evaluate(iterationsWithoutImprovement, selectedFeatures.size())) {
+            startIteration();
 
             /* EXCLUDE THE WORST FEATURE */
             int worstFeature = worst(selectedFeatures);
@@ -66,41 +84,47 @@ public class SequentialFloatingBackwardSelection extends FeatureSelection {
             if (worstFeature == -1) break;
 
             // Remove the feature and add the feature back to our remaining features
-            selectedFeatures.remove(worstFeature);
-            remainingFeatures.add(worstFeature);
+            selectedFeatures = selectedFeatures.without(worstFeature);
+            remainingFeatures = remainingFeatures.with(worstFeature);
 
             // Note that we have been to this state
-            visitedSubsets.add(new HashSet<>(selectedFeatures));
+            visitedSubsets.add(selectedFeatures);
 
             // This will be our point of comparison when adding features
             double accuracyBeforeAddition = objectiveFunction(selectedFeatures);
 
-            printAccuracy(selectedFeatures.size(), accuracyBeforeAddition);
+            reportAccuracy(selectedFeatures.size(), accuracyBeforeAddition);
 
             /* INCLUDE THE BEST FEATURES */
             // Now add the best features, while we are improving
             while (true) {
+                Events.Backtrack backtrack = new Events.Backtrack();
+                backtrack.begin();
+
                 int bestFeature = best(selectedFeatures, remainingFeatures);
 
                 // No more valid features
                 if (bestFeature == -1) break;
 
-                selectedFeatures.add(bestFeature);
-                remainingFeatures.remove(bestFeature);
+                selectedFeatures = selectedFeatures.with(bestFeature);
+                remainingFeatures = remainingFeatures.without(bestFeature);
 
                 double accuracyAfterAddition = objectiveFunction(selectedFeatures);
 
-                printAccuracy(selectedFeatures.size(), accuracyAfterAddition);
+                reportAccuracy(selectedFeatures.size(), accuracyAfterAddition);
 
                 // If the accuracy did not improve or we have been to this state, undo this step and continue removing features
-                if (lessThan(accuracyAfterAddition, accuracyBeforeAddition) || visitedSubsets.contains(selectedFeatures)) {
-                    selectedFeatures.remove(bestFeature);
-                    remainingFeatures.add(bestFeature);
+                boolean undo = lessThan(accuracyAfterAddition, accuracyBeforeAddition) || visitedSubsets.contains(selectedFeatures);
+                backtrack.end(bestFeature, false, selectedFeatures.size(), accuracyAfterAddition, !undo);
+
+                if (undo) {
+                    selectedFeatures = selectedFeatures.without(bestFeature);
+                    remainingFeatures = remainingFeatures.with(bestFeature);
                     break;
                 }
 
                 // Note that we have been to this state
-                visitedSubsets.add(new HashSet<>(selectedFeatures));
+                visitedSubsets.add(selectedFeatures);
 
                 // This will be our new point of comparison for the next addition to the selected features
                 accuracyBeforeAddition = accuracyAfterAddition;
@@ -113,7 +137,8 @@ public class SequentialFloatingBackwardSelection extends FeatureSelection {
                     && selectedFeatures.size() <= maxNumFeatures) {
                 highestAccuracy = accuracy;
                 // Save our best set
-                bestSoFar = new HashSet<>(selectedFeatures);
+                bestSoFar = selectedFeatures;
+                reportNewBest(bestSoFar, highestAccuracy);
             }
 
             if (lessThanOrEqualTo(accuracy, lastAccuracy)) {
@@ -124,9 +149,15 @@ public class SequentialFloatingBackwardSelection extends FeatureSelection {
 
             lastAccuracy = accuracy;
 
+            endIteration(selectedFeatures, accuracy);
+
+            if (isCheckpointDue()) {
+                checkpoint(selectedFeatures, remainingFeatures, bestSoFar, highestAccuracy, lastAccuracy, iterationsWithoutImprovement, visitedSubsets);
+            }
         }
 
-        return bestSoFar;
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
     }
 
 
@@ -30,27 +30,46 @@ public class SequentialFloatingForwardSelection extends FeatureSelection {
     }
 
     public Set<Integer> select(Criteria criteria) throws Exception {
+        startSelection();
+
         // To begin with no features are selected, so all the indices from 0..totalFeatures are remaining
-        Set<Integer> remainingFeatures = getAllFeatureIndices();
+        FeatureSubset remainingFeatures = getAllFeatureIndices();
 
         // Subset of only selected features indices
-        Set<Integer> selectedFeatures = new HashSet<>();
+        FeatureSubset selectedFeatures = FeatureSubset.EMPTY;
 
         // Keep track of the best solution, so we never get worse
         double highestAccuracy = 0;
-        Set<Integer> bestSoFar = new HashSet<>();
-        double accuracy = objectiveFunction(selectedFeatures);
-        double lastAccuracy = accuracy;
-
-        printAccuracy(selectedFeatures.size(), accuracy);
+        FeatureSubset bestSoFar = FeatureSubset.EMPTY;
+        double accuracy;
+        double lastAccuracy;
 
-        Set<Set<Integer>> visitedSubsets = new HashSet<Set<Integer>>();
-        visitedSubsets.add(new HashSet<>(selectedFeatures));
+        Set<FeatureSubset> visitedSubsets = new HashSet<>();
 
         // Number of iterations with no improvement
         double noImprovement = 0;
 
-        while (criteria.evaluate(noImprovement, selectedFeatures.size())) {
+        Checkpoint resumed = resumeState();
+        if (resumed != null) {
+            // Carry on from where the checkpointed search got to
+            remainingFeatures = resumed.getRemainingFeatures();
+            selectedFeatures = resumed.getSelectedFeatures();
+            highestAccuracy = resumed.getHighestAccuracy();
+            bestSoFar = resumed.getBestSoFar();
+            lastAccuracy = resumed.getLastAccuracy();
+            visitedSubsets = resumed.getVisitedSubsets();
+            noImprovement = resumed.getIterationsWithoutImprovement();
+        } else {
+            accuracy = objectiveFunction(selectedFeatures);
+            lastAccuracy = accuracy;
+
+            reportAccuracy(selectedFeatures.size(), accuracy);
+
+            visitedSubsets.add(selectedFeatures);
+        }
+
+        while (!limitReached() && criteria.evaluate(noImprovement, selectedFeatures.size())) {
+            startIteration();
 
             /* INCLUDE THE BEST FEATURE */
             int bestFeature = best(selectedFeatures, remainingFeatures);
@@ -58,39 +77,45 @@ public class SequentialFloatingForwardSelection extends FeatureSelection {
             // No more valid features
             if (bestFeature == -1) break;
 
-            selectedFeatures.add(bestFeature);
+            selectedFeatures = selectedFeatures.with(bestFeature);
             // Remove the feature so we do not keep selecting the same one
-            remainingFeatures.remove(bestFeature);
+            remainingFeatures = remainingFeatures.without(bestFeature);
 
-            visitedSubsets.add(new HashSet<>(selectedFeatures));
+            visitedSubsets.add(selectedFeatures);
 
             double accuracyBeforeRemoval = objectiveFunction(selectedFeatures);
-            printAccuracy(selectedFeatures.size(), accuracyBeforeRemoval);
+            reportAccuracy(selectedFeatures.size(), accuracyBeforeRemoval);
 
             /* EXCLUDE THE WORST FEATURES */
             // Now remove the worst features, while we are improving
             while (true) {
+                Events.Backtrack backtrack = new Events.Backtrack();
+                backtrack.begin();
+
                 int worstFeature = worst(selectedFeatures);
 
                 // No more valid features
                 if (worstFeature == -1) break;
 
-                selectedFeatures.remove(worstFeature);
+                selectedFeatures = selectedFeatures.without(worstFeature);
                 // Feature becomes available again
-                remainingFeatures.add(worstFeature);
+                remainingFeatures = remainingFeatures.with(worstFeature);
 
                 double accuracyAfterRemoval = objectiveFunction(selectedFeatures);
 
-                printAccuracy(selectedFeatures.size(), accuracyAfterRemoval);
+                reportAccuracy(selectedFeatures.size(), accuracyAfterRemoval);
 
                 // If the accuracy did not improve or we have already been to this state, undo this step and continue adding features
-                if (lessThan(accuracyAfterRemoval, accuracyBeforeRemoval) || visitedSubsets.contains(selectedFeatures)) {
-                    selectedFeatures.add(worstFeature);
-                    remainingFeatures.remove(worstFeature);
+                boolean undo = lessThan(accuracyAfterRemoval, accuracyBeforeRemoval) || visitedSubsets.contains(selectedFeatures);
+                backtrack.end(worstFeature, true, selectedFeatures.size(), accuracyAfterRemoval, !undo);
+
+                if (undo) {
+                    selectedFeatures = selectedFeatures.with(worstFeature);
+                    remainingFeatures = remainingFeatures.without(worstFeature);
                     break;
                 }
 
-                visitedSubsets.add(new HashSet<>(selectedFeatures));
+                visitedSubsets.add(selectedFeatures);
                 accuracyBeforeRemoval = accuracyAfterRemoval;
             }
 
@@ -99,8 +124,9 @@ public class SequentialFloatingForwardSelection extends FeatureSelection {
             // If the accuracy is higher than our previous best, or the same with less features
             if (greaterThan(accuracy, highestAccuracy) || (equalTo(accuracy, highestAccuracy) && selectedFeatures.size() < bestSoFar.size())) {
                 highestAccuracy = accuracy;
-                // Make a copy, so we don't accidentally modify this
-                bestSoFar = new HashSet<>(selectedFeatures);
+                // Subsets are immutable, so this can't be modified accidentally
+                bestSoFar = selectedFeatures;
+                reportNewBest(bestSoFar, highestAccuracy);
             }
 
             if (lessThanOrEqualTo(accuracy, lastAccuracy)) {
@@ -111,9 +137,15 @@ public class SequentialFloatingForwardSelection extends FeatureSelection {
 
             lastAccuracy = accuracy;
 
+            endIteration(selectedFeatures, accuracy);
+
+            if (isCheckpointDue()) {
+                checkpoint(selectedFeatures, remainingFeatures, bestSoFar, highestAccuracy, lastAccuracy, noImprovement, visitedSubsets);
+            }
         }
 
-        return bestSoFar;
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
     }
 
 
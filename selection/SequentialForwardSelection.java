@@ -1,6 +1,6 @@
 package selection;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -28,41 +28,60 @@ public class SequentialForwardSelection extends FeatureSelection {
     }
 
     public Set<Integer> select(Criteria criteria) throws Exception {
+        startSelection();
+
         // To begin with no features are selected, so all the indices from 0..totalFeatures are remaining
-        Set<Integer> remainingFeatures = getAllFeatureIndices();
+        FeatureSubset remainingFeatures = getAllFeatureIndices();
 
         // Subset of only selected features indices
-        Set<Integer> selectedFeatures = new HashSet<>();
+        FeatureSubset selectedFeatures = FeatureSubset.EMPTY;
 
         // Keep track of the best solution, so we never get worse
         double highestAccuracy = 0;
-        Set<Integer> bestSoFar = new HashSet<>();
-        double accuracy = objectiveFunction(selectedFeatures);
-        double lastAccuracy = accuracy;
-
-        printAccuracy(selectedFeatures.size(), accuracy);
+        FeatureSubset bestSoFar = FeatureSubset.EMPTY;
+        double accuracy;
+        double lastAccuracy;
 
         // Number of iterations with no improvement
         double noImprovement = 0;
 
-        while (criteria.evaluate(noImprovement, selectedFeatures.size())) {
+        Checkpoint resumed = resumeState();
+        if (resumed != null) {
+            // Carry on from where the checkpointed search got to
+            remainingFeatures = resumed.getRemainingFeatures();
+            selectedFeatures = resumed.getSelectedFeatures();
+            highestAccuracy = resumed.getHighestAccuracy();
+            bestSoFar = resumed.getBestSoFar();
+            lastAccuracy = resumed.getLastAccuracy();
+            noImprovement = resumed.getIterationsWithoutImprovement();
+        } else {
+            accuracy = objectiveFunction(selectedFeatures);
+            lastAccuracy = accuracy;
+
+            reportAccuracy(selectedFeatures.size(), accuracy);
+        }
+
+        while (!limitReached() && criteria.evaluate(noImprovement, selectedFeatures.size())) {
+            startIteration();
+
             int feature = best(selectedFeatures, remainingFeatures);
             // No more valid features
             if (feature == -1) break;
 
-            selectedFeatures.add(feature);
+            selectedFeatures = selectedFeatures.with(feature);
             // Remove the feature so we do not keep selecting the same one
-            remainingFeatures.remove(feature);
+            remainingFeatures = remainingFeatures.without(feature);
 
             accuracy = objectiveFunction(selectedFeatures);
 
             if (greaterThan(accuracy, highestAccuracy)) {
                 highestAccuracy = accuracy;
-                // Make a copy, so we don't accidentally modify the best subset
-                bestSoFar = new HashSet<>(selectedFeatures);
+                // Subsets are immutable, so this can't be modified accidentally
+                bestSoFar = selectedFeatures;
+                reportNewBest(bestSoFar, highestAccuracy);
             }
 
-            printAccuracy(selectedFeatures.size(), accuracy);
+            reportAccuracy(selectedFeatures.size(), accuracy);
 
             if (lessThanOrEqualTo(accuracy, lastAccuracy)) {
                 noImprovement++;
@@ -70,9 +89,16 @@ public class SequentialForwardSelection extends FeatureSelection {
                 noImprovement = 0;
             }
             lastAccuracy = accuracy;
+
+            endIteration(selectedFeatures, accuracy);
+
+            if (isCheckpointDue()) {
+                checkpoint(selectedFeatures, remainingFeatures, bestSoFar, highestAccuracy, lastAccuracy, noImprovement, Collections.emptySet());
+            }
         }
 
-        return bestSoFar;
+        reportStopped(bestSoFar, highestAccuracy);
+        return bestSoFar.toSet();
     }
 
 
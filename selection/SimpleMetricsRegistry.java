@@ -0,0 +1,145 @@
+package selection;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps every metric in memory. Counters are LongAdders and histograms are
+ * log-linear buckets (8 per power of two, so within about 12% of the real
+ * value) of atomic counts, so recording never locks or allocates and threads
+ * scoring candidates concurrently don't contend on the same value.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, SimpleHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new SimpleCounter());
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new SimpleHistogram());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+
+        counters.forEach((name, counter) -> snapshot.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+
+        histograms.forEach((name, histogram) -> {
+            long count = histogram.count();
+            snapshot.put(name + ".count", count);
+            snapshot.put(name + ".sum", histogram.sum.sum());
+            snapshot.put(name + ".mean", count == 0 ? 0.0 : (double) histogram.sum.sum() / count);
+            snapshot.put(name + ".min", count == 0 ? 0 : histogram.min.get());
+            snapshot.put(name + ".max", count == 0 ? 0 : histogram.max.get());
+            snapshot.put(name + ".p50", histogram.percentile(0.5));
+            snapshot.put(name + ".p90", histogram.percentile(0.9));
+            snapshot.put(name + ".p99", histogram.percentile(0.99));
+        });
+
+        return snapshot;
+    }
+
+    private static class SimpleCounter implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    private static class SimpleHistogram implements Histogram {
+        // Values below 8 have a bucket each, then each power of two is split into 8
+        private static final int SUB_BUCKETS = 8;
+        private static final int SUB_BITS = 3;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        @Override
+        public void record(long value) {
+            value = Math.max(0, value);
+
+            buckets.incrementAndGet(bucket(value));
+            sum.add(value);
+            min.accumulate(value);
+            max.accumulate(value);
+        }
+
+        @Override
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) count += buckets.get(i);
+            return count;
+        }
+
+        @Override
+        public long percentile(double quantile) {
+            long count = count();
+            if (count == 0) return 0;
+
+            // The rank of the value we want, counting from 1
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    // The middle of the bucket, but never outside what was recorded
+                    long middle = lowest(i) + (highest(i) - lowest(i)) / 2;
+                    return Math.max(min.get(), Math.min(max.get(), middle));
+                }
+            }
+
+            return max.get();
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long lowest(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+
+        private static long highest(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            return lowest(bucket) + (1L << (exponent - SUB_BITS)) - 1;
+        }
+    }
+}
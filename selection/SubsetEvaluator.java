@@ -0,0 +1,81 @@
+package selection;
+
+/**
+ * Scores feature subsets in place of training a Weka classifier on the
+ * training set and testing it on the validation set. Implementations
+ * either precompute what they need per feature up front, so a subset is
+ * scored by combining per feature results rather than retraining
+ * (NaiveBayesEvaluator), or score subsets a different way altogether
+ * (CrossValidationEvaluator).
+ * <p>
+ * Implementations must be safe to call from the threads scoring
+ * candidates in parallel.
+ */
+public interface SubsetEvaluator {
+
+    /**
+     * Tells the evaluator that the next subsets to be classified will
+     * mostly differ from base by a single feature (i.e. the candidates
+     * in a best() or worst() sweep), so it can score them incrementally.
+     *
+     * @param base
+     */
+    void setBase(FeatureSubset base);
+
+    /**
+     * Returns the validation set accuracy (as a percentage) using
+     * only the specified features.
+     *
+     * @param indices
+     * @return
+     * @throws Exception
+     */
+    double classify(FeatureSubset indices) throws Exception;
+
+    /**
+     * Returns the validation set accuracy using only the specified features,
+     * but may stop as soon as the accuracy is certain to be below the threshold.
+     * Then the result is an upper bound on the accuracy, less than the threshold.
+     * Evaluators which can't stop early return the exact accuracy.
+     *
+     * @param indices
+     * @param threshold
+     * @return the accuracy if it is at least the threshold, otherwise less than the threshold
+     * @throws Exception
+     */
+    default double classify(FeatureSubset indices, double threshold) throws Exception {
+        return classify(indices);
+    }
+
+    /**
+     * Returns a partial evaluation of the subset, which classifies the
+     * validation instances a batch at a time (see Race)
+     *
+     * @param indices
+     * @return
+     * @throws Exception
+     * @throws UnsupportedOperationException if the evaluator can only score whole subsets
+     */
+    default PartialEvaluation partial(FeatureSubset indices) throws Exception {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can not score subsets partially");
+    }
+
+    /**
+     * Returns the most instances out of numInstances which can be misclassified
+     * while still giving an accuracy of at least the threshold, -1 if none can
+     *
+     * @param numInstances
+     * @param threshold
+     * @return
+     */
+    static int maxMisses(int numInstances, double threshold) {
+        if (numInstances == 0 || threshold == Double.NEGATIVE_INFINITY) return numInstances;
+
+        // Start from the estimate and correct it with the same arithmetic the accuracy is worked out with
+        int misses = (int) Math.max(-1, Math.min(numInstances, Math.floor(numInstances - threshold * numInstances / 100)));
+        while (misses < numInstances && 100.0 * (numInstances - misses - 1) / numInstances >= threshold) misses++;
+        while (misses >= 0 && 100.0 * (numInstances - misses) / numInstances < threshold) misses--;
+
+        return misses;
+    }
+}
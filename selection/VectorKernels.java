@@ -0,0 +1,89 @@
+package selection;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels with the Vector API, processing as many doubles at once as the
+ * CPU's widest registers hold. Only loaded by Kernels.vector() when
+ * jdk.incubator.vector is available. Only the argmax needs the Vector API:
+ * C2 can't vectorise its compare and select loop itself, but does vectorise
+ * the element by element additions.
+ */
+final class VectorKernels implements Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * C2 already compiles the scalar loop to the widest SIMD instructions
+     * (it is a plain element by element loop), and the Vector API version
+     * benchmarked slower, so this uses the scalar loop
+     */
+    @Override
+    public void add(double[] target, int targetOffset, double[] source, int sourceOffset, int length) {
+        ScalarKernels.INSTANCE.add(target, targetOffset, source, sourceOffset, length);
+    }
+
+    /**
+     * Uses the scalar loop, which C2 compiles to SIMD instructions, for the same reason as add()
+     */
+    @Override
+    public void addWithErrors(double[] distances, double[] source, int sourceOffset, double sign, double tolerance,
+                              double[] errors, double[] bounds, int length) {
+        ScalarKernels.INSTANCE.addWithErrors(distances, source, sourceOffset, sign, tolerance, errors, bounds, length);
+    }
+
+    /**
+     * Scores one instance per lane, so every lane keeps its own highest
+     * score and class, and the classes are compared exactly as the scalar
+     * loop compares them. Needs the scores stored class by class, otherwise
+     * (and for the instances which don't fill a register) uses ScalarKernels.
+     */
+    @Override
+    public void argmax(double[] values, double[] column, double sign, int instanceStride, int classStride, int numClasses,
+                       int from, int to, int[] predictions) {
+        if (instanceStride != 1) {
+            ScalarKernels.INSTANCE.argmax(values, column, sign, instanceStride, classStride, numClasses, from, to, predictions);
+            return;
+        }
+
+        DoubleVector signs = DoubleVector.broadcast(SPECIES, sign);
+        double[] classes = new double[SPECIES.length()];
+
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            DoubleVector highest = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+            DoubleVector highestClasses = DoubleVector.zero(SPECIES);
+
+            for (int c = 0; c < numClasses; c++) {
+                DoubleVector scores = DoubleVector.fromArray(SPECIES, values, c * classStride + i);
+                if (column != null) scores = scores.add(DoubleVector.fromArray(SPECIES, column, c * classStride + i).mul(signs));
+
+                VectorMask<Double> higher = scores.compare(VectorOperators.GT, highest);
+                highest = highest.blend(scores, higher);
+                highestClasses = highestClasses.blend(c, higher);
+            }
+
+            highestClasses.intoArray(classes, 0);
+            for (int lane = 0; lane < classes.length; lane++) predictions[i - from + lane] = (int) classes[lane];
+        }
+
+        if (i < to) {
+            int[] remainder = new int[to - i];
+            ScalarKernels.INSTANCE.argmax(values, column, sign, 1, classStride, numClasses, i, to, remainder);
+            System.arraycopy(remainder, 0, predictions, i - from, remainder.length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}